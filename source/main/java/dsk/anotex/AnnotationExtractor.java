@@ -1,28 +1,43 @@
 package dsk.anotex;
 
 import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.AnnotationDiff;
+import dsk.anotex.core.LazyAnnotatedDocument;
 import dsk.anotex.core.FileFormat;
 import dsk.anotex.exporter.AnnotationExporter;
 import dsk.anotex.exporter.ExporterFactory;
+import dsk.anotex.index.AnnotationIndexWriter;
 import dsk.anotex.importer.AnnotationImporter;
+import dsk.anotex.importer.AnnotationReader;
 import dsk.anotex.importer.ImporterFactory;
+import dsk.anotex.util.AtomicFileWriter;
+import dsk.anotex.util.OutputFileManager;
+import dsk.anotex.util.SettingsHelper;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Document annotation extractor.
  */
 public class AnnotationExtractor {
+    protected OutputFileManager outputManager;
+    protected AnnotationIndexWriter indexWriter;
 
     public AnnotationExtractor() {
+        this(new OutputFileManager());
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param outputManager Output file manager (can be shared by extractors running in parallel).
+     */
+    public AnnotationExtractor(OutputFileManager outputManager) {
         super();
+        this.outputManager = outputManager;
     }
 
     /**
@@ -35,8 +50,21 @@ public class AnnotationExtractor {
      */
     public String extractAnnotations(String inputFile, Map<String, Object> settings, String outputFile) {
         // Extract the annotations.
-        AnnotatedDocument document = readAnnotations(inputFile);
+        AnnotatedDocument document = readAnnotations(inputFile, settings);
+        return exportAnnotations(inputFile, document, settings, outputFile);
+    }
 
+    /**
+     * Export extracted annotations.
+     * @param inputFile Input file name.
+     * @param document Annotations extracted from the input file.
+     * @param settings Additional export settings.
+     * @param outputFile Output file name. If null - default will be used. If the output file already
+     * exists, it will be overwritten.
+     * @return The name of the created output file.
+     */
+    public String exportAnnotations(String inputFile, AnnotatedDocument document, Map<String, Object> settings,
+        String outputFile) {
         // Get appropriate exporter.
         FileFormat exportFormat = (FileFormat) settings.get(Constants.EXPORT_FORMAT);
         if (exportFormat == null) {
@@ -50,28 +78,143 @@ public class AnnotationExtractor {
             // Use default output file.
             outputFile = inputFile + exportFormat.getExtension();
         }
+        AnnotationDiff diff = createDiff(inputFile, document, settings);
         try (Writer output = getOutputWriter(outputFile)) {
-            exporter.export(document, settings, output);
+            if (diff != null) {
+                exporter.exportDiff(document, diff, settings, output);
+            }
+            else {
+                exporter.export(document, settings, output);
+            }
+            commitOutput(output);
         }
         catch (IOException e) {
             throw new RuntimeException("Extraction error", e);
         }
+        // Cached only after successful export (so failed run is compared with the same version again).
+        String cacheDir = SettingsHelper.getString(settings, Constants.DIFF_CACHE);
+        if (cacheDir != null) {
+            new ExtractionCache(new File(cacheDir)).store(inputFile, document);
+        }
+
+        // Add the annotations to the search index (if requested).
+        String indexDir = (String) settings.get(Constants.INDEX_DIRECTORY);
+        if (indexDir != null) {
+            indexAnnotations(inputFile, document, indexDir);
+        }
         return outputFile;
     }
 
+    /**
+     * Compare the document with its previous version (if requested by the settings). The document
+     * is not stored into the cache here - only after it is exported.
+     * @param inputFile Input file name.
+     * @param document Extracted document.
+     * @param settings Extraction settings ({@link Constants#DIFF_WITH}, {@link Constants#DIFF_CACHE}).
+     * @return The difference or null (if not requested).
+     */
+    protected AnnotationDiff createDiff(String inputFile, AnnotatedDocument document, Map<String, Object> settings) {
+        String previousFile = SettingsHelper.getString(settings, Constants.DIFF_WITH);
+        String cacheDir = SettingsHelper.getString(settings, Constants.DIFF_CACHE);
+        if ((previousFile == null) && (cacheDir == null)) {
+            return null;
+        }
+        AnnotatedDocument previous;
+        if (previousFile != null) {
+            previous = readAnnotations(previousFile, settings);
+        }
+        else {
+            previous = new ExtractionCache(new File(cacheDir)).load(inputFile);
+        }
+        return AnnotationDiff.compare(previous, document);
+    }
+
+    /**
+     * Add document annotations to the search index.
+     * @param documentName Document name (as it should appear in the search results).
+     * @param document The annotated document.
+     * @param indexDir Index directory.
+     */
+    protected void indexAnnotations(String documentName, AnnotatedDocument document, String indexDir) {
+        if (indexWriter != null) {
+            // Shared writer (batch or watch mode).
+            synchronized (indexWriter) {
+                indexWriter.addDocument(documentName, document);
+            }
+            return;
+        }
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(new File(indexDir))) {
+            writer.addDocument(documentName, document);
+        }
+    }
+
+    /**
+     * Set index writer to be used for all extracted documents (instead of writing new index segment
+     * per document). The caller is responsible for closing it.
+     * @param indexWriter Index writer or null.
+     */
+    public void setIndexWriter(AnnotationIndexWriter indexWriter) {
+        this.indexWriter = indexWriter;
+    }
+
     /**
      * Read annotations from given document file.
      * @param fileName Document file name.
      * @return Document annotations.
      */
     public AnnotatedDocument readAnnotations(String fileName) {
+        return readAnnotations(fileName, new HashMap<>());
+    }
+
+    /**
+     * Read annotations from given document file.
+     * @param fileName Document file name.
+     * @param settings Additional import settings.
+     * @return Document annotations.
+     */
+    public AnnotatedDocument readAnnotations(String fileName, Map<String, Object> settings) {
         FileFormat format = FileFormat.detectFileFormat(fileName);
         AnnotationImporter importer = ImporterFactory.createImporter(format);
-        AnnotatedDocument document = importer.readAnnotations(fileName);
+        AnnotatedDocument document = importer.readAnnotations(fileName, settings);
         postProcess(document);
         return document;
     }
 
+    /**
+     * Open incremental annotation reader for given document file. Use it to show the first
+     * annotations quickly (like preview) and continue reading the rest later.
+     * @param fileName Document file name.
+     * @param settings Additional import settings.
+     * @return The reader. It must be closed after use.
+     */
+    public AnnotationReader openReader(String fileName, Map<String, Object> settings) {
+        FileFormat format = FileFormat.detectFileFormat(fileName);
+        AnnotationImporter importer = ImporterFactory.createImporter(format);
+        return importer.openReader(fileName, settings);
+    }
+
+    /**
+     * Open document, whose annotations are loaded only when accessed (page by page).
+     * @param fileName Document file name.
+     * @param settings Additional import settings.
+     * @return The document. It must be closed after use.
+     */
+    public LazyAnnotatedDocument openDocument(String fileName, Map<String, Object> settings) {
+        return new LazyAnnotatedDocument(openReader(fileName, settings));
+    }
+
+    /**
+     * Read only the document information (title, author, etc.) from given document file.
+     * @param fileName Document file name.
+     * @param settings Import settings (like the document password).
+     * @return Document without annotations.
+     */
+    public AnnotatedDocument readDocumentInfo(String fileName, Map<String, Object> settings) {
+        FileFormat format = FileFormat.detectFileFormat(fileName);
+        AnnotationImporter importer = ImporterFactory.createImporter(format);
+        return importer.readDocumentInfo(fileName, settings);
+    }
+
     /**
      * Get the default export format.
      * @return Export format.
@@ -81,29 +224,24 @@ public class AnnotationExtractor {
     }
 
     /**
-     * Get output writer for specified input file.
+     * Get output writer for specified input file. The output appears in the file only after
+     * {@link #commitOutput(Writer)}.
      * @param outputFile Output file name.
      * @return Output writer.
      */
     protected Writer getOutputWriter(String outputFile) {
-        File outFile = new File(outputFile);
-
-        // Create necessary directories fore the output path.
-        File outFileDir = outFile.getParentFile();
-        if (outFileDir != null) {
-            outFileDir.mkdirs();
-        }
+        return outputManager.openWriter(outputFile);
+    }
 
-        // Crate buffered file writer.
-        Writer writer;
-        try {
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile),
-                StandardCharsets.UTF_8));
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Make the written output visible in the output file.
+     * @param output Output writer (created by {@link #getOutputWriter(String)}).
+     * @throws IOException If the output cannot be written.
+     */
+    protected void commitOutput(Writer output) throws IOException {
+        if (output instanceof AtomicFileWriter) {
+            ((AtomicFileWriter) output).commit();
         }
-        return writer;
     }
 
     /**
@@ -0,0 +1,395 @@
+package dsk.anotex;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.FileFormat;
+import dsk.anotex.index.AnnotationIndexWriter;
+import dsk.anotex.util.FileDigest;
+import dsk.anotex.util.MemoryAdmission;
+import dsk.anotex.util.OutputFileManager;
+import dsk.anotex.util.SettingsHelper;
+import dsk.anotex.util.WorkLeases;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts the annotations of all documents in directory tree, using multiple threads.
+ * The output files are written atomically and the number of concurrently open output files
+ * is limited (see {@link OutputFileManager}). The documents are admitted to the extraction according
+ * to their estimated memory, so several huge documents do not exhaust the heap (see {@link MemoryAdmission}).
+ * <p>
+ * The work can be distributed to several nodes (processes or machines sharing the directory):
+ * <ul>
+ * <li>Static sharding ({@link Constants#SHARD} 'i/n') - every node extracts the documents with
+ * relative path hash modulo n equal to its index.</li>
+ * <li>Dynamic sharding ({@link Constants#LEASE_DIRECTORY}) - the nodes take the documents one by one
+ * via lease files in shared directory (see {@link WorkLeases}). The documents of crashed node are
+ * taken over after the lease timeout.</li>
+ * </ul>
+ */
+public class BatchExtractor {
+    protected int threads;
+    protected OutputFileManager outputManager;
+    protected MemoryAdmission memoryAdmission;
+    protected int shardIndex;
+    protected int shardCount;
+
+    /**
+     * Constructor with specified parameters.
+     * @param settings Batch settings ({@link Constants#THREADS}, {@link Constants#MAX_OPEN_FILES},
+     * {@link Constants#MEMORY_BUDGET}, {@link Constants#SHARD}).
+     */
+    public BatchExtractor(Map<String, Object> settings) {
+        super();
+        threads = SettingsHelper.getInt(settings, Constants.THREADS,
+            Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        int maxOpenFiles = SettingsHelper.getInt(settings, Constants.MAX_OPEN_FILES,
+            OutputFileManager.DEFAULT_MAX_OPEN_FILES);
+        outputManager = new OutputFileManager(maxOpenFiles);
+        long memoryBudget = SettingsHelper.getLong(settings, Constants.MEMORY_BUDGET, 0);
+        memoryAdmission = (memoryBudget > 0)
+            ? new MemoryAdmission(memoryBudget * 1024 * 1024) : new MemoryAdmission();
+        parseShard(SettingsHelper.getString(settings, Constants.SHARD));
+    }
+
+    /**
+     * Parse the shard of this node.
+     * @param shard Shard like '2/5' (the second of 5 shards) or null (all documents).
+     */
+    protected void parseShard(String shard) {
+        shardIndex = 0;
+        shardCount = 1;
+        if (shard == null) {
+            return;
+        }
+        String[] items = shard.trim().split("/");
+        try {
+            if (items.length == 2) {
+                shardIndex = Integer.parseInt(items[0].trim()) - 1;
+                shardCount = Integer.parseInt(items[1].trim());
+            }
+        }
+        catch (NumberFormatException e) {
+            shardCount = 0;
+        }
+        if ((items.length != 2) || (shardCount < 1) || (shardIndex < 0) || (shardIndex >= shardCount)) {
+            throw new IllegalArgumentException("Invalid shard: " + shard);
+        }
+    }
+
+    /**
+     * Extract the annotations of all supported documents in given directory (and its sub-directories).
+     * @param inputDir Input directory.
+     * @param settings Additional export settings.
+     * @param outputDir Output directory. If null - the output files are written next to the input files.
+     * @param listener Called for every processed document (can be null). Calls are not synchronized.
+     * @return Failed documents (input file -> error).
+     */
+    public Map<String, Throwable> extractAnnotations(String inputDir, Map<String, Object> settings,
+        String outputDir, Listener listener) {
+        Path inputRoot = new File(inputDir).getAbsoluteFile().toPath();
+        List<Path> inputFiles = selectShard(inputRoot, listInputFiles(inputRoot));
+        Map<String, Throwable> failures = Collections.synchronizedMap(new TreeMap<>());
+
+        // Single index writer for the whole batch (instead of index segment per document).
+        String indexDir = SettingsHelper.getString(settings, Constants.INDEX_DIRECTORY);
+        AnnotationIndexWriter indexWriter = (indexDir != null)
+            ? new AnnotationIndexWriter(new File(indexDir)) : null;
+        ProgressJournal journal = openJournal(settings);
+        WorkLeases leases = openLeases(settings);
+        if (leases != null) {
+            // Every node starts at different position, so the nodes do not compete for the same leases.
+            int offset = Math.floorMod(leases.getNodeId().hashCode(), Math.max(1, inputFiles.size()));
+            Collections.rotate(inputFiles, -offset);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Path inputFile : inputFiles) {
+                String outputFile = getOutputFile(inputRoot, inputFile, settings, outputDir);
+                String leaseKey = (leases != null) ? getLeaseKey(inputRoot, inputFile) : null;
+                executor.execute(() -> extractAnnotations(inputFile, settings, outputFile, indexWriter,
+                    journal, leases, leaseKey, failures, listener));
+            } //
+        }
+        finally {
+            executor.shutdown();
+            awaitTermination(executor);
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (leases != null) {
+                leases.close();
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Extract the annotations of single document (in worker thread).
+     * @param inputFile Input document.
+     * @param settings Export settings.
+     * @param outputFile Output file name.
+     * @param indexWriter Shared index writer (can be null).
+     * @param journal Progress journal (can be null).
+     * @param leases Work leases shared with the other nodes (can be null).
+     * @param leaseKey Lease key of the document (null if there are no leases).
+     * @param failures Where to put the failure.
+     * @param listener Progress listener (can be null).
+     */
+    protected void extractAnnotations(Path inputFile, Map<String, Object> settings, String outputFile,
+        AnnotationIndexWriter indexWriter, ProgressJournal journal, WorkLeases leases, String leaseKey,
+        Map<String, Throwable> failures, Listener listener) {
+        if ((leases != null) && !leases.acquire(leaseKey, inputFile)) {
+            // Finished or being processed by other node.
+            if (listener != null) {
+                listener.skipped(inputFile.toString(), outputFile);
+            }
+            return;
+        }
+        ProgressJournal.FileState inputState = null;
+        try {
+            if (journal != null) {
+                if (journal.isCompleted(inputFile, outputFile)) {
+                    if (leases != null) {
+                        leases.complete(leaseKey, inputFile, true);
+                    }
+                    if (listener != null) {
+                        listener.skipped(inputFile.toString(), outputFile);
+                    }
+                    return;
+                }
+                // Captured before the extraction (the journal must not pair new time with old content).
+                inputState = ProgressJournal.captureState(inputFile);
+            }
+            AnnotationExtractor extractor = new AnnotationExtractor(outputManager);
+            extractor.setIndexWriter(indexWriter);
+            AnnotatedDocument document;
+            MemoryAdmission.Permit permit = memoryAdmission.acquire(estimateMemory(inputFile));
+            try {
+                document = extractor.readAnnotations(inputFile.toString(), settings);
+                extractor.exportAnnotations(inputFile.toString(), document, settings, outputFile);
+            }
+            finally {
+                permit.close();
+            }
+            // Partial result (limits or resilient problems) is exported, but the document is redone.
+            boolean partial = document.isIncomplete() || !document.getProblems().isEmpty();
+            if ((leases != null) && !leases.complete(leaseKey, inputFile, !partial)) {
+                // Taken over by other node (this one was too slow) - it reports the document.
+                if (listener != null) {
+                    listener.skipped(inputFile.toString(), outputFile);
+                }
+                return;
+            }
+            if ((journal != null) && partial) {
+                journal.recordPartial(inputFile, inputState, outputFile);
+            }
+            else if (journal != null) {
+                journal.recordDone(inputFile, inputState, outputFile);
+            }
+            if (listener != null) {
+                listener.processed(inputFile.toString(), outputFile, null);
+            }
+        }
+        catch (RuntimeException e) {
+            if ((leases != null) && !leases.complete(leaseKey, inputFile, false)) {
+                // Taken over by other node - it reports the document.
+                if (listener != null) {
+                    listener.skipped(inputFile.toString(), outputFile);
+                }
+                return;
+            }
+            failures.put(inputFile.toString(), e);
+            if (journal != null) {
+                journal.recordFailed(inputFile, inputState, outputFile);
+            }
+            if (listener != null) {
+                listener.processed(inputFile.toString(), outputFile, e);
+            }
+        }
+        finally {
+            if (leases != null) {
+                // No-op if completed. Otherwise (like interrupted) the document is left to the other nodes.
+                leases.release(leaseKey);
+            }
+        }
+    }
+
+    /**
+     * Estimate the memory needed to extract document. Only the file size is used - the document
+     * is not opened before the admission (that would need the memory being limited).
+     * @param inputFile Input document.
+     * @return Estimated memory (bytes).
+     */
+    protected long estimateMemory(Path inputFile) {
+        return MemoryAdmission.estimate(inputFile.toFile().length(), 0);
+    }
+
+    /**
+     * Select the documents of this node's shard.
+     * @param inputRoot Input directory.
+     * @param inputFiles All documents.
+     * @return Documents of the shard (all documents if there is single shard).
+     */
+    protected List<Path> selectShard(Path inputRoot, List<Path> inputFiles) {
+        List<Path> selected = new ArrayList<>(inputFiles.size());
+        for (Path inputFile : inputFiles) {
+            if ((shardCount == 1) || (Math.floorMod(getRelativePath(inputRoot, inputFile).hashCode(),
+                shardCount) == shardIndex)) {
+                selected.add(inputFile);
+            }
+        } //
+        return selected;
+    }
+
+    /**
+     * Open the work leases (if requested by the settings).
+     * @param settings Batch settings ({@link Constants#LEASE_DIRECTORY}, {@link Constants#LEASE_TIMEOUT},
+     * {@link Constants#LEASE_ATTEMPTS}).
+     * @return The leases or null.
+     */
+    protected WorkLeases openLeases(Map<String, Object> settings) {
+        String leaseDir = SettingsHelper.getString(settings, Constants.LEASE_DIRECTORY);
+        if (leaseDir == null) {
+            return null;
+        }
+        long timeout = SettingsHelper.getLong(settings, Constants.LEASE_TIMEOUT, WorkLeases.DEFAULT_TIMEOUT);
+        int attempts = SettingsHelper.getInt(settings, Constants.LEASE_ATTEMPTS, WorkLeases.DEFAULT_MAX_ATTEMPTS);
+        return new WorkLeases(new File(leaseDir), timeout, attempts);
+    }
+
+    /**
+     * Get the lease key of document. It is the same on all the nodes (even if the shared directory
+     * is mounted to different places).
+     * @param inputRoot Input directory.
+     * @param inputFile Input document.
+     * @return Hash of the relative document path.
+     */
+    protected String getLeaseKey(Path inputRoot, Path inputFile) {
+        return FileDigest.hashString(getRelativePath(inputRoot, inputFile));
+    }
+
+    /**
+     * Get the path of document relative to the input directory (with '/' separators).
+     * @param inputRoot Input directory.
+     * @param inputFile Input document.
+     * @return Relative path.
+     */
+    protected static String getRelativePath(Path inputRoot, Path inputFile) {
+        return inputRoot.relativize(inputFile).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Open the progress journal (if requested by the settings).
+     * @param settings Batch settings ({@link Constants#JOURNAL}, {@link Constants#RESUME}).
+     * @return The journal or null.
+     */
+    protected ProgressJournal openJournal(Map<String, Object> settings) {
+        String journalFile = SettingsHelper.getString(settings, Constants.JOURNAL);
+        boolean resume = SettingsHelper.getBoolean(settings, Constants.RESUME, false);
+        if (journalFile == null) {
+            if (resume) {
+                throw new IllegalArgumentException("Progress journal is required to resume");
+            }
+            return null;
+        }
+        return new ProgressJournal(new File(journalFile), resume);
+    }
+
+    /**
+     * Get all supported documents in given directory tree.
+     * @param inputRoot Input directory.
+     * @return Document files (sorted).
+     */
+    public static List<Path> listInputFiles(Path inputRoot) {
+        if (!Files.isDirectory(inputRoot)) {
+            String message = String.format("Directory '%s' does not exist", inputRoot);
+            throw new IllegalArgumentException(message);
+        }
+        try (Stream<Path> files = Files.walk(inputRoot)) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(file -> FileFormat.detectFileFormat(file.getFileName().toString()) == FileFormat.PDF)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot read directory '%s'", inputRoot);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Get the output file for given input document.
+     * @param inputRoot Input directory.
+     * @param inputFile Input document.
+     * @param settings Export settings.
+     * @param outputDir Output directory (can be null).
+     * @return Output file name.
+     */
+    protected String getOutputFile(Path inputRoot, Path inputFile, Map<String, Object> settings,
+        String outputDir) {
+        FileFormat exportFormat = (FileFormat) settings.get(Constants.EXPORT_FORMAT);
+        if (exportFormat == null) {
+            exportFormat = FileFormat.MARKDOWN;
+        }
+        String outputName = inputFile + exportFormat.getExtension();
+        if (outputDir != null) {
+            // Keep the directory structure of the input.
+            Path relative = inputRoot.relativize(inputFile);
+            outputName = new File(outputDir, relative + exportFormat.getExtension()).getPath();
+        }
+        return outputName;
+    }
+
+    protected void awaitTermination(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Wait.
+            } //
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Listener for batch progress.
+     */
+    public interface Listener {
+        /**
+         * Called when document is processed.
+         * @param inputFile Input file name.
+         * @param outputFile Output file name.
+         * @param error Error or null (if extracted successfully).
+         */
+        void processed(String inputFile, String outputFile, Throwable error);
+
+        /**
+         * Called when document is skipped (already extracted in the resumed batch or by other node).
+         * @param inputFile Input file name.
+         * @param outputFile Output file name.
+         */
+        default void skipped(String inputFile, String outputFile) {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package dsk.anotex;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.FileFormat;
+import dsk.anotex.exporter.AnnotationExporter;
+import dsk.anotex.exporter.ExporterFactory;
+import dsk.anotex.util.SettingsHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the annotations of document collection into single output file (like Markdown book
+ * with the highlights of all course materials).
+ * The documents are ordered by their metadata (read first, without the annotations) and then
+ * extracted and written one by one - there is never more than one document in memory.
+ */
+public class CollectionExtractor {
+    protected static final Logger log = LogManager.getLogger(CollectionExtractor.class);
+    protected AnnotationExtractor extractor;
+
+    public CollectionExtractor() {
+        this(new AnnotationExtractor());
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param extractor Extractor to read the documents and open the output with.
+     */
+    public CollectionExtractor(AnnotationExtractor extractor) {
+        super();
+        this.extractor = extractor;
+    }
+
+    /**
+     * Extract the annotations of given documents into single output file.
+     * @param inputFiles Input document file names.
+     * @param settings Additional export settings ({@link Constants#SORT_BY}, etc.).
+     * @param outputFile Output file name. The export format is detected by its extension
+     * (if not given in the settings).
+     * @return Failed documents (input file -> error). They are skipped in the output.
+     */
+    public Map<String, Throwable> extractAnnotations(List<String> inputFiles, Map<String, Object> settings,
+        String outputFile) {
+        FileFormat exportFormat = (FileFormat) settings.get(Constants.EXPORT_FORMAT);
+        if (exportFormat == null) {
+            exportFormat = FileFormat.detectFileFormat(outputFile);
+        }
+        if ((exportFormat == null) || (exportFormat == FileFormat.PDF)) {
+            exportFormat = FileFormat.MARKDOWN;
+        }
+        AnnotationExporter exporter = ExporterFactory.createExporter(exportFormat);
+
+        // Order the documents.
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        List<AnnotatedDocument> documents = readDocumentInfos(inputFiles, settings, failures);
+        documents.sort(getComparator(SettingsHelper.getString(settings, Constants.SORT_BY)));
+
+        // Stream the documents into the output.
+        try (Writer output = extractor.getOutputWriter(outputFile)) {
+            exporter.startCollection(settings, output);
+            for (AnnotatedDocument info : documents) {
+                String inputFile = info.getFileName();
+                AnnotatedDocument document;
+                try {
+                    document = extractor.readAnnotations(inputFile, settings);
+                }
+                catch (RuntimeException e) {
+                    log.warn("Cannot extract '{}': {}", inputFile, e.getMessage());
+                    failures.put(inputFile, e);
+                    continue;
+                }
+                if ((document.getTitle() == null) || document.getTitle().isEmpty()) {
+                    // Every document should be distinguishable in the combined output.
+                    document.setTitle(new File(inputFile).getName());
+                }
+                exporter.export(document, settings, output);
+            } //
+            exporter.endCollection(settings, output);
+            extractor.commitOutput(output);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Extraction error", e);
+        }
+        return failures;
+    }
+
+    /**
+     * Read the information (without the annotations) of given documents.
+     * @param inputFiles Input document file names.
+     * @param settings Import settings.
+     * @param failures Where to put the documents, which cannot be read.
+     * @return Document information.
+     */
+    protected List<AnnotatedDocument> readDocumentInfos(List<String> inputFiles, Map<String, Object> settings,
+        Map<String, Throwable> failures) {
+        List<AnnotatedDocument> documents = new ArrayList<>(inputFiles.size());
+        for (String inputFile : inputFiles) {
+            try {
+                AnnotatedDocument info = extractor.readDocumentInfo(inputFile, settings);
+                info.setFileName(inputFile);
+                documents.add(info);
+            }
+            catch (RuntimeException e) {
+                log.warn("Cannot read '{}': {}", inputFile, e.getMessage());
+                failures.put(inputFile, e);
+            }
+        } //
+        return documents;
+    }
+
+    /**
+     * Get document comparator for given sort order.
+     * @param sortBy Sort order ({@link Constants#SORT_BY_TITLE}, {@link Constants#SORT_BY_AUTHOR} or
+     * {@link Constants#SORT_BY_FILE}). Null = by file name.
+     * @return The comparator.
+     */
+    protected Comparator<AnnotatedDocument> getComparator(String sortBy) {
+        Comparator<AnnotatedDocument> byFile = Comparator.comparing(AnnotatedDocument::getFileName);
+        if ((sortBy == null) || Constants.SORT_BY_FILE.equalsIgnoreCase(sortBy)) {
+            return byFile;
+        }
+        Comparator<String> text = Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+        if (Constants.SORT_BY_TITLE.equalsIgnoreCase(sortBy)) {
+            return Comparator.comparing(AnnotatedDocument::getTitle, text).thenComparing(byFile);
+        }
+        if (Constants.SORT_BY_AUTHOR.equalsIgnoreCase(sortBy)) {
+            return Comparator.comparing(AnnotatedDocument::getAuthor, text)
+                .thenComparing(AnnotatedDocument::getTitle, text).thenComparing(byFile);
+        }
+        String message = String.format("Unsupported sort order '%s'", sortBy);
+        throw new IllegalArgumentException(message);
+    }
+}
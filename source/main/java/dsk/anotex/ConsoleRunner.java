@@ -1,10 +1,22 @@
 package dsk.anotex;
 
+import dsk.anotex.core.Annotation;
 import dsk.anotex.core.FileFormat;
+import dsk.anotex.importer.AnnotationReader;
+import dsk.anotex.index.AnnotationIndexReader;
+import dsk.anotex.index.AnnotationIndexWriter;
+import dsk.anotex.index.SearchHit;
 import dsk.anotex.util.CommandLineParser;
+import dsk.anotex.util.SettingsHelper;
 
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Console runner for the application.
@@ -14,6 +26,44 @@ public class ConsoleRunner {
     public static final String ARG_INPUT = "input";
     public static final String ARG_OUTPUT = "output";
     public static final String ARG_HELP = "help";
+    public static final String ARG_INDEX = "index";
+    public static final String ARG_SEARCH = "search";
+    public static final String ARG_WATCH = "watch";
+    public static final String ARG_FORMAT = "format";
+    public static final String ARG_TIMEOUT = "timeout";
+    public static final String ARG_PAGE_TIMEOUT = "pageTimeout";
+    public static final String ARG_MAX_GLYPHS = "maxGlyphs";
+    public static final String ARG_MAX_QUADS = "maxQuads";
+    public static final String ARG_PAGES = "pages";
+    public static final String ARG_SAMPLE = "sample";
+    public static final String ARG_TYPES = "types";
+    public static final String ARG_COLORS = "colors";
+    public static final String ARG_AUTHORS = "authors";
+    public static final String ARG_DATE_FROM = "from";
+    public static final String ARG_DATE_TO = "to";
+    public static final String ARG_GROUP_BY = "groupBy";
+    public static final String ARG_COLOR_CATEGORIES = "colorCategories";
+    public static final String ARG_THREADS = "threads";
+    public static final String ARG_MAX_OPEN_FILES = "maxOpenFiles";
+    public static final String ARG_MEMORY_BUDGET = "memoryBudget";
+    public static final String ARG_COMBINE = "combine";
+    public static final String ARG_SORT_BY = "sortBy";
+    public static final String ARG_DIFF = "diff";
+    public static final String ARG_DIFF_CACHE = "diffCache";
+    public static final String ARG_PREVIEW = "preview";
+    public static final String ARG_PASSWORD = "password";
+    public static final String ARG_PASSWORD_FILE = "passwordFile";
+    public static final String ARG_RESILIENT = "resilient";
+    public static final String ARG_JOURNAL = "journal";
+    public static final String ARG_RESUME = "resume";
+    public static final String ARG_SHARD = "shard";
+    public static final String ARG_LEASE_DIR = "leaseDir";
+    public static final String ARG_LEASE_TIMEOUT = "leaseTimeout";
+    public static final String ARG_LEASE_ATTEMPTS = "leaseAttempts";
+    public static final String ARG_LOGGING = "logging";
+    protected static final String LOG_FACTORY_PROPERTY = "log4j2.loggerContextFactory";
+    protected static final String LOG_CONFIG_PROPERTY = "log4j.configurationFile";
+    protected static final String SIMPLE_LOG_FACTORY = "org.apache.logging.log4j.simple.SimpleLoggerContextFactory";
 
     /**
      * Execute annotation extraction from file.
@@ -22,11 +72,208 @@ public class ConsoleRunner {
      * @param outputFile Output file name.
      */
     public void doExtract(String inputFile, Map<String, Object> settings, String outputFile) {
+        doExtract(new AnnotationExtractor(), inputFile, settings, outputFile);
+    }
+
+    /**
+     * Execute annotation extraction from file with given extractor.
+     * @param extractor Annotation extractor.
+     * @param inputFile Input file name.
+     * @param settings Additional export settings.
+     * @param outputFile Output file name.
+     */
+    protected void doExtract(AnnotationExtractor extractor, String inputFile, Map<String, Object> settings,
+        String outputFile) {
         printMessage(String.format("Reading input document: '%s'", inputFile));
-        String outFile = new AnnotationExtractor().extractAnnotations(inputFile, settings, outputFile);
+        String outFile = extractor.extractAnnotations(inputFile, settings, outputFile);
         printMessage(String.format("Annotations extracted to: '%s'", outFile));
     }
 
+    /**
+     * Print the first annotations of document (without reading the whole document).
+     * @param inputFile Input file name.
+     * @param settings Additional import settings.
+     * @param count Number of annotations to print.
+     */
+    public void doPreview(String inputFile, Map<String, Object> settings, int count) {
+        try (AnnotationReader reader = new AnnotationExtractor().openReader(inputFile, settings)) {
+            for (Annotation annotation : reader.next(count, 0)) {
+                String text = (annotation.getHighlight() != null) ? annotation.getHighlight() : annotation.getText();
+                printMessage(String.format("Page %d: %s", annotation.getPage(), text));
+            } //
+            if (reader.hasNext()) {
+                printMessage("...");
+            }
+        }
+    }
+
+    /**
+     * Execute annotation extraction from all documents in directory.
+     * @param inputDir Input directory.
+     * @param settings Additional export settings.
+     * @param outputDir Output directory. If null - the output is written next to the input files.
+     */
+    public void doBatch(String inputDir, Map<String, Object> settings, String outputDir) {
+        printMessage(String.format("Reading input directory: '%s'", inputDir));
+        BatchExtractor extractor = new BatchExtractor(settings);
+        AtomicInteger skipped = new AtomicInteger();
+        Map<String, Throwable> failures = extractor.extractAnnotations(inputDir, settings, outputDir,
+            new BatchExtractor.Listener() {
+                @Override
+                public void processed(String inputFile, String outputFile, Throwable error) {
+                    if (error != null) {
+                        printError(String.format("Error: Cannot extract '%s' (%s)", inputFile, error.getMessage()));
+                    }
+                }
+
+                @Override
+                public void skipped(String inputFile, String outputFile) {
+                    skipped.incrementAndGet();
+                }
+            });
+        if (skipped.get() > 0) {
+            printMessage(String.format("Skipped %d already extracted document(s)", skipped.get()));
+        }
+        if (failures.isEmpty()) {
+            printMessage("All documents extracted");
+        }
+        else {
+            printError(String.format("Error: %d document(s) were not extracted", failures.size()));
+        }
+    }
+
+    /**
+     * Execute annotation extraction from all documents in directory into single output file.
+     * @param inputDir Input directory.
+     * @param settings Additional export settings.
+     * @param outputFile Output file name.
+     */
+    public void doCombine(String inputDir, Map<String, Object> settings, String outputFile) {
+        printMessage(String.format("Reading input directory: '%s'", inputDir));
+        List<String> inputFiles = new ArrayList<>();
+        for (Path inputFile : BatchExtractor.listInputFiles(Paths.get(inputDir).toAbsolutePath())) {
+            inputFiles.add(inputFile.toString());
+        } //
+        Map<String, Throwable> failures = new CollectionExtractor().extractAnnotations(inputFiles, settings,
+            outputFile);
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            printError(String.format("Error: Cannot extract '%s' (%s)", failure.getKey(),
+                failure.getValue().getMessage()));
+        } //
+        printMessage(String.format("Annotations of %d document(s) extracted to: '%s'",
+            inputFiles.size() - failures.size(), outputFile));
+    }
+
+    /**
+     * Watch directory and extract the annotations of every new or changed document.
+     * Runs until the process is stopped.
+     * @param directory Directory to watch.
+     * @param settings Additional export settings.
+     */
+    public void doWatch(String directory, Map<String, Object> settings) {
+        printMessage(String.format("Watching directory: '%s'", directory));
+        // One index writer for the whole session (not new segments and merge decisions per document).
+        String indexDir = SettingsHelper.getString(settings, Constants.INDEX_DIRECTORY);
+        AnnotationExtractor extractor = new AnnotationExtractor();
+        try (AnnotationIndexWriter indexWriter = (indexDir != null)
+                 ? new AnnotationIndexWriter(new File(indexDir)) : null;
+             FolderWatcher watcher = new FolderWatcher(Paths.get(directory), FolderWatcher.DEFAULT_QUIET_PERIOD,
+                 file -> doExtractSafely(extractor, indexWriter, file.toString(), settings))) {
+            extractor.setIndexWriter(indexWriter);
+            watcher.run();
+        }
+    }
+
+    /**
+     * Execute annotation extraction, reporting the errors instead of throwing them.
+     * @param extractor Annotation extractor.
+     * @param indexWriter Index writer of the extractor or null.
+     * @param inputFile Input file name.
+     * @param settings Additional export settings.
+     */
+    protected void doExtractSafely(AnnotationExtractor extractor, AnnotationIndexWriter indexWriter,
+        String inputFile, Map<String, Object> settings) {
+        try {
+            doExtract(extractor, inputFile, settings, null);
+            if (indexWriter != null) {
+                // Searchable right away (not after the buffer gets full).
+                indexWriter.flush();
+            }
+        }
+        catch (RuntimeException e) {
+            printError(String.format("Error: Cannot extract '%s' (%s)", inputFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * Copy the extraction options (limits, filters, grouping) from the command line to the settings.
+     * @param parser Command line parser.
+     * @param settings Extraction settings.
+     */
+    protected void readSettings(CommandLineParser parser, Map<String, Object> settings) {
+        settings.put(Constants.DOCUMENT_TIMEOUT, parser.getArgumentValue(ARG_TIMEOUT));
+        settings.put(Constants.PAGE_TIMEOUT, parser.getArgumentValue(ARG_PAGE_TIMEOUT));
+        settings.put(Constants.MAX_GLYPHS, parser.getArgumentValue(ARG_MAX_GLYPHS));
+        settings.put(Constants.MAX_QUADS, parser.getArgumentValue(ARG_MAX_QUADS));
+        settings.put(Constants.PAGES, parser.getArgumentValue(ARG_PAGES));
+        settings.put(Constants.SAMPLE, parser.getArgumentValue(ARG_SAMPLE));
+        settings.put(Constants.TYPES, parser.getArgumentValue(ARG_TYPES));
+        settings.put(Constants.COLORS, parser.getArgumentValue(ARG_COLORS));
+        settings.put(Constants.AUTHORS, parser.getArgumentValue(ARG_AUTHORS));
+        settings.put(Constants.DATE_FROM, parser.getArgumentValue(ARG_DATE_FROM));
+        settings.put(Constants.DATE_TO, parser.getArgumentValue(ARG_DATE_TO));
+        settings.put(Constants.GROUP_BY, parser.getArgumentValue(ARG_GROUP_BY));
+        settings.put(Constants.COLOR_CATEGORIES, parser.getArgumentValue(ARG_COLOR_CATEGORIES));
+        settings.put(Constants.THREADS, parser.getArgumentValue(ARG_THREADS));
+        settings.put(Constants.MAX_OPEN_FILES, parser.getArgumentValue(ARG_MAX_OPEN_FILES));
+        settings.put(Constants.MEMORY_BUDGET, parser.getArgumentValue(ARG_MEMORY_BUDGET));
+        settings.put(Constants.SORT_BY, parser.getArgumentValue(ARG_SORT_BY));
+        settings.put(Constants.DIFF_WITH, parser.getArgumentValue(ARG_DIFF));
+        settings.put(Constants.DIFF_CACHE, parser.getArgumentValue(ARG_DIFF_CACHE));
+        settings.put(Constants.PASSWORD, parser.getArgumentValue(ARG_PASSWORD));
+        settings.put(Constants.PASSWORD_FILE, parser.getArgumentValue(ARG_PASSWORD_FILE));
+        settings.put(Constants.RESILIENT, parser.hasArgument(ARG_RESILIENT));
+        settings.put(Constants.JOURNAL, parser.getArgumentValue(ARG_JOURNAL));
+        settings.put(Constants.RESUME, parser.hasArgument(ARG_RESUME));
+        settings.put(Constants.SHARD, parser.getArgumentValue(ARG_SHARD));
+        settings.put(Constants.LEASE_DIRECTORY, parser.getArgumentValue(ARG_LEASE_DIR));
+        settings.put(Constants.LEASE_TIMEOUT, parser.getArgumentValue(ARG_LEASE_TIMEOUT));
+        settings.put(Constants.LEASE_ATTEMPTS, parser.getArgumentValue(ARG_LEASE_ATTEMPTS));
+    }
+
+    /**
+     * Get the export format for given command line value.
+     * @param format Format name or file extension (like 'md'). Can be null.
+     * @return Export format or null (if not recognized).
+     */
+    protected FileFormat getExportFormat(String format) {
+        if (format == null) {
+            return null;
+        }
+        FileFormat exportFormat = FileFormat.getByName(format);
+        if (exportFormat == null) {
+            exportFormat = FileFormat.getByExtension(format.startsWith(".") ? format : "." + format);
+        }
+        return exportFormat;
+    }
+
+    /**
+     * Search the annotation index.
+     * @param indexDir Index directory.
+     * @param query Search query.
+     */
+    public void doSearch(String indexDir, String query) {
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(new File(indexDir))) {
+            long start = System.nanoTime();
+            List<SearchHit> hits = reader.search(query);
+            long elapsed = System.nanoTime() - start;
+            for (SearchHit hit : hits) {
+                printMessage(String.format("%s: page %d", hit.getDocument(), hit.getPage()));
+            } //
+            printMessage(String.format("Found %d page(s) in %.3f ms", hits.size(), elapsed / 1e6));
+        }
+    }
+
     /**
      * Print message to the console.
      * @param message The message.
@@ -63,12 +310,91 @@ public class ConsoleRunner {
             + String.format("DyAnnotationExtractor -%s <inputFile> -%s <outputFile>\n",
                 ARG_INPUT, ARG_OUTPUT)
             + "where:\n"
-            + "<inputFile> = input file name.\n"
-            + "<outputFile> = output file name (optional).\n"
+            + "<inputFile> = input file name (or directory - to extract all documents in it).\n"
+            + "<outputFile> = output file name or directory (optional).\n"
             + "additional arguments:\n"
+            + String.format("-%s <indexDir> : Also add the annotations to search index.\n", ARG_INDEX)
+            + String.format("-%s <query> -%s <indexDir> : Search the index (no extraction).\n",
+                ARG_SEARCH, ARG_INDEX)
+            + String.format("-%s <directory> : Watch directory and extract every new or changed document.\n",
+                ARG_WATCH)
+            + String.format("-%s <md|txt|jsonl> : Output format (when no output file is given).\n", ARG_FORMAT)
+            + String.format("-%s <millis> : Maximum extraction time per document.\n", ARG_TIMEOUT)
+            + String.format("-%s <millis> : Maximum extraction time per page.\n", ARG_PAGE_TIMEOUT)
+            + String.format("-%s <count> : Maximum number of glyphs to process per document.\n",
+                ARG_MAX_GLYPHS)
+            + String.format("-%s <count> : Maximum number of highlight lines to process per document.\n",
+                ARG_MAX_QUADS)
+            + String.format("-%s <1-5,8,100-,last:20> : Extract only annotations from these pages ('100-' ="
+                + " from page 100 to the end, 'last:20' = the last 20 pages).\n", ARG_PAGES)
+            + String.format("-%s <count> : Extract only annotations from this number of evenly distributed"
+                + " pages (of the selected ones).\n", ARG_SAMPLE)
+            + String.format("-%s <Highlight,FreeText,...> : Extract only annotations of these types.\n",
+                ARG_TYPES)
+            + String.format("-%s <#rrggbb,...> : Extract only annotations with these colors.\n", ARG_COLORS)
+            + String.format("-%s <name,...> : Extract only annotations from these authors.\n", ARG_AUTHORS)
+            + String.format("-%s <yyyy-mm-dd> -%s <yyyy-mm-dd> : Extract only annotations modified in"
+                + " this period.\n", ARG_DATE_FROM, ARG_DATE_TO)
+            + String.format("-%s <%s|%s|%s> : Group the exported annotations.\n", ARG_GROUP_BY,
+                Constants.GROUP_BY_PAGE, Constants.GROUP_BY_COLOR, Constants.GROUP_BY_CHAPTER)
+            + String.format("-%s <#rrggbb=Name,...> : Names of the color groups.\n", ARG_COLOR_CATEGORIES)
+            + String.format("-%s <count> : Number of documents extracted in parallel (directory input).\n",
+                ARG_THREADS)
+            + String.format("-%s <count> : Maximum number of concurrently open output files.\n",
+                ARG_MAX_OPEN_FILES)
+            + String.format("-%s <MB> : Heap budget of the documents extracted in parallel (default: 70%% of"
+                + " the heap).\n", ARG_MEMORY_BUDGET)
+            + String.format("-%s <outputFile> : Extract all documents in the input directory into single"
+                + " output file (md, txt or jsonl).\n", ARG_COMBINE)
+            + String.format("-%s <%s|%s|%s> : Order of the documents in the combined output.\n", ARG_SORT_BY,
+                Constants.SORT_BY_FILE, Constants.SORT_BY_TITLE, Constants.SORT_BY_AUTHOR)
+            + String.format("-%s <previousFile> : Export only the annotation changes against previous"
+                + " document version.\n", ARG_DIFF)
+            + String.format("-%s <cacheDir> : Export only the annotation changes since the previous"
+                + " extraction.\n", ARG_DIFF_CACHE)
+            + String.format("-%s <count> : Print the first annotations of the input file (no extraction).\n",
+                ARG_PREVIEW)
+            + String.format("-%s <password> : Password of the encrypted input documents.\n", ARG_PASSWORD)
+            + String.format("-%s <file> : File with known passwords (lines like 'directory=password' or"
+                + " '*.pdf=password').\n", ARG_PASSWORD_FILE)
+            + String.format("-%s : Skip the annotations and pages, which cannot be extracted (they are"
+                + " reported in the output).\n", ARG_RESILIENT)
+            + String.format("-%s <file> : Record the progress of directory extraction.\n", ARG_JOURNAL)
+            + String.format("-%s : Skip the documents already extracted according to the journal.\n",
+                ARG_RESUME)
+            + String.format("-%s <i/n> : Extract only the i-th of n directory shards (split by path hash).\n",
+                ARG_SHARD)
+            + String.format("-%s <dir> : Share the directory extraction with other nodes via lease files.\n",
+                ARG_LEASE_DIR)
+            + String.format("-%s <ms> : Lease timeout, after which the work of crashed node is taken over.\n",
+                ARG_LEASE_TIMEOUT)
+            + String.format("-%s <count> : Maximum attempts to extract failing document (shared by all nodes).\n",
+                ARG_LEASE_ATTEMPTS)
+            + String.format("-%s <%s|%s> : Logging backend - simple console logger (default, faster startup)"
+                + " or configurable log4j-core.\n", ARG_LOGGING, Constants.LOGGING_SIMPLE, Constants.LOGGING_FULL)
             + String.format("-%s : Prints the supported command line arguments.\n", ARG_HELP);
     }
 
+    /**
+     * Select the logging backend. It must be called before the first logger is created.
+     * @param mode {@link Constants#LOGGING_SIMPLE} (or null) - the simple logger of log4j API, which
+     * avoids the log4j-core initialization (plugin scanning, configuration lookup).
+     * {@link Constants#LOGGING_FULL} - log4j-core with its configuration. The simple logger is not used
+     * also if the logging is configured by system properties.
+     */
+    protected static void configureLogging(String mode) {
+        if ((mode == null) || Constants.LOGGING_SIMPLE.equalsIgnoreCase(mode)) {
+            if ((System.getProperty(LOG_FACTORY_PROPERTY) == null)
+                && (System.getProperty(LOG_CONFIG_PROPERTY) == null)) {
+                System.setProperty(LOG_FACTORY_PROPERTY, SIMPLE_LOG_FACTORY);
+            }
+        }
+        else if (!Constants.LOGGING_FULL.equalsIgnoreCase(mode)) {
+            String message = String.format("Unsupported logging backend '%s'", mode);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
     /**
      * Execution entry point.
      * @param args Command line arguments.
@@ -81,16 +407,51 @@ public class ConsoleRunner {
         // Parse the command line.
         CommandLineParser parser = new CommandLineParser(args);
         parser.parseArguments(args);
+        configureLogging(parser.getArgumentValue(ARG_LOGGING));
 
         String inputFile = parser.getArgumentValue(ARG_INPUT);
+        String query = parser.getArgumentValue(ARG_SEARCH);
+        String indexDir = parser.getArgumentValue(ARG_INDEX);
+        String watchDir = parser.getArgumentValue(ARG_WATCH);
+        FileFormat format = runner.getExportFormat(parser.getArgumentValue(ARG_FORMAT));
         if ((inputFile != null)) {
             // Holder for additional execution settings.
             HashMap<String, Object> settings = new HashMap<>();
             // Retrieve the output file name.
             String outputFile = parser.getArgumentValue(ARG_OUTPUT);
-            settings.put(Constants.EXPORT_FORMAT, FileFormat.detectFileFormat(outputFile));
+            FileFormat outputFormat = FileFormat.detectFileFormat(outputFile);
+            settings.put(Constants.EXPORT_FORMAT, (outputFormat != null) ? outputFormat : format);
+            settings.put(Constants.INDEX_DIRECTORY, indexDir);
+            runner.readSettings(parser, settings);
             // Execute the annotation extraction.
-            runner.doExtract(inputFile, settings, outputFile);
+            String combineFile = parser.getArgumentValue(ARG_COMBINE);
+            String preview = parser.getArgumentValue(ARG_PREVIEW);
+            if (preview != null) {
+                runner.doPreview(inputFile, settings, Integer.parseInt(preview));
+            }
+            else if ((combineFile != null) && new File(inputFile).isDirectory()) {
+                FileFormat combineFormat = FileFormat.detectFileFormat(combineFile);
+                settings.put(Constants.EXPORT_FORMAT, (combineFormat != null) ? combineFormat : format);
+                runner.doCombine(inputFile, settings, combineFile);
+            }
+            else if (new File(inputFile).isDirectory()) {
+                runner.doBatch(inputFile, settings, outputFile);
+            }
+            else {
+                runner.doExtract(inputFile, settings, outputFile);
+            }
+        }
+        else if (watchDir != null) {
+            // Extract continuously from the watched directory.
+            HashMap<String, Object> settings = new HashMap<>();
+            settings.put(Constants.EXPORT_FORMAT, format);
+            settings.put(Constants.INDEX_DIRECTORY, indexDir);
+            runner.readSettings(parser, settings);
+            runner.doWatch(watchDir, settings);
+        }
+        else if ((query != null) && (indexDir != null)) {
+            // Search in previously extracted annotations.
+            runner.doSearch(indexDir, query);
         }
         else {
             // Print additional information.
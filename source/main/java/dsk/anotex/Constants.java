@@ -8,6 +8,49 @@ public class Constants {
     public static final String APP_VERSION = "1.3";
 
     public static final String EXPORT_FORMAT = "exportFormat";
+    public static final String INDEX_DIRECTORY = "indexDirectory";
+    public static final String DOCUMENT_TIMEOUT = "documentTimeout";
+    public static final String PAGE_TIMEOUT = "pageTimeout";
+    public static final String MAX_GLYPHS = "maxGlyphs";
+    public static final String MAX_QUADS = "maxQuads";
+    public static final String PAGES = "pages";
+    public static final String SAMPLE = "sample";
+    public static final String TYPES = "types";
+    public static final String COLORS = "colors";
+    public static final String AUTHORS = "authors";
+    public static final String DATE_FROM = "dateFrom";
+    public static final String DATE_TO = "dateTo";
+    public static final String GROUP_BY = "groupBy";
+    public static final String COLOR_CATEGORIES = "colorCategories";
+    public static final String THREADS = "threads";
+    public static final String MAX_OPEN_FILES = "maxOpenFiles";
+    public static final String MEMORY_BUDGET = "memoryBudget";
+    public static final String SORT_BY = "sortBy";
+    public static final String DIFF_WITH = "diffWith";
+    public static final String DIFF_CACHE = "diffCache";
+    public static final String PASSWORD = "password";
+    public static final String PASSWORD_FILE = "passwordFile";
+    public static final String RESILIENT = "resilient";
+    public static final String JOURNAL = "journal";
+    public static final String RESUME = "resume";
+    public static final String SHARD = "shard";
+    public static final String LEASE_DIRECTORY = "leaseDirectory";
+    public static final String LEASE_TIMEOUT = "leaseTimeout";
+    public static final String LEASE_ATTEMPTS = "leaseAttempts";
+
+    // Values for the GROUP_BY setting.
+    public static final String GROUP_BY_PAGE = "page";
+    public static final String GROUP_BY_COLOR = "color";
+    public static final String GROUP_BY_CHAPTER = "chapter";
+
+    // Values for the SORT_BY setting.
+    public static final String SORT_BY_FILE = "file";
+    public static final String SORT_BY_TITLE = "title";
+    public static final String SORT_BY_AUTHOR = "author";
+
+    // Values for the logging backend (command line).
+    public static final String LOGGING_SIMPLE = "simple";
+    public static final String LOGGING_FULL = "full";
 
     // Prevent instance creation.
     private Constants() {
@@ -0,0 +1,111 @@
+package dsk.anotex;
+
+import dsk.anotex.core.AnnotatedDocument;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cache of previous extractions (one serialized {@link AnnotatedDocument} per input file).
+ * Used to compare the document with its previous version, which is not available any more.
+ */
+public class ExtractionCache {
+    protected static final String FILE_EXTENSION = ".ser";
+    protected static final Logger log = LogManager.getLogger(ExtractionCache.class);
+    protected File cacheDir;
+
+    /**
+     * Constructor with specified parameters.
+     * @param cacheDir Cache directory (created if not existing).
+     */
+    public ExtractionCache(File cacheDir) {
+        super();
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Get the previous extraction of given document.
+     * @param inputFile Input document file name.
+     * @return Previously stored document or null (if not in the cache).
+     */
+    public AnnotatedDocument load(String inputFile) {
+        Path file = getCacheFile(inputFile);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+             ObjectInputStream objects = new ObjectInputStream(in)) {
+            return (AnnotatedDocument) objects.readObject();
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // Stale or damaged entry (it will be replaced by the next store).
+            log.warn("Cannot read cached extraction of '{}': {}", inputFile, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Store the extraction of given document (replacing the previous one).
+     * @param inputFile Input document file name.
+     * @param document Extracted document.
+     */
+    public void store(String inputFile, AnnotatedDocument document) {
+        Path file = getCacheFile(inputFile);
+        // Unique temporary file - the same document can be stored by more threads (or processes).
+        Path temp = file.resolveSibling("." + file.getFileName() + "."
+            + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.createFile(temp);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp));
+                 ObjectOutputStream objects = new ObjectOutputStream(out)) {
+                objects.writeObject(document);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException ignored) {
+                // Nothing more can be done.
+            }
+            String message = String.format("Cannot store extraction of '%s'", inputFile);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Get cache file for given input document.
+     * @param inputFile Input document file name.
+     * @return Cache file (named by hash of the absolute input file path).
+     */
+    protected Path getCacheFile(String inputFile) {
+        String path = new File(inputFile).getAbsolutePath();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(path.getBytes(StandardCharsets.UTF_8));
+            String name = String.format("%064x", new BigInteger(1, hash));
+            return new File(cacheDir, name + FILE_EXTENSION).toPath();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package dsk.anotex;
+
+import dsk.anotex.core.FileFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches directory tree for new or changed documents. The file system events are debounced:
+ * a file is passed to the handler only after it was not touched for the quiet period (so the
+ * document is not read while some reader is still saving it). Repeated events for the same file
+ * are coalesced into single extraction.
+ */
+public class FolderWatcher implements Closeable {
+    public static final long DEFAULT_QUIET_PERIOD = 2000;
+    protected static final long POLL_INTERVAL = 250;
+
+    protected Path rootDir;
+    protected long quietPeriod;
+    protected Consumer<Path> handler;
+    protected WatchService watchService;
+    protected Map<WatchKey, Path> watchedDirs;
+    protected Map<Path, PendingFile> pending;
+    protected volatile boolean running;
+
+    /**
+     * Constructor with specified parameters.
+     * @param rootDir Directory to watch (with its sub-directories).
+     * @param quietPeriod Time (in milliseconds) without changes, after which the file is processed.
+     * @param handler Handler to call for every changed document.
+     */
+    public FolderWatcher(Path rootDir, long quietPeriod, Consumer<Path> handler) {
+        super();
+        if (!Files.isDirectory(rootDir)) {
+            String message = String.format("Directory '%s' does not exist", rootDir);
+            throw new IllegalArgumentException(message);
+        }
+        this.rootDir = rootDir;
+        this.quietPeriod = quietPeriod;
+        this.handler = handler;
+        watchedDirs = new HashMap<>();
+        pending = new LinkedHashMap<>();
+        try {
+            watchService = rootDir.getFileSystem().newWatchService();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        registerTree(rootDir);
+    }
+
+    /**
+     * Process the file system events until the watcher is closed (or the thread is interrupted).
+     */
+    public void run() {
+        running = true;
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                processEvents(POLL_INTERVAL);
+            } //
+        }
+        catch (ClosedWatchServiceException e) {
+            // The watcher was closed.
+        }
+    }
+
+    /**
+     * Wait for file system events and process the documents, which became ready.
+     * @param timeout Maximum time to wait for events (in milliseconds).
+     */
+    public void processEvents(long timeout) {
+        WatchKey key;
+        try {
+            key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long now = currentTime();
+        while (key != null) {
+            handleKey(key, now);
+            key = watchService.poll();
+        } //
+        for (Path file : collectReadyFiles(currentTime())) {
+            handler.accept(file);
+        } //
+    }
+
+    /**
+     * Handle the events of single watch key.
+     * @param key Watch key.
+     * @param now Current time.
+     */
+    protected void handleKey(WatchKey key, long now) {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost. Only in this case the directory has to be scanned.
+                if (dir != null) {
+                    scanDirectory(dir, now);
+                }
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(path);
+            }
+            else if (Files.isDirectory(path)) {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    // Files could be copied in the new directory before it was registered.
+                    registerTree(path);
+                    scanDirectory(path, now);
+                }
+            }
+            else {
+                registerEvent(path, now);
+            }
+        } //
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Record change event for given file. Subsequent events only postpone the processing.
+     * @param file The changed file.
+     * @param now Event time.
+     */
+    protected void registerEvent(Path file, long now) {
+        if (isSupportedFile(file)) {
+            PendingFile entry = pending.get(file);
+            if (entry == null) {
+                entry = new PendingFile();
+                pending.put(file, entry);
+            }
+            entry.lastEvent = now;
+            entry.size = fileSize(file);
+        }
+    }
+
+    /**
+     * Get the pending files, which were not changed during the quiet period, and remove them from
+     * the pending list.
+     * @param now Current time.
+     * @return Files ready for processing (in order of their first change).
+     */
+    protected List<Path> collectReadyFiles(long now) {
+        List<Path> ready = new ArrayList<>();
+        Iterator<Map.Entry<Path, PendingFile>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, PendingFile> e = it.next();
+            PendingFile entry = e.getValue();
+            if (now - entry.lastEvent < quietPeriod) {
+                continue;
+            }
+            long size = fileSize(e.getKey());
+            if (size < 0) {
+                // The file disappeared.
+                it.remove();
+            }
+            else if (size != entry.size) {
+                // Still written (without events reaching us yet).
+                entry.size = size;
+                entry.lastEvent = now;
+            }
+            else {
+                it.remove();
+                ready.add(e.getKey());
+            }
+        } //
+        return ready;
+    }
+
+    /**
+     * Check if given file should be processed.
+     * @param file The file.
+     * @return True if the file is a supported input document.
+     */
+    protected boolean isSupportedFile(Path file) {
+        return FileFormat.detectFileFormat(file.getFileName().toString()) == FileFormat.PDF;
+    }
+
+    /**
+     * Register given directory and its sub-directories for watching.
+     * @param dir The directory.
+     */
+    protected void registerTree(Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs)
+                    throws IOException {
+                    WatchKey key = d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    watchedDirs.put(key, d);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot watch directory '%s'", dir);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Mark all supported files in given directory (not recursive) as changed.
+     * @param dir The directory.
+     * @param now Current time.
+     */
+    protected void scanDirectory(Path dir, long now) {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(Files::isRegularFile).forEach(f -> registerEvent(f, now));
+        }
+        catch (IOException e) {
+            // The directory was removed meanwhile.
+        }
+    }
+
+    protected long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    public Path getRootDir() {
+        return rootDir;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * File waiting for the quiet period to expire.
+     */
+    protected static class PendingFile {
+        long lastEvent;
+        long size;
+    }
+}
@@ -0,0 +1,273 @@
+package dsk.anotex;
+
+import dsk.anotex.util.FileDigest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only progress journal of batch extraction. There is one line per processed document:
+ * <pre>
+ * status size modified hash input output   (tab separated)
+ * </pre>
+ * After restart, the documents, which were already extracted (with the same content and still
+ * existing output), can be skipped. The last line of the journal may be damaged by the crash - it
+ * is ignored. Thread safe.
+ */
+public class ProgressJournal implements Closeable {
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+    /** Extracted only partially (limits reached or resilient problems) - extracted again after resume. */
+    public static final String STATUS_PARTIAL = "PARTIAL";
+    protected static final Logger log = LogManager.getLogger(ProgressJournal.class);
+    protected File file;
+    protected Map<String, Entry> entries;
+    protected BufferedWriter writer;
+
+    /**
+     * Open the journal.
+     * @param file Journal file.
+     * @param resume True = read the previous progress and continue. False = start new journal.
+     */
+    public ProgressJournal(File file, boolean resume) {
+        super();
+        this.file = file;
+        entries = new HashMap<>();
+        try {
+            if (resume && file.isFile()) {
+                read();
+            }
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            StandardOpenOption mode = resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            boolean damagedEnd = resume && endsWithPartialLine();
+            writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, mode);
+            if (damagedEnd) {
+                // Do not continue the interrupted line.
+                writer.append('\n');
+            }
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot open progress journal '%s'", file);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Check if the last journal line was not finished.
+     * @return True if the journal does not end with new line.
+     * @throws IOException If reading fails.
+     */
+    protected boolean endsWithPartialLine() throws IOException {
+        if (!file.isFile() || (file.length() == 0)) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(file.length() - 1);
+            return in.read() != '\n';
+        }
+    }
+
+    /**
+     * Read the previous progress (the last entry of every document is used).
+     * @throws IOException If reading fails.
+     */
+    protected void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] items = line.split("\t", -1);
+                if (items.length != 6) {
+                    // Damaged line (like interrupted write).
+                    log.warn("Skipping invalid journal line: {}", line);
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(items[0], Long.parseLong(items[1]), Long.parseLong(items[2]),
+                        items[3], unescape(items[5]));
+                    entries.put(unescape(items[4]), entry);
+                }
+                catch (NumberFormatException e) {
+                    log.warn("Skipping invalid journal line: {}", line);
+                }
+            } //
+        }
+    }
+
+    /**
+     * Check if the document was already extracted (and did not change since then).
+     * @param inputFile Input document.
+     * @param outputFile Expected output file.
+     * @return True if the document can be skipped.
+     */
+    public boolean isCompleted(Path inputFile, String outputFile) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(inputFile.toString());
+        }
+        if ((entry == null) || !STATUS_DONE.equals(entry.status) || !entry.outputFile.equals(outputFile)
+            || !new File(outputFile).isFile()) {
+            return false;
+        }
+        File input = inputFile.toFile();
+        long size = input.length();
+        long modified = input.lastModified();
+        if ((size == entry.size) && (modified == entry.modified)) {
+            return true;
+        }
+        // Touched (or copied) file - compare the content.
+        if (!entry.hash.equals(hashFile(inputFile))) {
+            return false;
+        }
+        // Record the new size and time, so the file is not hashed again on the next resume.
+        record(STATUS_DONE, inputFile, new FileState(size, modified, entry.hash), outputFile);
+        return true;
+    }
+
+    /**
+     * Record successful extraction.
+     * @param inputFile Input document.
+     * @param state State of the input document before the extraction (see {@link #captureState(Path)}).
+     * @param outputFile Output file.
+     */
+    public void recordDone(Path inputFile, FileState state, String outputFile) {
+        record(STATUS_DONE, inputFile, state, outputFile);
+    }
+
+    /**
+     * Record partial extraction (the document is extracted again after resume).
+     * @param inputFile Input document.
+     * @param state State of the input document before the extraction.
+     * @param outputFile Output file.
+     */
+    public void recordPartial(Path inputFile, FileState state, String outputFile) {
+        record(STATUS_PARTIAL, inputFile, state, outputFile);
+    }
+
+    /**
+     * Record failed extraction (the document is extracted again after resume).
+     * @param inputFile Input document.
+     * @param state State of the input document before the extraction or null (if unknown).
+     * @param outputFile Output file.
+     */
+    public void recordFailed(Path inputFile, FileState state, String outputFile) {
+        record(STATUS_FAILED, inputFile, (state != null) ? state : new FileState(0, 0, ""), outputFile);
+    }
+
+    protected synchronized void record(String status, Path inputFile, FileState state, String outputFile) {
+        Entry entry = new Entry(status, state.size, state.modified, state.hash, outputFile);
+        entries.put(inputFile.toString(), entry);
+        try {
+            writer.append(status).append('\t').append(Long.toString(entry.size)).append('\t')
+                .append(Long.toString(entry.modified)).append('\t').append(entry.hash).append('\t')
+                .append(escape(inputFile.toString())).append('\t').append(escape(outputFile)).append('\n');
+            // Flushed per line, so only the document in progress is lost when the process dies.
+            writer.flush();
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot write progress journal '%s'", file);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Calculate the content hash of file.
+     * @param file The file.
+     * @return SHA-256 hash (hex).
+     */
+    public static String hashFile(Path file) {
+        return FileDigest.hashFile(file);
+    }
+
+    /**
+     * Capture the size, modification time and content hash of file (before it is extracted).
+     * @param file The file.
+     * @return File state.
+     */
+    public static FileState captureState(Path file) {
+        // Read before the hash - if the file changes meanwhile, it is hashed again on the next resume.
+        File input = file.toFile();
+        long size = input.length();
+        long modified = input.lastModified();
+        return new FileState(size, modified, hashFile(file));
+    }
+
+    protected static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    protected static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if ((ch == '\\') && (i + 1 < value.length())) {
+                char next = value.charAt(++i);
+                ch = (next == 't') ? '\t' : (next == 'n') ? '\n' : next;
+            }
+            buf.append(ch);
+        } //
+        return buf.toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            log.warn("Cannot close progress journal '{}': {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Size, modification time and content hash of input document, captured together.
+     */
+    public static class FileState {
+        protected final long size;
+        protected final long modified;
+        protected final String hash;
+
+        public FileState(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Journal entry of one document.
+     */
+    protected static class Entry {
+        protected String status;
+        protected long size;
+        protected long modified;
+        protected String hash;
+        protected String outputFile;
+
+        protected Entry(String status, long size, long modified, String hash, String outputFile) {
+            this.status = status;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.outputFile = outputFile;
+        }
+    }
+}
@@ -9,17 +9,33 @@ import java.util.List;
  */
 public class AnnotatedDocument implements Serializable {
 	private static final long serialVersionUID = 3092341965464094850L;
+	protected String fileName;
 	protected String title;
     protected String subject;
     protected String author;
     protected int pages;
     protected List<String> keywords;
     protected List<Annotation> annotations;
+    protected boolean incomplete;
+    protected String incompleteReason;
+    protected List<ExtractionProblem> problems;
 
     public AnnotatedDocument() {
         super();
     }
 
+    /**
+     * Get the name of the file, from which the annotations were read.
+     * @return File name or null.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -74,6 +90,69 @@ public class AnnotatedDocument implements Serializable {
         this.keywords = keywords;
     }
 
+    /**
+     * Check if the extraction was interrupted (by some limit) and the annotations are partial.
+     * @return True if some annotations may be missing.
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    public void setIncomplete(boolean incomplete) {
+        this.incomplete = incomplete;
+    }
+
+    public String getIncompleteReason() {
+        return incompleteReason;
+    }
+
+    public void setIncompleteReason(String incompleteReason) {
+        this.incompleteReason = incompleteReason;
+    }
+
+    /**
+     * Get the annotations and pages, which failed to extract (in resilient mode).
+     * @return Extraction problems (can be empty).
+     */
+    public List<ExtractionProblem> getProblems() {
+        if (problems == null) {
+            problems = new LinkedList<>();
+        }
+        return problems;
+    }
+
+    /**
+     * Record extraction problem. The document is marked as incomplete.
+     * @param problem The problem.
+     */
+    public void addProblem(ExtractionProblem problem) {
+        getProblems().add(problem);
+        if (!incomplete) {
+            incomplete = true;
+            incompleteReason = "Some annotations could not be extracted";
+        }
+    }
+
+    /**
+     * Create copy of this document with other annotations.
+     * @param annotations The annotations of the copy.
+     * @return Document copy (the properties are not cloned).
+     */
+    public AnnotatedDocument copyWithAnnotations(List<Annotation> annotations) {
+        AnnotatedDocument copy = new AnnotatedDocument();
+        copy.fileName = fileName;
+        copy.title = title;
+        copy.subject = subject;
+        copy.author = author;
+        copy.pages = pages;
+        copy.keywords = keywords;
+        copy.incomplete = isIncomplete();
+        copy.incompleteReason = getIncompleteReason();
+        copy.problems = getProblems();
+        copy.annotations = annotations;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "{" + title + '}';
@@ -1,6 +1,10 @@
 package dsk.anotex.core;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 
 /**
  * Represents document annotation (highlight/comment). It is independent from the document format.
@@ -10,6 +14,16 @@ public class Annotation implements Serializable {
 	protected String text;
 	protected String highlight;
 	protected int page = 0;
+	protected String type;
+	protected String color;
+	protected String author;
+	protected Date creationDate;
+	protected Date modificationDate;
+	protected float[] rectangle;
+	protected String richText;
+	protected String chapter;
+	protected Annotation inReplyTo;
+	protected List<Annotation> replies;
 	
     public Annotation() {
     }
@@ -48,6 +62,138 @@ public class Annotation implements Serializable {
     	this.page = page;
     }
     
+    /**
+     * Get the annotation type (as named in the original document, like 'Highlight').
+     * @return Annotation type or null.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Get the annotation color.
+     * @return Color in '#rrggbb' format or null (if the annotation has no color).
+     */
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public Date getModificationDate() {
+        return modificationDate;
+    }
+
+    public void setModificationDate(Date modificationDate) {
+        this.modificationDate = modificationDate;
+    }
+
+    /**
+     * Get the annotation rectangle on the page.
+     * @return Rectangle coordinates [llx, lly, urx, ury] or null.
+     */
+    public float[] getRectangle() {
+        return rectangle;
+    }
+
+    public void setRectangle(float[] rectangle) {
+        this.rectangle = rectangle;
+    }
+
+    /**
+     * Get the formatted annotation text (converted from the document rich text).
+     * @return Annotation text in Markdown format or null (if the annotation has no formatting).
+     */
+    public String getRichText() {
+        return richText;
+    }
+
+    public void setRichText(String richText) {
+        this.richText = richText;
+    }
+
+    /**
+     * Get the document chapter (from the document outline), where the annotation is.
+     * @return Chapter title path (like 'Part 1 / Chapter 2') or null.
+     */
+    public String getChapter() {
+        return chapter;
+    }
+
+    public void setChapter(String chapter) {
+        this.chapter = chapter;
+    }
+
+    /**
+     * Get the annotation, to which this one replies.
+     * @return Parent annotation or null (if this is not a reply).
+     */
+    public Annotation getInReplyTo() {
+        return inReplyTo;
+    }
+
+    /**
+     * Get the replies to this annotation (the conversation thread).
+     * @return Direct replies in document order (can be empty).
+     */
+    public List<Annotation> getReplies() {
+        return (replies != null) ? replies : Collections.<Annotation>emptyList();
+    }
+
+    /**
+     * Add reply to this annotation.
+     * @param reply The reply.
+     */
+    public void addReply(Annotation reply) {
+        if (replies == null) {
+            replies = new ArrayList<>(2);
+        }
+        replies.add(reply);
+        reply.inReplyTo = this;
+    }
+
+    /**
+     * Remove reply from this annotation.
+     * @param reply The reply.
+     */
+    public void removeReply(Annotation reply) {
+        if ((replies != null) && replies.remove(reply)) {
+            reply.inReplyTo = null;
+        }
+    }
+
+    /**
+     * Normalize color given by the user (like 'FFFF00') to the '#rrggbb' format.
+     * @param color The color.
+     * @return Normalized color.
+     */
+    public static String normalizeColor(String color) {
+        color = color.trim().toLowerCase();
+        return color.startsWith("#") ? color : "#" + color;
+    }
+
     public boolean isEmpty() {
     	return (highlight==null || highlight.length()==0) && (text==null || text.length()==0);
     }
@@ -0,0 +1,181 @@
+package dsk.anotex.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Difference between the annotations of two versions of the same document.
+ * Use {@link #compare(AnnotatedDocument, AnnotatedDocument)} to create it.
+ */
+public class AnnotationDiff {
+    protected List<Annotation> added;
+    protected List<Annotation> removed;
+    protected List<Annotation> changed;
+    protected Map<Annotation, Annotation> previousVersions;
+
+    public AnnotationDiff() {
+        super();
+        added = new ArrayList<>();
+        removed = new ArrayList<>();
+        changed = new ArrayList<>();
+        previousVersions = new IdentityHashMap<>();
+    }
+
+    /**
+     * Compare the annotations of two document versions. Runs in linear time: the annotations are
+     * matched by hashed per-page signatures, in the following order:
+     * <ol>
+     *     <li>Complete content (page, type, highlight, text, color, author) - unchanged annotation.</li>
+     *     <li>Position on the page - changed annotation (like edited comment or re-colored highlight).</li>
+     *     <li>Page and highlighted text - changed annotation (position differs).</li>
+     * </ol>
+     * The annotations, which are not matched, are added (in the current version) or removed
+     * (in the previous version).
+     * @param previous Previous document version. Null = all the annotations are added.
+     * @param current Current document version.
+     * @return The difference.
+     */
+    public static AnnotationDiff compare(AnnotatedDocument previous, AnnotatedDocument current) {
+        AnnotationDiff diff = new AnnotationDiff();
+        List<Annotation> oldAnnotations = new ArrayList<>();
+        if (previous != null) {
+            oldAnnotations.addAll(previous.getAnnotations());
+        }
+        List<Annotation> newAnnotations = new ArrayList<>(current.getAnnotations());
+        oldAnnotations.removeIf(Annotation::isEmpty);
+        newAnnotations.removeIf(Annotation::isEmpty);
+
+        // Unchanged annotations.
+        match(oldAnnotations, newAnnotations, AnnotationDiff::contentKey, null);
+        // Changed annotations.
+        match(oldAnnotations, newAnnotations, AnnotationDiff::positionKey, diff);
+        match(oldAnnotations, newAnnotations, AnnotationDiff::highlightKey, diff);
+
+        diff.added.addAll(newAnnotations);
+        diff.removed.addAll(oldAnnotations);
+        // Keep the document order.
+        for (Annotation annotation : current.getAnnotations()) {
+            if (diff.previousVersions.containsKey(annotation)) {
+                diff.changed.add(annotation);
+            }
+        } //
+        return diff;
+    }
+
+    /**
+     * Match the annotations with equal keys and remove them from the lists.
+     * @param oldAnnotations Not matched annotations of the previous version.
+     * @param newAnnotations Not matched annotations of the current version.
+     * @param keyFunction Annotation key. Null key = the annotation cannot be matched this way.
+     * @param diff Where to put the matched annotations as changed. Null = they are unchanged.
+     */
+    protected static void match(List<Annotation> oldAnnotations, List<Annotation> newAnnotations,
+        Function<Annotation, Object> keyFunction, AnnotationDiff diff) {
+        Map<Object, Deque<Annotation>> index = new HashMap<>();
+        for (Annotation annotation : oldAnnotations) {
+            Object key = keyFunction.apply(annotation);
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new ArrayDeque<>(1)).add(annotation);
+            }
+        } //
+        if (index.isEmpty()) {
+            return;
+        }
+        Map<Annotation, Boolean> matched = new IdentityHashMap<>();
+        List<Annotation> notMatched = new ArrayList<>();
+        for (Annotation annotation : newAnnotations) {
+            Object key = keyFunction.apply(annotation);
+            Deque<Annotation> candidates = (key != null) ? index.get(key) : null;
+            if ((candidates != null) && !candidates.isEmpty()) {
+                Annotation previous = candidates.poll();
+                matched.put(previous, Boolean.TRUE);
+                if (diff != null) {
+                    diff.previousVersions.put(annotation, previous);
+                }
+            }
+            else {
+                notMatched.add(annotation);
+            }
+        } //
+        // Not removed one by one (that would be quadratic).
+        newAnnotations.clear();
+        newAnnotations.addAll(notMatched);
+        oldAnnotations.removeIf(matched::containsKey);
+    }
+
+    protected static Object contentKey(Annotation annotation) {
+        return Arrays.asList(annotation.getPage(), annotation.getType(), annotation.getHighlight(),
+            annotation.getText(), annotation.getColor(), annotation.getAuthor());
+    }
+
+    protected static Object positionKey(Annotation annotation) {
+        float[] rect = annotation.getRectangle();
+        if ((rect == null) || (rect.length < 4)) {
+            return null;
+        }
+        // Rounded to whole points (the coordinates may be slightly different after re-saving).
+        return Arrays.asList(annotation.getPage(), annotation.getType(), Math.round(rect[0]),
+            Math.round(rect[1]), Math.round(rect[2]), Math.round(rect[3]));
+    }
+
+    protected static Object highlightKey(Annotation annotation) {
+        if (annotation.getHighlight() == null) {
+            return null;
+        }
+        return Arrays.asList(annotation.getPage(), annotation.getHighlight());
+    }
+
+    /**
+     * Get the annotations, which are new in the current version.
+     * @return Added annotations.
+     */
+    public List<Annotation> getAdded() {
+        return added;
+    }
+
+    /**
+     * Get the annotations, which are not present in the current version.
+     * @return Removed annotations (from the previous version).
+     */
+    public List<Annotation> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Get the annotations, which were modified in the current version.
+     * @return Changed annotations (from the current version).
+     */
+    public List<Annotation> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Get the previous version of changed annotation.
+     * @param annotation Changed annotation.
+     * @return The annotation from the previous document version or null.
+     */
+    public Annotation getPreviousVersion(Annotation annotation) {
+        return previousVersions.get(annotation);
+    }
+
+    /**
+     * Check if there are no differences.
+     * @return True if the versions have the same annotations.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "{Added: " + added.size() + ", Removed: " + removed.size() + ", Changed: "
+            + changed.size() + "}";
+    }
+}
@@ -0,0 +1,210 @@
+package dsk.anotex.core;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Selects the annotations to extract. The importers apply it as early as possible - the pages are
+ * checked before they are loaded and the annotation metadata before the text extraction.
+ * Null criteria means "accept all".
+ */
+public class AnnotationFilter {
+    public static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    protected PageRanges pages;
+    protected Set<String> types;
+    protected Set<String> colors;
+    protected Set<String> authors;
+    protected Date dateFrom;
+    protected Date dateTo;
+
+    public AnnotationFilter() {
+        super();
+    }
+
+    /**
+     * Check if the annotations of given page should be extracted.
+     * @param page Page number.
+     * @return True if the page is accepted.
+     */
+    public boolean acceptsPage(int page) {
+        return (pages == null) || pages.contains(page);
+    }
+
+    /**
+     * Get the next page, whose annotations should be extracted.
+     * @param page Page number (0 = from the start).
+     * @return Page number or -1 (if there are no more accepted pages).
+     */
+    public int nextPage(int page) {
+        return (pages == null) ? page + 1 : pages.nextPage(page);
+    }
+
+    /**
+     * Check if given annotation should be extracted. Only the annotation metadata is checked
+     * (type, color, author, dates), so this can be called before the text extraction.
+     * @param annotation The annotation.
+     * @return True if the annotation is accepted.
+     */
+    public boolean accepts(Annotation annotation) {
+        if ((types != null) && !contains(types, annotation.getType())) {
+            return false;
+        }
+        if ((colors != null) && !colors.contains(annotation.getColor())) {
+            return false;
+        }
+        if ((authors != null) && !contains(authors, annotation.getAuthor())) {
+            return false;
+        }
+        if ((dateFrom != null) || (dateTo != null)) {
+            Date date = annotation.getModificationDate();
+            if (date == null) {
+                date = annotation.getCreationDate();
+            }
+            if ((date == null) || ((dateFrom != null) && date.before(dateFrom))
+                || ((dateTo != null) && !date.before(dateTo))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if this filter accepts everything.
+     * @return True if no criteria is set.
+     */
+    public boolean isEmpty() {
+        return (pages == null) && (types == null) && (colors == null) && (authors == null)
+            && (dateFrom == null) && (dateTo == null);
+    }
+
+    protected boolean contains(Set<String> values, String value) {
+        return (value != null) && values.contains(value.toLowerCase(Locale.ROOT));
+    }
+
+    public PageRanges getPages() {
+        return pages;
+    }
+
+    public void setPages(PageRanges pages) {
+        this.pages = pages;
+    }
+
+    public Set<String> getTypes() {
+        return types;
+    }
+
+    /**
+     * Set the accepted annotation types (case insensitive, like 'Highlight', 'FreeText').
+     * @param types Annotation types or null.
+     */
+    public void setTypes(Collection<String> types) {
+        this.types = toLowerCase(types);
+    }
+
+    public Set<String> getColors() {
+        return colors;
+    }
+
+    /**
+     * Set the accepted annotation colors.
+     * @param colors Colors (like '#ffff00' or 'FFFF00') or null.
+     */
+    public void setColors(Collection<String> colors) {
+        if (colors == null) {
+            this.colors = null;
+        }
+        else {
+            this.colors = new HashSet<>();
+            for (String color : colors) {
+                this.colors.add(Annotation.normalizeColor(color));
+            } //
+        }
+    }
+
+    public Set<String> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Set the accepted annotation authors (case insensitive).
+     * @param authors Author names or null.
+     */
+    public void setAuthors(Collection<String> authors) {
+        this.authors = toLowerCase(authors);
+    }
+
+    public Date getDateFrom() {
+        return dateFrom;
+    }
+
+    /**
+     * Accept only annotations modified at or after given date.
+     * @param dateFrom The date or null.
+     */
+    public void setDateFrom(Date dateFrom) {
+        this.dateFrom = dateFrom;
+    }
+
+    public Date getDateTo() {
+        return dateTo;
+    }
+
+    /**
+     * Accept only annotations modified before given date.
+     * @param dateTo The date (exclusive) or null.
+     */
+    public void setDateTo(Date dateTo) {
+        this.dateTo = dateTo;
+    }
+
+    protected Set<String> toLowerCase(Collection<String> values) {
+        if (values == null) {
+            return null;
+        }
+        Set<String> set = new HashSet<>();
+        for (String value : values) {
+            set.add(value.trim().toLowerCase(Locale.ROOT));
+        } //
+        return set;
+    }
+
+    /**
+     * Parse date in {@link #DATE_FORMAT} format.
+     * @param date Date string.
+     * @param endOfDay True to return the start of the next day (for exclusive upper bound).
+     * @return Parsed date (local time).
+     */
+    public static Date parseDate(String date, boolean endOfDay) {
+        String value = date.trim();
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+        // Dates like 2020-02-31 are rejected (not rolled over to the next month).
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date parsed = format.parse(value, position);
+        if ((parsed == null) || (position.getIndex() != value.length())) {
+            String message = String.format("Invalid date '%s' (expected format is %s)", date, DATE_FORMAT);
+            throw new IllegalArgumentException(message);
+        }
+        if (!endOfDay) {
+            return parsed;
+        }
+        // Calendar day (it is not 24 hours long on the daylight saving time change).
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(parsed);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTime();
+    }
+
+    @Override
+    public String toString() {
+        return "{Pages: " + pages + ", Types: " + types + ", Colors: " + colors + ", Authors: " + authors
+            + ", From: " + dateFrom + ", To: " + dateTo + "}";
+    }
+}
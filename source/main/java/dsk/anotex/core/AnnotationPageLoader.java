@@ -0,0 +1,29 @@
+package dsk.anotex.core;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Loads document annotations page by page (from some open document).
+ */
+public interface AnnotationPageLoader extends Closeable {
+
+    /**
+     * Get the document information (title, author, etc.).
+     * @return Document without annotations.
+     */
+    public AnnotatedDocument getDocumentInfo();
+
+    /**
+     * Load the (non-empty) annotations of given page.
+     * @param pageNumber Page number (starting from 1).
+     * @return Page annotations (empty if there are none or the page does not exist).
+     */
+    public List<Annotation> loadPage(int pageNumber);
+
+    /**
+     * Close the document.
+     */
+    @Override
+    public void close();
+}
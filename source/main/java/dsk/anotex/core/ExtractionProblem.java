@@ -0,0 +1,77 @@
+package dsk.anotex.core;
+
+import java.io.Serializable;
+
+/**
+ * Failure to extract single annotation or page (in resilient mode). The rest of the document is
+ * still extracted.
+ */
+public class ExtractionProblem implements Serializable {
+    private static final long serialVersionUID = -6188047350725123814L;
+    protected int page;
+    protected int annotationIndex;
+    protected String annotationType;
+    protected String errorType;
+    protected String message;
+
+    /**
+     * Constructor with specified parameters.
+     * @param page Page number.
+     * @param annotationIndex Position of the failed annotation on the page (from 0). -1 = the whole
+     * page failed.
+     * @param annotationType Type of the failed annotation (like 'Highlight') or null.
+     * @param error The error.
+     */
+    public ExtractionProblem(int page, int annotationIndex, String annotationType, Throwable error) {
+        super();
+        this.page = page;
+        this.annotationIndex = annotationIndex;
+        this.annotationType = annotationType;
+        errorType = error.getClass().getSimpleName();
+        message = error.getMessage();
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    /**
+     * Get the position of the failed annotation on the page.
+     * @return Annotation index (from 0) or -1 if the whole page failed.
+     */
+    public int getAnnotationIndex() {
+        return annotationIndex;
+    }
+
+    public String getAnnotationType() {
+        return annotationType;
+    }
+
+    /**
+     * Get the error type.
+     * @return Simple name of the exception class (like 'ClassCastException').
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("Page ").append(page);
+        if (annotationIndex >= 0) {
+            buf.append(", annotation ").append(annotationIndex + 1);
+            if (annotationType != null) {
+                buf.append(" (").append(annotationType).append(')');
+            }
+        }
+        buf.append(": ").append(errorType);
+        if (message != null) {
+            buf.append(" - ").append(message);
+        }
+        return buf.toString();
+    }
+}
@@ -6,7 +6,8 @@ package dsk.anotex.core;
 public enum FileFormat {
     PDF("Pdf", ".pdf"),
     MARKDOWN("Markdown", ".md"),
-    TEXT("Text", ".txt");
+    TEXT("Text", ".txt"),
+    JSON_LINES("JsonLines", ".jsonl");
 
     String name;
     String extension;
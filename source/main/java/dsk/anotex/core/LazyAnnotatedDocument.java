@@ -0,0 +1,212 @@
+package dsk.anotex.core;
+
+import java.io.Closeable;
+import java.io.ObjectStreamException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Annotated document, which keeps the source document open and loads the annotations only when
+ * needed:
+ * <ul>
+ *     <li>{@link #getPageAnnotations(int)} loads single page.</li>
+ *     <li>Iterating {@link #getAnnotations()} loads the pages one by one, as the iteration reaches them
+ *     (only {@code size()} or access to the end of the list loads the whole document).</li>
+ * </ul>
+ * The document should be closed after use. Not thread safe.
+ */
+public class LazyAnnotatedDocument extends AnnotatedDocument implements Closeable {
+	private static final long serialVersionUID = -2519622430624734086L;
+    protected static final int MAX_CACHED_PAGES = 16;
+    protected transient AnnotationPageLoader loader;
+    protected transient Map<Integer, List<Annotation>> pageCache;
+
+    /**
+     * Constructor with specified parameters.
+     * @param loader Loader of the annotations. It is closed when the document is closed.
+     */
+    public LazyAnnotatedDocument(AnnotationPageLoader loader) {
+        super();
+        this.loader = loader;
+        AnnotatedDocument info = loader.getDocumentInfo();
+        fileName = info.getFileName();
+        title = info.getTitle();
+        subject = info.getSubject();
+        author = info.getAuthor();
+        pages = info.getNumberOfPages();
+        keywords = info.getKeywords();
+        pageCache = new LinkedHashMap<Integer, List<Annotation>>(MAX_CACHED_PAGES, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Annotation>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+    }
+
+    /**
+     * Get the annotations of given page (loading only this page, if needed).
+     * @param pageNumber Page number (starting from 1).
+     * @return Page annotations.
+     */
+    public List<Annotation> getPageAnnotations(int pageNumber) {
+        if (annotations instanceof LazyAnnotationList) {
+            List<Annotation> loaded = ((LazyAnnotationList) annotations).getLoadedPage(pageNumber);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+        else if (annotations != null) {
+            // Replaced by the caller.
+            List<Annotation> pageAnnotations = new ArrayList<>();
+            for (Annotation annotation : annotations) {
+                if (annotation.getPage() == pageNumber) {
+                    pageAnnotations.add(annotation);
+                }
+            } //
+            return pageAnnotations;
+        }
+        List<Annotation> pageAnnotations = pageCache.get(pageNumber);
+        if (pageAnnotations == null) {
+            ensureOpen();
+            pageAnnotations = Collections.unmodifiableList(loader.loadPage(pageNumber));
+            pageCache.put(pageNumber, pageAnnotations);
+        }
+        return pageAnnotations;
+    }
+
+    @Override
+    public List<Annotation> getAnnotations() {
+        if (annotations == null) {
+            annotations = new LazyAnnotationList();
+        }
+        return annotations;
+    }
+
+    @Override
+    public boolean isIncomplete() {
+        return (loader != null) ? loader.getDocumentInfo().isIncomplete() : super.isIncomplete();
+    }
+
+    @Override
+    public String getIncompleteReason() {
+        return (loader != null) ? loader.getDocumentInfo().getIncompleteReason() : super.getIncompleteReason();
+    }
+
+    @Override
+    public List<ExtractionProblem> getProblems() {
+        return (loader != null) ? loader.getDocumentInfo().getProblems() : super.getProblems();
+    }
+
+    protected void ensureOpen() {
+        if (loader == null) {
+            throw new IllegalStateException("Document is closed");
+        }
+    }
+
+    /**
+     * Close the source document. Only the already loaded annotations are available after that.
+     */
+    @Override
+    public void close() {
+        if (loader != null) {
+            incomplete = isIncomplete();
+            incompleteReason = getIncompleteReason();
+            problems = getProblems();
+            loader.close();
+            loader = null;
+        }
+    }
+
+    /**
+     * Serialize as normal (completely loaded) document.
+     * @return Document to serialize.
+     * @throws ObjectStreamException Never.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return copyWithAnnotations(new ArrayList<>(getAnnotations()));
+    }
+
+    /**
+     * List of annotations, which loads the pages progressively.
+     */
+    protected class LazyAnnotationList extends AbstractList<Annotation> {
+        protected List<Annotation> loaded = new ArrayList<>();
+        protected List<Integer> pageStarts = new ArrayList<>();
+        protected int loadedPages;
+
+        @Override
+        public Annotation get(int index) {
+            while ((index >= loaded.size()) && loadNextPage()) {
+                // Load more.
+            } //
+            return loaded.get(index);
+        }
+
+        @Override
+        public int size() {
+            while (loadNextPage()) {
+                // Load all.
+            } //
+            return loaded.size();
+        }
+
+        @Override
+        public Iterator<Annotation> iterator() {
+            return new Iterator<Annotation>() {
+                protected int position;
+
+                @Override
+                public boolean hasNext() {
+                    while ((position >= loaded.size()) && loadNextPage()) {
+                        // Load more.
+                    } //
+                    return position < loaded.size();
+                }
+
+                @Override
+                public Annotation next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return loaded.get(position++);
+                }
+            };
+        }
+
+        /**
+         * Load the next page.
+         * @return False if all the pages are loaded.
+         */
+        protected boolean loadNextPage() {
+            if ((loadedPages >= getNumberOfPages()) || (loader == null)) {
+                return false;
+            }
+            loadedPages++;
+            pageStarts.add(loaded.size());
+            List<Annotation> cached = pageCache.remove(loadedPages);
+            loaded.addAll((cached != null) ? cached : loader.loadPage(loadedPages));
+            return true;
+        }
+
+        /**
+         * Get annotations of already loaded page.
+         * @param pageNumber Page number.
+         * @return Page annotations or null (if the page is not loaded yet).
+         */
+        protected List<Annotation> getLoadedPage(int pageNumber) {
+            if ((pageNumber < 1) || (pageNumber > loadedPages)) {
+                return null;
+            }
+            int end = (pageNumber < loadedPages) ? pageStarts.get(pageNumber) : loaded.size();
+            return Collections.unmodifiableList(loaded.subList(pageStarts.get(pageNumber - 1), end));
+        }
+    }
+}
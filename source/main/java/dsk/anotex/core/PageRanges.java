@@ -0,0 +1,214 @@
+package dsk.anotex.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Set of page ranges, like '10-50,120'. Pages are numbered from 1.
+ * The ranges can be open (relative to the document end), like '100-' (from page 100 to the end)
+ * or 'last:20' (the last 20 pages). Such ranges must be resolved against the page count
+ * (see {@link #resolve(int)}) before use.
+ */
+public class PageRanges {
+    protected static final String LAST_PREFIX = "last:";
+    /** End of the open range. */
+    protected static final int END = Integer.MAX_VALUE;
+    /** Ranges as {first, last}. The first page of 'last:N' range is -N. */
+    protected List<int[]> ranges;
+
+    public PageRanges() {
+        super();
+        ranges = new ArrayList<>();
+    }
+
+    /**
+     * Parse page ranges from string.
+     * @param spec Comma separated pages and page ranges (like '1-5,8,10-12,100-,last:20').
+     * @return Parsed page ranges.
+     */
+    public static PageRanges parse(String spec) {
+        PageRanges pageRanges = new PageRanges();
+        for (String item : spec.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            try {
+                int idx = item.indexOf('-');
+                if (item.toLowerCase(Locale.ROOT).startsWith(LAST_PREFIX)) {
+                    pageRanges.addLast(Integer.parseInt(item.substring(LAST_PREFIX.length()).trim()));
+                }
+                else if (idx < 0) {
+                    int page = Integer.parseInt(item);
+                    pageRanges.add(page, page);
+                }
+                else if (idx == item.length() - 1) {
+                    pageRanges.add(Integer.parseInt(item.substring(0, idx).trim()), END);
+                }
+                else {
+                    pageRanges.add(Integer.parseInt(item.substring(0, idx).trim()),
+                        Integer.parseInt(item.substring(idx + 1).trim()));
+                }
+            }
+            catch (NumberFormatException e) {
+                String message = String.format("Invalid page range '%s'", item);
+                throw new IllegalArgumentException(message, e);
+            }
+        } //
+        return pageRanges;
+    }
+
+    /**
+     * Add page range.
+     * @param first First page of the range.
+     * @param last Last page of the range (inclusive). {@link Integer#MAX_VALUE} = to the end of document.
+     */
+    public void add(int first, int last) {
+        if ((first < 1) || (last < first)) {
+            String message = String.format("Invalid page range '%d-%d'", first, last);
+            throw new IllegalArgumentException(message);
+        }
+        ranges.add(new int[] {first, last});
+    }
+
+    /**
+     * Add the last pages of document.
+     * @param count Number of pages.
+     */
+    public void addLast(int count) {
+        if (count < 1) {
+            String message = String.format("Invalid page range '%s%d'", LAST_PREFIX, count);
+            throw new IllegalArgumentException(message);
+        }
+        ranges.add(new int[] {-count, END});
+    }
+
+    /**
+     * Check if given page is inside some of the ranges.
+     * @param page Page number.
+     * @return True if the page is included. The 'last:N' ranges match only after {@link #resolve(int)}.
+     */
+    public boolean contains(int page) {
+        for (int[] range : ranges) {
+            if ((page >= range[0]) && (page <= range[1]) && (range[0] > 0)) {
+                return true;
+            }
+        } //
+        return false;
+    }
+
+    /**
+     * Get the first included page after given page.
+     * @param page Page number (0 = from the start).
+     * @return Page number or -1 (if there is no such page).
+     */
+    public int nextPage(int page) {
+        int next = -1;
+        for (int[] range : ranges) {
+            if ((range[0] > 0) && (range[1] > page)) {
+                int candidate = Math.max(range[0], page + 1);
+                if ((next < 0) || (candidate < next)) {
+                    next = candidate;
+                }
+            }
+        } //
+        return next;
+    }
+
+    /**
+     * Resolve the ranges against document. Only the page count is needed (the pages are not read).
+     * @param pageCount Number of pages of the document.
+     * @return Sorted, non-overlapping ranges within the document.
+     */
+    public PageRanges resolve(int pageCount) {
+        List<int[]> resolved = new ArrayList<>(ranges.size());
+        for (int[] range : ranges) {
+            int first = (range[0] < 0) ? Math.max(1, pageCount + range[0] + 1) : range[0];
+            int last = Math.min(range[1], pageCount);
+            if (first <= last) {
+                resolved.add(new int[] {first, last});
+            }
+        } //
+        resolved.sort(Comparator.comparingInt(range -> range[0]));
+        PageRanges result = new PageRanges();
+        for (int[] range : resolved) {
+            int[] previous = result.ranges.isEmpty() ? null : result.ranges.get(result.ranges.size() - 1);
+            if ((previous != null) && (range[0] <= previous[1] + 1)) {
+                previous[1] = Math.max(previous[1], range[1]);
+            }
+            else {
+                result.ranges.add(range);
+            }
+        } //
+        return result;
+    }
+
+    /**
+     * Select evenly distributed sample of the pages.
+     * @param count Number of pages in the sample.
+     * @return The sampled pages (all the pages if there are not more than count). The ranges should be
+     * resolved.
+     */
+    public PageRanges sample(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid sample size: " + count);
+        }
+        long total = getPageCount();
+        if (total <= count) {
+            return this;
+        }
+        PageRanges result = new PageRanges();
+        int rangeIndex = 0;
+        long rangeStart = 0;
+        for (int i = 0; i < count; i++) {
+            // Position in the middle of the i-th of 'count' equal parts.
+            long position = (2 * i + 1) * total / (2L * count);
+            while (position >= rangeStart + size(ranges.get(rangeIndex))) {
+                rangeStart += size(ranges.get(rangeIndex++));
+            } //
+            int page = ranges.get(rangeIndex)[0] + (int) (position - rangeStart);
+            result.add(page, page);
+        } //
+        return result;
+    }
+
+    /**
+     * Get the number of included pages.
+     * @return Page count (the ranges should be resolved).
+     */
+    public long getPageCount() {
+        long count = 0;
+        for (int[] range : ranges) {
+            count += size(range);
+        } //
+        return count;
+    }
+
+    protected static long size(int[] range) {
+        return (range[0] > 0) ? (long) range[1] - range[0] + 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int[] range : ranges) {
+            if (buf.length() > 0) {
+                buf.append(',');
+            }
+            if (range[0] < 0) {
+                buf.append(LAST_PREFIX).append(-range[0]);
+                continue;
+            }
+            buf.append(range[0]);
+            if (range[1] == END) {
+                buf.append('-');
+            }
+            else if (range[1] != range[0]) {
+                buf.append('-').append(range[1]);
+            }
+        } //
+        return buf.toString();
+    }
+}
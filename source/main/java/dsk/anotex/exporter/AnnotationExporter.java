@@ -1,9 +1,16 @@
 package dsk.anotex.exporter;
 
 import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationDiff;
 
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface for exporting annotated document to some standard format.
@@ -17,4 +24,42 @@ public interface AnnotationExporter {
      * @param output Stream where to write the output.
      */
     public void export(AnnotatedDocument document, Map<String, Object> context, Writer output);
+
+    /**
+     * Export the difference between two versions of annotated document.
+     * By default only the added and changed annotations are exported (as normal document).
+     * @param document Current document version.
+     * @param diff Difference to the previous version.
+     * @param context Conversion context.
+     * @param output Stream where to write the output.
+     */
+    public default void exportDiff(AnnotatedDocument document, AnnotationDiff diff, Map<String, Object> context,
+        Writer output) {
+        Set<Annotation> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        added.addAll(diff.getAdded());
+        List<Annotation> annotations = new ArrayList<>(added.size() + diff.getChanged().size());
+        for (Annotation annotation : document.getAnnotations()) {
+            if (added.contains(annotation) || (diff.getPreviousVersion(annotation) != null)) {
+                annotations.add(annotation);
+            }
+        } //
+        export(document.copyWithAnnotations(annotations), context, output);
+    }
+
+    /**
+     * Start export of document collection into single output. Called once, before the documents
+     * of the collection are exported one by one with {@link #export(AnnotatedDocument, Map, Writer)}.
+     * @param context Conversion context.
+     * @param output Stream where to write the output.
+     */
+    public default void startCollection(Map<String, Object> context, Writer output) {
+    }
+
+    /**
+     * Finish export of document collection. Called once, after the last document.
+     * @param context Conversion context.
+     * @param output Stream where to write the output.
+     */
+    public default void endCollection(Map<String, Object> context, Writer output) {
+    }
 }
@@ -0,0 +1,129 @@
+package dsk.anotex.exporter;
+
+import dsk.anotex.Constants;
+import dsk.anotex.core.Annotation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups annotations for export, according to the {@link Constants#GROUP_BY} setting.
+ */
+public class AnnotationGroups {
+    public static final String NO_COLOR = "No color";
+    public static final String NO_CHAPTER = "No chapter";
+    protected static final int MAX_REFERENCE_LENGTH = 60;
+
+    /*
+     * Prevent instance creation.
+     */
+    private AnnotationGroups() {
+    }
+
+    /**
+     * Get the annotations, whose replies are written inside their threads.
+     * @param annotations Exported annotations (like the whole document or diff section).
+     * @return Annotations of the list (compared by identity).
+     */
+    public static Set<Annotation> getThreadRoots(List<Annotation> annotations) {
+        Set<Annotation> roots = Collections.newSetFromMap(new IdentityHashMap<>(annotations.size()));
+        roots.addAll(annotations);
+        return roots;
+    }
+
+    /**
+     * Check if the annotation is reply, which is written inside the thread of its parent (so it should
+     * be skipped as standalone annotation).
+     * @param annotation The annotation.
+     * @param roots Annotations, whose threads are written (see {@link #getThreadRoots(List)}).
+     * @return True if the parent is exported too. False for standalone annotations and for the
+     * replies, whose parent is not exported (like new reply to unchanged annotation in diff).
+     */
+    public static boolean isThreadedReply(Annotation annotation, Set<Annotation> roots) {
+        return (annotation.getInReplyTo() != null) && roots.contains(annotation.getInReplyTo());
+    }
+
+    /**
+     * Get short reference to annotation (to show the parent of detached reply).
+     * @param annotation The annotation.
+     * @return Beginning of its highlight or text.
+     */
+    public static String getReference(Annotation annotation) {
+        String text = (annotation.getHighlight() != null) ? annotation.getHighlight() : annotation.getText();
+        if (text == null) {
+            return "";
+        }
+        text = text.replaceAll("\\s+", " ").trim();
+        return (text.length() > MAX_REFERENCE_LENGTH) ? text.substring(0, MAX_REFERENCE_LENGTH) + "..." : text;
+    }
+
+    /**
+     * Group the annotations. The groups are ordered by their first appearance and the annotations
+     * inside the group keep their original order.
+     * @param annotations Annotations to group.
+     * @param context Export context.
+     * @return Group label to annotations map, or null if the annotations should not be grouped
+     * (they are exported page by page).
+     */
+    public static Map<String, List<Annotation>> group(List<Annotation> annotations,
+            Map<String, Object> context) {
+        Object groupBy = context.get(Constants.GROUP_BY);
+        boolean byChapter = Constants.GROUP_BY_CHAPTER.equals(groupBy);
+        if (!Constants.GROUP_BY_COLOR.equals(groupBy) && !byChapter) {
+            return null;
+        }
+        Map<String, String> categories = getColorCategories(context);
+        Map<String, List<Annotation>> groups = new LinkedHashMap<>();
+        for (Annotation annotation : annotations) {
+            String label;
+            if (byChapter) {
+                // The chapters are resolved by the importer (from the document outline).
+                label = (annotation.getChapter() == null) ? NO_CHAPTER : annotation.getChapter();
+            }
+            else {
+                String color = annotation.getColor();
+                label = (color == null) ? NO_COLOR : categories.getOrDefault(color, color);
+            }
+            List<Annotation> group = groups.get(label);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(label, group);
+            }
+            group.add(annotation);
+        } //
+        return groups;
+    }
+
+    /**
+     * Get the color to category name mapping from the export context.
+     * @param context Export context. The {@link Constants#COLOR_CATEGORIES} can be map or string
+     * like '#ffff00=Important,#00ff00=Definition'.
+     * @return Color categories (colors are in normalized form).
+     */
+    @SuppressWarnings("unchecked")
+    protected static Map<String, String> getColorCategories(Map<String, Object> context) {
+        Object value = context.get(Constants.COLOR_CATEGORIES);
+        Map<String, String> categories = new HashMap<>();
+        if (value instanceof Map) {
+            for (Map.Entry<String, String> e : ((Map<String, String>) value).entrySet()) {
+                categories.put(Annotation.normalizeColor(e.getKey()), e.getValue());
+            } //
+        }
+        else if (value != null) {
+            for (String item : value.toString().split(",")) {
+                int idx = item.indexOf('=');
+                if (idx > 0) {
+                    categories.put(Annotation.normalizeColor(item.substring(0, idx)),
+                        item.substring(idx + 1).trim());
+                }
+            } //
+        }
+        return categories;
+    }
+}
@@ -24,6 +24,8 @@ public class ExporterFactory {
             return new MarkdownExporter();
         case TEXT:
         	return new PlainTextExporter();
+        case JSON_LINES:
+            return new JsonLinesExporter();
         default:
         		String message = String.format("Unsupported export format '%s'", format);
         		throw new IllegalArgumentException(message);
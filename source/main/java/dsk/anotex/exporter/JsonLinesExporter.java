@@ -0,0 +1,184 @@
+package dsk.anotex.exporter;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+import dsk.anotex.core.ExtractionProblem;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Export annotated document to JSON Lines format: the whole document is written as single JSON
+ * object on one line. This way many documents can be streamed into one output file.
+ */
+public class JsonLinesExporter implements AnnotationExporter {
+    protected static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    @Override
+    public void export(AnnotatedDocument document, Map<String, Object> context, Writer output) {
+        try {
+            write(document, output);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write annotated document as JSON object (followed by new line).
+     * @param document Document to write.
+     * @param output Where to write.
+     * @throws IOException If writing fails.
+     */
+    protected void write(AnnotatedDocument document, Writer output) throws IOException {
+        DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        output.append("{\"pages\":").append(Integer.toString(document.getNumberOfPages()));
+        writeField(output, "file", document.getFileName());
+        writeField(output, "title", document.getTitle());
+        writeField(output, "subject", document.getSubject());
+        writeField(output, "author", document.getAuthor());
+        output.append(",\"keywords\":[");
+        String separator = "";
+        for (String keyword : document.getKeywords()) {
+            output.append(separator);
+            writeString(output, keyword);
+            separator = ",";
+        } //
+        output.append(']');
+        if (document.isIncomplete()) {
+            output.append(",\"incomplete\":true");
+            writeField(output, "incompleteReason", document.getIncompleteReason());
+        }
+        if (!document.getProblems().isEmpty()) {
+            output.append(",\"problems\":[");
+            separator = "";
+            for (ExtractionProblem problem : document.getProblems()) {
+                output.append(separator).append("{\"page\":").append(Integer.toString(problem.getPage()));
+                if (problem.getAnnotationIndex() >= 0) {
+                    output.append(",\"annotation\":").append(Integer.toString(problem.getAnnotationIndex()));
+                }
+                writeField(output, "type", problem.getAnnotationType());
+                writeField(output, "error", problem.getErrorType());
+                writeField(output, "message", problem.getMessage());
+                output.append('}');
+                separator = ",";
+            } //
+            output.append(']');
+        }
+        output.append(",\"annotations\":[");
+        separator = "";
+        Set<Annotation> roots = AnnotationGroups.getThreadRoots(document.getAnnotations());
+        for (Annotation annotation : document.getAnnotations()) {
+            if (annotation.isEmpty() || AnnotationGroups.isThreadedReply(annotation, roots)) {
+                // The replies are written inside their parents.
+                continue;
+            }
+            output.append(separator);
+            // Top-level reply = its parent is not exported (like new reply in diff).
+            writeAnnotation(output, annotation, annotation.getInReplyTo() != null, dateFormat);
+            separator = ",";
+        } //
+        output.append("]}\n");
+    }
+
+    /**
+     * Write the annotation as JSON object.
+     * @param output Where to write.
+     * @param annotation The annotation.
+     * @param detached True for reply written without its parent (it gets a reference to the parent).
+     * @param dateFormat Date format.
+     * @throws IOException If writing fails.
+     */
+    protected void writeAnnotation(Writer output, Annotation annotation, boolean detached,
+            DateFormat dateFormat) throws IOException {
+        output.append("{\"page\":").append(Integer.toString(annotation.getPage()));
+        writeField(output, "type", annotation.getType());
+        writeField(output, "highlight", annotation.getHighlight());
+        writeField(output, "text", annotation.getText());
+        writeField(output, "richText", annotation.getRichText());
+        writeField(output, "chapter", annotation.getChapter());
+        writeField(output, "color", annotation.getColor());
+        writeField(output, "author", annotation.getAuthor());
+        writeField(output, "created", formatDate(annotation.getCreationDate(), dateFormat));
+        writeField(output, "modified", formatDate(annotation.getModificationDate(), dateFormat));
+        if (detached) {
+            writeField(output, "inReplyTo", AnnotationGroups.getReference(annotation.getInReplyTo()));
+        }
+        if (!annotation.getReplies().isEmpty()) {
+            output.append(",\"replies\":[");
+            String separator = "";
+            for (Annotation reply : annotation.getReplies()) {
+                output.append(separator);
+                writeAnnotation(output, reply, false, dateFormat);
+                separator = ",";
+            } //
+            output.append(']');
+        }
+        output.append('}');
+    }
+
+    protected String formatDate(Date date, DateFormat dateFormat) {
+        return (date != null) ? dateFormat.format(date) : null;
+    }
+
+    /**
+     * Write JSON field (after some previous field). Fields with null values are omitted.
+     * @param output Where to write.
+     * @param name Field name.
+     * @param value Field value.
+     * @throws IOException If writing fails.
+     */
+    protected void writeField(Writer output, String name, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        output.append(",\"").append(name).append("\":");
+        writeString(output, value);
+    }
+
+    /**
+     * Write JSON string (with escaping).
+     * @param output Where to write.
+     * @param value The string.
+     * @throws IOException If writing fails.
+     */
+    protected void writeString(Writer output, String value) throws IOException {
+        output.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            String escaped;
+            switch (ch) {
+            case '"':
+                escaped = "\\\"";
+                break;
+            case '\\':
+                escaped = "\\\\";
+                break;
+            case '\n':
+                escaped = "\\n";
+                break;
+            case '\r':
+                escaped = "\\r";
+                break;
+            case '\t':
+                escaped = "\\t";
+                break;
+            default:
+                escaped = (ch < 0x20) ? String.format("\\u%04x", (int) ch) : null;
+            }
+            if (escaped != null) {
+                output.append(value, start, i).append(escaped);
+                start = i + 1;
+            }
+        } //
+        output.append(value, start, value.length()).append('"');
+    }
+}
@@ -2,11 +2,14 @@ package dsk.anotex.exporter;
 
 import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationDiff;
+import dsk.anotex.core.ExtractionProblem;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Export annotated document to Markdown format.
@@ -15,9 +18,8 @@ public class MarkdownExporter implements AnnotationExporter {
 
     @Override
     public void export(AnnotatedDocument document, Map<String, Object> context, Writer output) {
-        String mdDocument = convert(document);
         try {
-            output.write(mdDocument);
+            write(document, context, output);
         }
         catch (IOException e) {
             throw new RuntimeException(e);
@@ -25,46 +27,229 @@ public class MarkdownExporter implements AnnotationExporter {
     }
 
     /**
-     * Convert annotated document to string in Markdown format.
-     * @param document Document to convert.
-     * @return The document as string.
+     * Write annotated document in Markdown format. The output is written incrementally (there is
+     * no intermediate string for the whole document). Subclasses customize the output here.
+     * @param document Document to write.
+     * @param context Conversion context (grouping options).
+     * @param output Where to write.
+     * @throws IOException If writing fails.
      */
-    protected String convert(AnnotatedDocument document) {
+    protected void write(AnnotatedDocument document, Map<String, Object> context, Writer output)
+            throws IOException {
+        final String BR = System.lineSeparator();
+        writeHeader(document, output);
+        Map<String, List<Annotation>> groups = AnnotationGroups.group(document.getAnnotations(), context);
+        Set<Annotation> roots = AnnotationGroups.getThreadRoots(document.getAnnotations());
+        if (groups == null) {
+            writeAnnotations(output, document.getAnnotations(), roots);
+        }
+        else {
+            for (Map.Entry<String, List<Annotation>> group : groups.entrySet()) {
+                output.append("## ").append(group.getKey()).append(BR).append(BR);
+                writeAnnotations(output, group.getValue(), roots);
+            } //
+        }
+    }
+
+    /**
+     * Write the document information (title, subject, etc.).
+     * @param document The document.
+     * @param output Where to write.
+     * @throws IOException If writing fails.
+     */
+    protected void writeHeader(AnnotatedDocument document, Writer output) throws IOException {
         final String BR = System.lineSeparator();
         // TODO: Use specialized Markdown library if the requirements evolve
         // (currently this would be overkill).
-        StringBuilder buf = new StringBuilder(1024);
         if (document.getTitle() != null && document.getTitle().length()>0) {
-            buf.append("# ").append(document.getTitle());
-            buf.append(BR);
-            buf.append(BR);
+            output.append("# ").append(document.getTitle());
+            output.append(BR);
+            output.append(BR);
         }
         String subject = document.getSubject();
         if (subject != null && subject.length()>0) {
-            buf.append("\"").append(subject).append("\"");
-            buf.append(BR);
+            output.append("\"").append(subject).append("\"");
+            output.append(BR);
         }
         List<String> keywords = document.getKeywords();
         if (!keywords.isEmpty()) {
-            buf.append("_").append(keywords.stream().reduce((s1,s2) -> s1 +","+s2).get());
-            buf.append("_").append(BR);
+            output.append("_");
+            String separator = "";
+            for (String keyword : keywords) {
+                output.append(separator).append(keyword);
+                separator = ",";
+            } //
+            output.append("_").append(BR);
+        }
+        if (document.isIncomplete()) {
+            output.append("_Incomplete extraction: ").append(document.getIncompleteReason()).append("_");
+            output.append(BR);
+        }
+        for (ExtractionProblem problem : document.getProblems()) {
+            output.append("- _").append(problem.toString()).append("_").append(BR);
+        } //
+        output.append(BR);
+    }
+
+    @Override
+    public void exportDiff(AnnotatedDocument document, AnnotationDiff diff, Map<String, Object> context,
+        Writer output) {
+        final String BR = System.lineSeparator();
+        try {
+            writeHeader(document, output);
+            if (diff.isEmpty()) {
+                output.append("_No changes_").append(BR);
+                return;
+            }
+            writeDiffSection(output, "Added", diff.getAdded(), null, context);
+            writeDiffSection(output, "Changed", diff.getChanged(), diff, context);
+            writeDiffSection(output, "Removed", diff.getRemoved(), null, context);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write section of annotation diff.
+     * @param output Where to write.
+     * @param title Section title.
+     * @param annotations Section annotations.
+     * @param diff The diff (to show the previous versions of changed annotations) or null.
+     * @param context Export context (the section is grouped like the whole document).
+     * @throws IOException If writing fails.
+     */
+    protected void writeDiffSection(Writer output, String title, List<Annotation> annotations,
+        AnnotationDiff diff, Map<String, Object> context) throws IOException {
+        final String BR = System.lineSeparator();
+        if (annotations.isEmpty()) {
+            return;
+        }
+        output.append("## ").append(title).append(BR).append(BR);
+        // The replies of annotations outside the section are written on their own.
+        Set<Annotation> roots = AnnotationGroups.getThreadRoots(annotations);
+        Map<String, List<Annotation>> groups = AnnotationGroups.group(annotations, context);
+        if (groups == null) {
+            writeDiffAnnotations(output, annotations, roots, diff);
+            return;
         }
-        buf.append(BR);
+        for (Map.Entry<String, List<Annotation>> group : groups.entrySet()) {
+            output.append("### ").append(group.getKey()).append(BR).append(BR);
+            writeDiffAnnotations(output, group.getValue(), roots, diff);
+        } //
+    }
+
+    /**
+     * Write annotations of diff section.
+     * @param output Where to write.
+     * @param annotations Annotations to write.
+     * @param roots Annotations, whose replies are written inside their threads.
+     * @param diff The diff (to show the previous versions of changed annotations) or null.
+     * @throws IOException If writing fails.
+     */
+    protected void writeDiffAnnotations(Writer output, List<Annotation> annotations, Set<Annotation> roots,
+        AnnotationDiff diff) throws IOException {
+        final String BR = System.lineSeparator();
+        if (diff == null) {
+            writeAnnotations(output, annotations, roots);
+            return;
+        }
+        for (Annotation annotation : annotations) {
+            Annotation previous = diff.getPreviousVersion(annotation);
+            output.append("**Page ").append(Integer.toString(annotation.getPage())).append("**").append(BR);
+            writeChange(output, previous.getHighlight(), annotation.getHighlight(), "", BR);
+            writeChange(output, previous.getText(), annotation.getText(), ">", BR);
+            output.append(BR);
+        } //
+    }
+
+    protected void writeChange(Writer output, String previous, String current, String prefix, String BR)
+            throws IOException {
+        if ((previous != null) && !previous.equals(current)) {
+            output.append(prefix).append("~~").append(previous).append("~~").append(BR);
+        }
+        if (current != null) {
+            output.append(prefix).append(current).append(BR);
+        }
+    }
+
+    /**
+     * Write the annotations, page by page.
+     * @param output Where to write.
+     * @param annotations Annotations to write.
+     * @param roots Annotations, whose replies are written inside their threads (see
+     * {@link AnnotationGroups#getThreadRoots(List)}). The other replies are written on their own.
+     * @throws IOException If writing fails.
+     */
+    protected void writeAnnotations(Writer output, List<Annotation> annotations, Set<Annotation> roots)
+            throws IOException {
+        final String BR = System.lineSeparator();
         //Assuming that the page numbers are sequential and don't need to be sorted.
         int currentPageNumber = -1;
-        for (Annotation annotation : document.getAnnotations()) {
-        	if(annotation.isEmpty()) continue;
+        for (Annotation annotation : annotations) {
+        	if(annotation.isEmpty() || AnnotationGroups.isThreadedReply(annotation, roots)) continue; //replies are written in their threads
         	int page = annotation.getPage();
         	if(page != currentPageNumber) {
-        		buf.append("**Page " + page + "**").append(BR);
+        		output.append("**Page ").append(Integer.toString(page)).append("**").append(BR);
         		currentPageNumber = page;
         	}
+        	if(annotation.getInReplyTo()!=null) {
+        		output.append("_Reply");
+        		if(annotation.getAuthor()!=null)
+        			output.append(" by ").append(annotation.getAuthor());
+        		output.append(" to \"").append(AnnotationGroups.getReference(annotation.getInReplyTo()));
+        		output.append("\"_").append(BR);
+        	}
         	if(annotation.getHighlight()!=null)
-        		buf.append(annotation.getHighlight()).append(BR);
-        	if(annotation.getText()!=null)
-        		buf.append(">").append(annotation.getText()).append(BR);
-        	buf.append(BR); //make the distinction between annotations clear. This break is also needed to end the cite.
+        		output.append(annotation.getHighlight()).append(BR);
+        	if(annotation.getRichText()!=null)
+        		writeQuote(output, annotation.getRichText(), BR);
+        	else if(annotation.getText()!=null)
+        		output.append(">").append(annotation.getText()).append(BR);
+        	writeReplies(output, annotation, 1, BR);
+        	output.append(BR); //make the distinction between annotations clear. This break is also needed to end the cite.
         }
-        return buf.toString();
+    }
+
+    /**
+     * Write multi-line text as quote (every line is quoted, so the paragraphs and lists stay
+     * inside the quote).
+     * @param output Where to write.
+     * @param text The text (Markdown).
+     * @param BR Line separator.
+     * @throws IOException If writing fails.
+     */
+    protected void writeQuote(Writer output, String text, String BR) throws IOException {
+        for (String line : text.split("\n", -1)) {
+            output.append(">").append(line).append(BR);
+        } //
+    }
+
+    /**
+     * Write the conversation thread of annotation (as nested quotes).
+     * @param output Where to write.
+     * @param annotation The annotation.
+     * @param depth Nesting level of the replies.
+     * @param BR Line separator.
+     * @throws IOException If writing fails.
+     */
+    protected void writeReplies(Writer output, Annotation annotation, int depth, String BR) throws IOException {
+        for (Annotation reply : annotation.getReplies()) {
+            StringBuilder prefix = new StringBuilder(">");
+            for (int i = 0; i < depth; i++) {
+                prefix.append('>');
+            } //
+            output.append(prefix).append(BR);
+            String text = (reply.getRichText() != null) ? reply.getRichText() : reply.getText();
+            if (reply.getAuthor() != null) {
+                text = "**" + reply.getAuthor() + ":** " + ((text != null) ? text : "");
+            }
+            if (text != null) {
+                for (String line : text.split("\\r?\\n", -1)) {
+                    output.append(prefix).append(' ').append(line).append(BR);
+                } //
+            }
+            writeReplies(output, reply, depth + 1, BR);
+        } //
     }
 }
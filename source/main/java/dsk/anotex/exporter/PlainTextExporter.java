@@ -3,56 +3,184 @@ package dsk.anotex.exporter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationDiff;
+import dsk.anotex.core.ExtractionProblem;
 
 public class PlainTextExporter implements AnnotationExporter{
 
 	@Override
 	public void export(AnnotatedDocument document, Map<String, Object> context, Writer output) {
-		String textDocument = convert(document);
 		try {
-			output.write(textDocument);
+			write(document, context, output);
 		} catch(IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	protected String convert(AnnotatedDocument document) {
+	protected void write(AnnotatedDocument document, Map<String, Object> context, Writer output)
+			throws IOException {
 		final String BR = System.lineSeparator();
-		StringBuilder buf = new StringBuilder(1024);
-		buf.append("Annotations extracted by DyAnnotationExtractor");
+		writeHeader(document, output);
+        Map<String, List<Annotation>> groups = AnnotationGroups.group(document.getAnnotations(), context);
+        Set<Annotation> roots = AnnotationGroups.getThreadRoots(document.getAnnotations());
+        if (groups == null) {
+            writeAnnotations(output, document.getAnnotations(), roots);
+        }
+        else {
+            for (Map.Entry<String, List<Annotation>> group : groups.entrySet()) {
+                output.append("========= ").append(group.getKey()).append(" =========").append(BR);
+                writeAnnotations(output, group.getValue(), roots);
+            } //
+        }
+	}
+
+	protected void writeHeader(AnnotatedDocument document, Writer output) throws IOException {
+		final String BR = System.lineSeparator();
+		output.append("Annotations extracted by DyAnnotationExtractor");
         if (document.getTitle() != null && document.getTitle().length()>0)
-            buf.append("Title: ").append(document.getTitle()).append(BR);
+            output.append("Title: ").append(document.getTitle()).append(BR);
         String subject = document.getSubject();
         if (subject != null && subject.length()>0)
-            buf.append("Subject: ").append(subject).append(BR);
+            output.append("Subject: ").append(subject).append(BR);
         List<String> keywords = document.getKeywords();
         if (!keywords.isEmpty()) {
-            buf.append("Keywords: ").append(keywords.stream().reduce((s1,s2) -> s1 +","+s2).get());
-            buf.append(BR);
+            output.append("Keywords: ");
+            String separator = "";
+            for (String keyword : keywords) {
+                output.append(separator).append(keyword);
+                separator = ",";
+            } //
+            output.append(BR);
         }
-        if(buf.length()>0)
-        	buf.append(BR);
+        if (document.isIncomplete())
+            output.append("Incomplete extraction: ").append(document.getIncompleteReason()).append(BR);
+        for (ExtractionProblem problem : document.getProblems())
+            output.append("Problem: ").append(problem.toString()).append(BR);
+        output.append(BR); // The header is never empty.
+	}
+
+	@Override
+	public void exportDiff(AnnotatedDocument document, AnnotationDiff diff, Map<String, Object> context,
+		Writer output) {
+		final String BR = System.lineSeparator();
+		try {
+			writeHeader(document, output);
+			if (diff.isEmpty()) {
+				output.append("No changes").append(BR);
+				return;
+			}
+			writeDiffSection(output, "Added", diff.getAdded(), null, context);
+			writeDiffSection(output, "Changed", diff.getChanged(), diff, context);
+			writeDiffSection(output, "Removed", diff.getRemoved(), null, context);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected void writeDiffSection(Writer output, String title, List<Annotation> annotations,
+		AnnotationDiff diff, Map<String, Object> context) throws IOException {
+		final String BR = System.lineSeparator();
+		if (annotations.isEmpty())
+			return;
+		output.append("========= ").append(title).append(" =========").append(BR);
+		// The replies of annotations outside the section are written on their own.
+		Set<Annotation> roots = AnnotationGroups.getThreadRoots(annotations);
+		Map<String, List<Annotation>> groups = AnnotationGroups.group(annotations, context);
+		if (groups == null) {
+			writeDiffAnnotations(output, annotations, roots, diff);
+			return;
+		}
+		for (Map.Entry<String, List<Annotation>> group : groups.entrySet()) {
+			output.append("::::::::: ").append(group.getKey()).append(" :::::::::").append(BR);
+			writeDiffAnnotations(output, group.getValue(), roots, diff);
+		}
+	}
+
+	protected void writeDiffAnnotations(Writer output, List<Annotation> annotations, Set<Annotation> roots,
+		AnnotationDiff diff) throws IOException {
+		final String BR = System.lineSeparator();
+		if (diff == null) {
+			writeAnnotations(output, annotations, roots);
+			return;
+		}
+		for (Annotation annotation : annotations) {
+			Annotation previous = diff.getPreviousVersion(annotation);
+			output.append("--------- Page ").append(Integer.toString(annotation.getPage())).append(" ---------").append(BR);
+			writeChange(output, "Highlight", previous.getHighlight(), annotation.getHighlight(), BR);
+			writeChange(output, "Annotation", previous.getText(), annotation.getText(), BR);
+			output.append(BR);
+		}
+	}
+
+	protected void writeChange(Writer output, String label, String previous, String current, String BR)
+			throws IOException {
+		if (previous != null && !previous.equals(current))
+			output.append("Previous ").append(label.toLowerCase(Locale.ROOT)).append(": ").append(previous).append(BR);
+		if (current != null)
+			output.append(label).append(": ").append(current).append(BR);
+	}
+
+	/**
+	 * Write the annotations, page by page.
+	 * @param output Where to write.
+	 * @param annotations Annotations to write.
+	 * @param roots Annotations, whose replies are written inside their threads (see
+	 * {@link AnnotationGroups#getThreadRoots(List)}). The other replies are written on their own.
+	 * @throws IOException If writing fails.
+	 */
+	protected void writeAnnotations(Writer output, List<Annotation> annotations, Set<Annotation> roots)
+			throws IOException {
+		final String BR = System.lineSeparator();
         //Assuming that the page numbers are sequential and don't need to be sorted.
         int currentPageNumber = -1;
-        for (Annotation annotation : document.getAnnotations()) {
-        	if(annotation.isEmpty()) continue;
+        for (Annotation annotation : annotations) {
+        	if(annotation.isEmpty() || AnnotationGroups.isThreadedReply(annotation, roots)) continue; //replies are written in their threads
         	int page = annotation.getPage();
         	if(page != currentPageNumber) {
-        		buf.append("--------- Page " + page + " ---------").append(BR);
+        		output.append("--------- Page ").append(Integer.toString(page)).append(" ---------").append(BR);
         		currentPageNumber = page;
         	}
+        	if(annotation.getInReplyTo()!=null) {
+        		output.append("Reply");
+        		if(annotation.getAuthor()!=null)
+        			output.append(" (").append(annotation.getAuthor()).append(")");
+        		output.append(" to: ").append(AnnotationGroups.getReference(annotation.getInReplyTo())).append(BR);
+        	}
         	if(annotation.getHighlight()!=null) {
-        		buf.append("Highlight: ");
-        		buf.append(annotation.getHighlight()).append(BR);
+        		output.append("Highlight: ");
+        		output.append(annotation.getHighlight()).append(BR);
         	}
         	if(annotation.getText()!=null)
-        		buf.append("Annotation: ").append(annotation.getText()).append(BR);
-        	buf.append(BR); //make the distinction between annotations clear.
+        		output.append("Annotation: ").append(annotation.getText()).append(BR);
+        	writeReplies(output, annotation, "    ", BR);
+        	output.append(BR); //make the distinction between annotations clear.
         }
-        return buf.toString();
+	}
+
+	/**
+	 * Write the conversation thread of annotation (indented by the nesting level).
+	 * @param output Where to write.
+	 * @param annotation The annotation.
+	 * @param indent Indentation of the replies.
+	 * @param BR Line separator.
+	 * @throws IOException If writing fails.
+	 */
+	protected void writeReplies(Writer output, Annotation annotation, String indent, String BR) throws IOException {
+		for (Annotation reply : annotation.getReplies()) {
+			output.append(indent).append("Reply");
+			if (reply.getAuthor() != null)
+				output.append(" (").append(reply.getAuthor()).append(")");
+			output.append(": ");
+			if (reply.getText() != null)
+				output.append(reply.getText());
+			output.append(BR);
+			writeReplies(output, reply, indent + "    ", BR);
+		}
 	}
 }
@@ -2,6 +2,9 @@ package dsk.anotex.importer;
 
 import dsk.anotex.core.AnnotatedDocument;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Interface for importing annotations for different documents.
  */
@@ -12,6 +15,40 @@ public interface AnnotationImporter {
      * @param fileName Document file name.
      * @return Document annotations.
      */
-    public AnnotatedDocument readAnnotations(String fileName);
+    public default AnnotatedDocument readAnnotations(String fileName) {
+        return readAnnotations(fileName, new HashMap<>());
+    }
+
+    /**
+     * Read annotations from given document file.
+     * @param fileName Document file name.
+     * @param settings Import settings (limits, filters, etc.).
+     * @return Document annotations.
+     */
+    public AnnotatedDocument readAnnotations(String fileName, Map<String, Object> settings);
+
+    /**
+     * Open incremental reader of the document annotations (like for preview of the first annotations).
+     * Importers should override this if the annotations can be read page by page.
+     * @param fileName Document file name.
+     * @param settings Import settings (limits, filters, etc.).
+     * @return The reader. It must be closed after use.
+     */
+    public default AnnotationReader openReader(String fileName, Map<String, Object> settings) {
+        return new ListAnnotationReader(readAnnotations(fileName, settings));
+    }
+
+    /**
+     * Read only the document information (title, author, etc.), without the annotations.
+     * Importers should override this if the information can be read cheaper than the annotations.
+     * @param fileName Document file name.
+     * @param settings Import settings (like the document password).
+     * @return Document without annotations.
+     */
+    public default AnnotatedDocument readDocumentInfo(String fileName, Map<String, Object> settings) {
+        AnnotatedDocument document = readAnnotations(fileName, settings);
+        document.setAnnotations(null);
+        return document;
+    }
 
 }
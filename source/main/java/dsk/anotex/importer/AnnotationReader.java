@@ -0,0 +1,38 @@
+package dsk.anotex.importer;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationPageLoader;
+
+import java.util.List;
+
+/**
+ * Incremental reader of document annotations. The document stays open between the calls, so
+ * the reading can stop early (like when enough annotations for preview are read) and continue later.
+ * Single pages can be also loaded directly (see {@link #loadPage(int)}).
+ * Not thread safe.
+ */
+public interface AnnotationReader extends AnnotationPageLoader {
+
+    /**
+     * Get the document information (title, author, etc.).
+     * @return Document without annotations (but marked as incomplete, if some limit was reached).
+     */
+    @Override
+    public AnnotatedDocument getDocumentInfo();
+
+    /**
+     * Check if there can be more annotations to read.
+     * @return False if the whole document was read.
+     */
+    public boolean hasNext();
+
+    /**
+     * Read next (non-empty) annotations.
+     * @param maxAnnotations Maximum number of annotations to read (0 = unlimited).
+     * @param timeout Maximum reading time in milliseconds (0 = unlimited). The reading stops after
+     * the annotation, during which the time elapsed.
+     * @return Read annotations (can be empty, if the time elapsed or there are no more annotations).
+     */
+    public List<Annotation> next(int maxAnnotations, long timeout);
+}
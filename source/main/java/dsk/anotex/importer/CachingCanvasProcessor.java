@@ -0,0 +1,29 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+
+/**
+ * Page content processor, which takes the fonts decoded by the document (see {@link FontCache}),
+ * instead of decoding them again for every processor.
+ */
+public class CachingCanvasProcessor extends PdfCanvasProcessor {
+    protected FontCache fontCache;
+
+    /**
+     * Constructor with specified parameters.
+     * @param listener Listener for the content events.
+     * @param fontCache Font cache of the processed document.
+     */
+    public CachingCanvasProcessor(IEventListener listener, FontCache fontCache) {
+        super(listener);
+        this.fontCache = fontCache;
+    }
+
+    @Override
+    protected PdfFont getFont(PdfDictionary fontDict) {
+        return fontCache.getFont(fontDict);
+    }
+}
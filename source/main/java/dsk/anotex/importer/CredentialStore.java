@@ -0,0 +1,284 @@
+package dsk.anotex.importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Known document passwords for batch extraction. The password file has one entry per line:
+ * <pre>
+ * # Comment
+ * /data/contracts=secret1    (all documents in the directory)
+ * report-*.pdf=secret2       (documents with matching file name)
+ * /data/**&#47;2021/*.pdf=secret3  (documents with matching path)
+ * </pre>
+ * The store remembers which password opened which file (in '&lt;password file&gt;.cache'), so the
+ * next runs try it first and do not repeat the failed decryption attempts. Only the password
+ * hashes are cached. The results are appended to the cache (the last value of a document wins) and
+ * the superseded entries are dropped when the cache is loaded. Thread safe - one store is shared by
+ * all the extractions in the process.
+ */
+public class CredentialStore {
+    protected static final String CACHE_EXTENSION = ".cache";
+    protected static final String FAILED_PREFIX = "!";
+    /** The cache is compacted when it has more lines than this factor * entry count. */
+    protected static final int COMPACT_FACTOR = 2;
+    protected static final Map<File, CredentialStore> stores = new ConcurrentHashMap<>();
+    protected static final Logger log = LogManager.getLogger(CredentialStore.class);
+    protected List<Entry> entries;
+    protected File cacheFile;
+    protected Properties cache;
+
+    /**
+     * Constructor with specified parameters.
+     * @param cacheFile File to persist the results of decryption attempts (null = no persistence).
+     */
+    public CredentialStore(File cacheFile) {
+        super();
+        this.cacheFile = cacheFile;
+        entries = new ArrayList<>();
+        cache = new Properties();
+        if ((cacheFile != null) && cacheFile.isFile()) {
+            try {
+                byte[] content = Files.readAllBytes(cacheFile.toPath());
+                cache.load(new ByteArrayInputStream(content));
+                // Entry lines (not comments).
+                int lineCount = 0;
+                for (int i = 0; i < content.length; i++) {
+                    if (((i == 0) || (content[i - 1] == '\n')) && (content[i] != '#')) {
+                        lineCount++;
+                    }
+                } //
+                if (lineCount > COMPACT_FACTOR * cache.size()) {
+                    compact();
+                }
+            }
+            catch (IOException e) {
+                log.warn("Cannot read password cache '{}': {}", cacheFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Get the store for given password file. The file is read only once per process.
+     * @param passwordFile Password file.
+     * @return The store.
+     */
+    public static CredentialStore getInstance(File passwordFile) {
+        return stores.computeIfAbsent(passwordFile.getAbsoluteFile(), CredentialStore::load);
+    }
+
+    /**
+     * Read the password file.
+     * @param passwordFile Password file.
+     * @return The store.
+     */
+    public static CredentialStore load(File passwordFile) {
+        CredentialStore store = new CredentialStore(new File(passwordFile.getPath() + CACHE_EXTENSION));
+        try (BufferedReader reader = Files.newBufferedReader(passwordFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                int idx = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || (idx <= 0)) {
+                    continue;
+                }
+                store.addPassword(line.substring(0, idx).trim(), line.substring(idx + 1));
+            } //
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot read password file '%s'", passwordFile);
+            throw new RuntimeException(message, e);
+        }
+        return store;
+    }
+
+    /**
+     * Add known password.
+     * @param pattern Documents, which may be opened by the password: directory, file name glob
+     * (like '*.pdf') or path glob (like '/data/**&#47;*.pdf').
+     * @param password The password.
+     */
+    public synchronized void addPassword(String pattern, String password) {
+        entries.add(new Entry(pattern, password));
+    }
+
+    /**
+     * Get the passwords, which may open given document.
+     * @param file The document.
+     * @return Candidate passwords (the one, which opened the document last time, is first).
+     */
+    public synchronized List<String> getPasswords(File file) {
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        String known = getCachedResult(file);
+        List<String> passwords = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.matches(path) && !passwords.contains(entry.password)) {
+                if ((known != null) && known.equals(hash(entry.password))) {
+                    passwords.add(0, entry.password);
+                }
+                else {
+                    passwords.add(entry.password);
+                }
+            }
+        } //
+        return passwords;
+    }
+
+    /**
+     * Check if given passwords already failed to open the document (in the previous runs).
+     * @param file The document.
+     * @param passwords Candidate passwords.
+     * @return True if none of the passwords opens the document.
+     */
+    public synchronized boolean isKnownFailure(File file, List<String> passwords) {
+        return (FAILED_PREFIX + hash(String.join("\n", passwords))).equals(getCachedResult(file));
+    }
+
+    /**
+     * Remember the password, which opened the document.
+     * @param file The document.
+     * @param password The password.
+     */
+    public synchronized void recordSuccess(File file, String password) {
+        storeResult(file, hash(password));
+    }
+
+    /**
+     * Remember that none of given passwords opens the document.
+     * @param file The document.
+     * @param passwords Failed passwords.
+     */
+    public synchronized void recordFailure(File file, List<String> passwords) {
+        storeResult(file, FAILED_PREFIX + hash(String.join("\n", passwords)));
+    }
+
+    /**
+     * Get the cached result of the previous decryption attempts.
+     * @param file The document.
+     * @return Password hash, failure mark or null (if not known or the document was changed).
+     */
+    protected String getCachedResult(File file) {
+        String value = cache.getProperty(file.getAbsolutePath());
+        String version = getVersion(file);
+        if ((value == null) || !value.startsWith(version)) {
+            return null;
+        }
+        return value.substring(version.length());
+    }
+
+    protected void storeResult(File file, String result) {
+        String value = getVersion(file) + result;
+        if (value.equals(cache.setProperty(file.getAbsolutePath(), value)) || (cacheFile == null)) {
+            return;
+        }
+        // Single entry in the properties format (without the comment lines).
+        Properties entry = new Properties();
+        entry.setProperty(file.getAbsolutePath(), value);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        try {
+            entry.store(buf, null);
+            String line = new String(buf.toByteArray(), StandardCharsets.ISO_8859_1).replaceAll("(?m)^#.*\\R", "");
+            // Appended - the file is not rewritten for every document.
+            Files.write(cacheFile.toPath(), line.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        catch (IOException e) {
+            // The cache is just optimization.
+            log.warn("Cannot write password cache '{}': {}", cacheFile, e.toString());
+        }
+    }
+
+    /**
+     * Rewrite the cache without the superseded entries. The cache is replaced atomically (other
+     * processes may read it).
+     * @throws IOException If writing fails.
+     */
+    protected void compact() throws IOException {
+        Path directory = cacheFile.getAbsoluteFile().getParentFile().toPath();
+        Path temp = Files.createTempFile(directory, cacheFile.getName(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                cache.store(out, "Document password hashes");
+            }
+            Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Get the document version (the cached results are not valid for changed document).
+     * @param file The document.
+     * @return Version prefix of the cached value.
+     */
+    protected String getVersion(File file) {
+        return file.length() + ":" + file.lastModified() + ":";
+    }
+
+    protected static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, hash));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Password with the documents it applies to.
+     */
+    protected static class Entry {
+        protected Path directory;
+        protected PathMatcher nameMatcher;
+        protected PathMatcher pathMatcher;
+        protected String password;
+
+        protected Entry(String pattern, String password) {
+            this.password = password;
+            if (!pattern.matches(".*[*?\\[{].*")) {
+                directory = new File(pattern).getAbsoluteFile().toPath().normalize();
+            }
+            else if ((pattern.indexOf('/') < 0) && (pattern.indexOf(File.separatorChar) < 0)) {
+                nameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            }
+            else {
+                pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            }
+        }
+
+        protected boolean matches(Path path) {
+            if (directory != null) {
+                return path.startsWith(directory);
+            }
+            if (nameMatcher != null) {
+                return nameMatcher.matches(path.getFileName());
+            }
+            return pathMatcher.matches(path);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package dsk.anotex.importer;
+
+import dsk.anotex.Constants;
+import dsk.anotex.util.SettingsHelper;
+
+import java.util.Map;
+
+/**
+ * Time and resource budget of single document extraction. The checks are cooperative - they are
+ * called from the extraction code and throw {@link ExtractionLimitException} when some limit is
+ * exceeded. Zero (or negative) limit means unlimited.
+ */
+public class ExtractionBudget {
+    protected long documentTimeout;
+    protected long pageTimeout;
+    protected long maxGlyphs;
+    protected long maxQuads;
+
+    protected long documentDeadline;
+    protected long pageDeadline;
+    /** Document time used by the previous steps (in nanoseconds). */
+    protected long documentElapsed;
+    /** Start of the current step (in nanoseconds). */
+    protected long stepStart;
+    protected boolean paused;
+    protected long glyphCount;
+    protected long quadCount;
+
+    /**
+     * Constructor with specified parameters.
+     * @param documentTimeout Maximum time for the whole document (in milliseconds).
+     * @param pageTimeout Maximum time for single page (in milliseconds).
+     * @param maxGlyphs Maximum number of glyphs to process in the document.
+     * @param maxQuads Maximum number of highlight quads (lines) to process in the document.
+     */
+    public ExtractionBudget(long documentTimeout, long pageTimeout, long maxGlyphs, long maxQuads) {
+        super();
+        this.documentTimeout = documentTimeout;
+        this.pageTimeout = pageTimeout;
+        this.maxGlyphs = maxGlyphs;
+        this.maxQuads = maxQuads;
+        startDocument();
+    }
+
+    /**
+     * Create budget from the extraction settings.
+     * @param settings Extraction settings.
+     * @return The budget.
+     */
+    public static ExtractionBudget fromSettings(Map<String, Object> settings) {
+        return new ExtractionBudget(
+            SettingsHelper.getLong(settings, Constants.DOCUMENT_TIMEOUT, 0),
+            SettingsHelper.getLong(settings, Constants.PAGE_TIMEOUT, 0),
+            SettingsHelper.getLong(settings, Constants.MAX_GLYPHS, 0),
+            SettingsHelper.getLong(settings, Constants.MAX_QUADS, 0));
+    }
+
+    /**
+     * Start measuring the document budget.
+     */
+    public void startDocument() {
+        stepStart = System.nanoTime();
+        documentElapsed = 0;
+        paused = false;
+        documentDeadline = stepStart + documentTimeout * 1_000_000L;
+        pageDeadline = documentDeadline;
+        glyphCount = 0;
+        quadCount = 0;
+    }
+
+    /**
+     * Stop measuring the time (the extraction will continue later, see {@link #resume()}).
+     */
+    public void pause() {
+        if (!paused) {
+            documentElapsed += System.nanoTime() - stepStart;
+            paused = true;
+        }
+    }
+
+    /**
+     * Continue measuring the time after {@link #pause()}. The document budget is cumulative - only
+     * the remaining time is available. The page budget is restarted (the paused page continues
+     * as a new one). The glyph and quad counts are kept.
+     */
+    public void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        stepStart = System.nanoTime();
+        documentDeadline = stepStart + documentTimeout * 1_000_000L - documentElapsed;
+        pageDeadline = stepStart + pageTimeout * 1_000_000L;
+    }
+
+    /**
+     * Check if the document time budget is used up.
+     * @return True if there is no time left for the document.
+     */
+    public boolean isDocumentExhausted() {
+        if (documentTimeout <= 0) {
+            return false;
+        }
+        long elapsed = documentElapsed + (paused ? 0 : System.nanoTime() - stepStart);
+        return elapsed >= documentTimeout * 1_000_000L;
+    }
+
+    /**
+     * Start measuring the page budget.
+     */
+    public void startPage() {
+        pageDeadline = System.nanoTime() + pageTimeout * 1_000_000L;
+        checkTime();
+    }
+
+    /**
+     * Check if the time budget is not exceeded.
+     */
+    public void checkTime() {
+        if ((documentTimeout > 0) || (pageTimeout > 0)) {
+            // The deadlines are compared by difference (System.nanoTime() can overflow).
+            long now = System.nanoTime();
+            if ((documentTimeout > 0) && (now - documentDeadline > 0)) {
+                throw new ExtractionLimitException("Document timeout exceeded", true);
+            }
+            if ((pageTimeout > 0) && (now - pageDeadline > 0)) {
+                throw new ExtractionLimitException("Page timeout exceeded", false);
+            }
+        }
+    }
+
+    /**
+     * Account processed glyphs (and check the time budget).
+     * @param count Number of glyphs.
+     */
+    public void countGlyphs(int count) {
+        glyphCount += count;
+        if ((maxGlyphs > 0) && (glyphCount > maxGlyphs)) {
+            throw new ExtractionLimitException("Glyph limit exceeded", true);
+        }
+        checkTime();
+    }
+
+    /**
+     * Account processed highlight quads (and check the time budget).
+     * @param count Number of quads.
+     */
+    public void countQuads(int count) {
+        quadCount += count;
+        if ((maxQuads > 0) && (quadCount > maxQuads)) {
+            throw new ExtractionLimitException("Quad limit exceeded", true);
+        }
+        checkTime();
+    }
+
+    public long getGlyphCount() {
+        return glyphCount;
+    }
+
+    public long getQuadCount() {
+        return quadCount;
+    }
+}
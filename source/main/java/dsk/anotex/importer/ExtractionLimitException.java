@@ -0,0 +1,25 @@
+package dsk.anotex.importer;
+
+/**
+ * Thrown when the extraction exceeds some of its limits (time, glyphs, quads).
+ * It is used to abort the PDF content parsing cooperatively.
+ */
+public class ExtractionLimitException extends RuntimeException {
+    private static final long serialVersionUID = -2306716839264771527L;
+    protected boolean documentLimit;
+
+    /**
+     * Constructor with specified parameters.
+     * @param message Description of the exceeded limit.
+     * @param documentLimit True if the whole document should be aborted, false if only the current
+     * page.
+     */
+    public ExtractionLimitException(String message, boolean documentLimit) {
+        super(message);
+        this.documentLimit = documentLimit;
+    }
+
+    public boolean isDocumentLimit() {
+        return documentLimit;
+    }
+}
@@ -0,0 +1,60 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Document scoped access to decoded fonts (encodings, ToUnicode CMaps, glyph widths). Books usually
+ * use few fonts on all pages, but by default every page parse decodes them again. The fonts are
+ * kept by their document ({@link com.itextpdf.kernel.pdf.PdfDocument#getFont(PdfDictionary)}) -
+ * this class only routes the page parsing there and counts the reused fonts.
+ * Not thread safe. One instance per document (parallel workers have one per document).
+ */
+public class FontCache {
+    protected Set<PdfIndirectReference> decoded;
+    protected int hits;
+    protected int misses;
+
+    public FontCache() {
+        super();
+        decoded = new HashSet<>();
+    }
+
+    /**
+     * Get decoded font for given font dictionary.
+     * @param fontDict Font dictionary.
+     * @return The font.
+     */
+    public PdfFont getFont(PdfDictionary fontDict) {
+        PdfIndirectReference reference = fontDict.getIndirectReference();
+        if ((reference == null) || (reference.getDocument() == null)) {
+            // Direct font object (cannot be shared by pages).
+            misses++;
+            return PdfFontFactory.createFont(fontDict);
+        }
+        if (decoded.add(reference)) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return reference.getDocument().getFont(fontDict);
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int size() {
+        return decoded.size();
+    }
+}
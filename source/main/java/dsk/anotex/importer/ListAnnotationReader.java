@@ -0,0 +1,65 @@
+package dsk.anotex.importer;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Annotation reader over already extracted document.
+ */
+public class ListAnnotationReader implements AnnotationReader {
+    protected AnnotatedDocument document;
+    protected List<Annotation> annotations;
+    protected int position;
+
+    /**
+     * Constructor with specified parameters.
+     * @param document Extracted document.
+     */
+    public ListAnnotationReader(AnnotatedDocument document) {
+        super();
+        annotations = new ArrayList<>(document.getAnnotations());
+        annotations.removeIf(Annotation::isEmpty);
+        this.document = document.copyWithAnnotations(null);
+    }
+
+    @Override
+    public AnnotatedDocument getDocumentInfo() {
+        return document;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < annotations.size();
+    }
+
+    @Override
+    public List<Annotation> next(int maxAnnotations, long timeout) {
+        int end = annotations.size();
+        if ((maxAnnotations > 0) && (position + maxAnnotations < end)) {
+            end = position + maxAnnotations;
+        }
+        List<Annotation> result = new ArrayList<>(annotations.subList(position, end));
+        position = end;
+        return result;
+    }
+
+    @Override
+    public List<Annotation> loadPage(int pageNumber) {
+        List<Annotation> pageAnnotations = new ArrayList<>();
+        for (Annotation annotation : annotations) {
+            if (annotation.getPage() == pageNumber) {
+                pageAnnotations.add(annotation);
+            }
+        } //
+        return pageAnnotations;
+    }
+
+    @Override
+    public void close() {
+        annotations = new ArrayList<>();
+        position = 0;
+    }
+}
@@ -0,0 +1,180 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfNumber;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.navigation.PdfDestination;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page to chapter lookup, built once from the document outline (bookmarks). The chapter start
+ * pages are sorted, so the chapter of a page is found by binary search.
+ */
+public class OutlineIndex {
+    public static final String PATH_SEPARATOR = " / ";
+    protected int[] startPages;
+    protected String[] chapters;
+
+    /**
+     * Constructor with specified parameters.
+     * @param entries Chapters (title path, start page).
+     */
+    protected OutlineIndex(List<Map.Entry<String, Integer>> entries) {
+        super();
+        // Stable sort - chapters starting on the same page keep the outline order.
+        entries.sort(Comparator.comparing(Map.Entry::getValue));
+        startPages = new int[entries.size()];
+        chapters = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            chapters[i] = entries.get(i).getKey();
+            startPages[i] = entries.get(i).getValue();
+        } //
+    }
+
+    /**
+     * Build the index from the document outline.
+     * @param pdfDocument PDF document.
+     * @return The index (empty if the document has no outline).
+     */
+    public static OutlineIndex create(PdfDocument pdfDocument) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        if (pdfDocument.hasOutlines()) {
+            PdfOutline root = pdfDocument.getOutlines(false);
+            if (root != null) {
+                Map<String, PdfObject> names = pdfDocument.getCatalog().getNameTree(PdfName.Dests).getNames();
+                // Only the destination pages are resolved (the other pages are not loaded).
+                PageResolver pageResolver = new PageResolver(pdfDocument);
+                for (PdfOutline outline : root.getAllChildren()) {
+                    addOutline(outline, "", names, pageResolver, entries);
+                } //
+            }
+        }
+        return new OutlineIndex(entries);
+    }
+
+    /**
+     * Add outline item (and its children) to the chapter list.
+     * @param outline Outline item.
+     * @param parentPath Title path of the parent item.
+     * @param names Named destinations of the document.
+     * @param pageResolver Page number lookup.
+     * @param entries Where to add the chapters.
+     */
+    protected static void addOutline(PdfOutline outline, String parentPath, Map<String, PdfObject> names,
+        PageResolver pageResolver, List<Map.Entry<String, Integer>> entries) {
+        String title = (outline.getTitle() != null) ? outline.getTitle().trim() : "";
+        String path = parentPath.isEmpty() ? title : parentPath + PATH_SEPARATOR + title;
+        Integer page = getPageNumber(outline.getContent(), names, pageResolver);
+        if (page != null) {
+            entries.add(new AbstractMap.SimpleEntry<>(path, page));
+        }
+        for (PdfOutline child : outline.getAllChildren()) {
+            addOutline(child, path, names, pageResolver, entries);
+        } //
+    }
+
+    /**
+     * Get the target page of outline item.
+     * @param content Outline item dictionary.
+     * @param names Named destinations of the document.
+     * @param pageResolver Page number lookup.
+     * @return Page number or null (if the item does not point to a page of this document).
+     */
+    protected static Integer getPageNumber(PdfDictionary content, Map<String, PdfObject> names,
+        PageResolver pageResolver) {
+        PdfObject target = content.get(PdfName.Dest);
+        if (target == null) {
+            PdfDictionary action = content.getAsDictionary(PdfName.A);
+            if ((action != null) && PdfName.GoTo.equals(action.getAsName(PdfName.S))) {
+                target = action.get(PdfName.D);
+            }
+        }
+        if (target == null) {
+            return null;
+        }
+        PdfObject page;
+        try {
+            page = PdfDestination.makeDestination(target).getDestinationPage(names);
+        }
+        catch (RuntimeException e) {
+            // Broken destination.
+            return null;
+        }
+        if (page instanceof PdfNumber) {
+            return ((PdfNumber) page).intValue() + 1;
+        }
+        return (page instanceof PdfDictionary) ? pageResolver.getPageNumber((PdfDictionary) page) : null;
+    }
+
+    /**
+     * Get the chapter of given page.
+     * @param pageNumber Page number.
+     * @return Title path of the last chapter starting on the page (or before it). Null if the page
+     * is before the first chapter.
+     */
+    public String getChapter(int pageNumber) {
+        // Binary search for the last chapter with start page <= pageNumber.
+        int low = 0;
+        int high = startPages.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startPages[mid] <= pageNumber) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        } //
+        return (low > 0) ? chapters[low - 1] : null;
+    }
+
+    /**
+     * Check if the document has no chapters.
+     * @return True if there is no (usable) outline.
+     */
+    public boolean isEmpty() {
+        return startPages.length == 0;
+    }
+
+    /**
+     * Lookup of page numbers by page dictionary. Every destination page is resolved only once
+     * (many outline items usually point to the same pages).
+     */
+    protected static class PageResolver {
+        protected PdfDocument pdfDocument;
+        protected Map<PdfIndirectReference, Integer> pageNumbers;
+
+        protected PageResolver(PdfDocument pdfDocument) {
+            this.pdfDocument = pdfDocument;
+            pageNumbers = new HashMap<>();
+        }
+
+        /**
+         * Get the page number.
+         * @param page Page dictionary.
+         * @return Page number or null (if the page is not in this document).
+         */
+        protected Integer getPageNumber(PdfDictionary page) {
+            PdfIndirectReference reference = page.getIndirectReference();
+            if (reference == null) {
+                return null;
+            }
+            Integer pageNumber = pageNumbers.get(reference);
+            if (pageNumber == null) {
+                pageNumber = pdfDocument.getPageNumber(page);
+                pageNumbers.put(reference, pageNumber);
+            }
+            return (pageNumber > 0) ? pageNumber : null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package dsk.anotex.importer;
+
+/**
+ * Thrown when the page content (text layer) cannot be parsed. The failure is remembered for
+ * the page, so the broken content is not parsed again for every annotation on the page.
+ */
+public class PageContentException extends RuntimeException {
+    private static final long serialVersionUID = 4418573291648905722L;
+
+    /**
+     * Constructor with specified parameters.
+     * @param message Error message.
+     * @param cause The parsing error.
+     */
+    public PageContentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
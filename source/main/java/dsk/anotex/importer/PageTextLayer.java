@@ -0,0 +1,231 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.CharacterRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The glyphs of one page with their positions. The page content is parsed only once - the text
+ * of all highlights on the page is then cut out of the collected glyphs.
+ * The glyph statistics (median glyph height, line spacing) are used to size the padding around
+ * the highlight rectangles, so it does not reach into the neighbouring lines.
+ */
+public class PageTextLayer implements IEventListener {
+    protected ExtractionBudget budget;
+    protected List<Glyph> glyphs;
+    protected Glyph[] glyphsByBottom;
+    protected float maxGlyphHeight;
+    protected float medianGlyphHeight;
+    protected float lineSpacing;
+
+    /**
+     * Constructor with specified parameters.
+     * @param budget Extraction budget to check while parsing (null = unlimited).
+     */
+    public PageTextLayer(ExtractionBudget budget) {
+        super();
+        this.budget = budget;
+        glyphs = new ArrayList<>();
+    }
+
+    /**
+     * Parse the page content.
+     * @param page The page.
+     * @param budget Extraction budget to check while parsing (null = unlimited).
+     * @param fontCache Font cache of the page document (null = decode the fonts again).
+     * @return Text layer of the page.
+     */
+    public static PageTextLayer parse(PdfPage page, ExtractionBudget budget, FontCache fontCache) {
+        PageTextLayer textLayer = new PageTextLayer(budget);
+        PdfCanvasProcessor processor = (fontCache != null) ? new CachingCanvasProcessor(textLayer, fontCache)
+            : new PdfCanvasProcessor(textLayer);
+        processor.processPageContent(page);
+        textLayer.calculateStatistics();
+        return textLayer;
+    }
+
+    @Override
+    public void eventOccurred(IEventData eventData, EventType eventType) {
+        if (EventType.RENDER_TEXT != eventType) {
+            return;
+        }
+        TextRenderInfo data = (TextRenderInfo) eventData;
+        // Keep the graphics state after the event (it is shared by the char infos).
+        data.preserveGraphicsState();
+        List<TextRenderInfo> chars = data.getCharacterRenderInfos();
+        if (budget != null) {
+            // Cooperative cancellation - aborts the page parsing when the budget is exceeded.
+            budget.countGlyphs(chars.size());
+        }
+        for (TextRenderInfo charInfo : chars) {
+            Rectangle area = new CharacterRenderInfo(charInfo).getBoundingBox();
+            float baseline = charInfo.getBaseline().getStartPoint().get(Vector.I2);
+            glyphs.add(new Glyph(glyphs.size(), charInfo, area, baseline));
+        } //
+    }
+
+    @Override
+    public Set<EventType> getSupportedEvents() {
+        return Collections.singleton(EventType.RENDER_TEXT);
+    }
+
+    /**
+     * Calculate the glyph statistics and index the glyphs by position.
+     */
+    protected void calculateStatistics() {
+        glyphsByBottom = glyphs.toArray(new Glyph[0]);
+        Arrays.sort(glyphsByBottom, Comparator.comparingDouble(glyph -> glyph.area.getBottom()));
+        if (glyphsByBottom.length == 0) {
+            return;
+        }
+        float[] heights = new float[glyphsByBottom.length];
+        float[] baselines = new float[glyphsByBottom.length];
+        for (int i = 0; i < glyphsByBottom.length; i++) {
+            heights[i] = glyphsByBottom[i].area.getHeight();
+            baselines[i] = glyphsByBottom[i].baseline;
+        } //
+        Arrays.sort(heights);
+        maxGlyphHeight = heights[heights.length - 1];
+        medianGlyphHeight = heights[heights.length / 2];
+
+        // Line spacing = median distance between the neighbouring baselines.
+        Arrays.sort(baselines);
+        float[] gaps = new float[baselines.length];
+        int gapCount = 0;
+        for (int i = 1; i < baselines.length; i++) {
+            float gap = baselines[i] - baselines[i - 1];
+            if (gap > medianGlyphHeight / 2) {
+                gaps[gapCount++] = gap;
+            }
+        } //
+        if (gapCount > 0) {
+            Arrays.sort(gaps, 0, gapCount);
+            lineSpacing = gaps[gapCount / 2];
+        }
+    }
+
+    /**
+     * Get the text inside given area (like highlighted line).
+     * @param area The area.
+     * @param minOverlap Minimal fraction of the glyph area (0-1), which should be inside.
+     * @return The text (can be empty).
+     */
+    public String extractText(Rectangle area, float minOverlap) {
+        if (glyphs.isEmpty()) {
+            return "";
+        }
+        Rectangle extractionArea = addPadding(area);
+        PdfTextExtractionStrategy strategy = new PdfTextExtractionStrategy(extractionArea, minOverlap);
+        for (Glyph glyph : findGlyphs(extractionArea)) {
+            strategy.renderCharacter(glyph.info, glyph.area);
+        } //
+        return strategy.getResultantText();
+    }
+
+    /**
+     * Add vertical padding to the area. The glyphs often stick slightly out of the highlight
+     * rectangle, but the padding should not reach into the neighbouring lines.
+     * @param area The area.
+     * @return Padded area.
+     */
+    protected Rectangle addPadding(Rectangle area) {
+        float padding;
+        if (lineSpacing > 0) {
+            // Half of the free space between the lines (but not more than half glyph).
+            padding = Math.max(0, Math.min((lineSpacing - area.getHeight()) / 2, medianGlyphHeight / 2));
+        }
+        else {
+            // Single line - nothing to reach into.
+            padding = medianGlyphHeight / 4;
+        }
+        return new Rectangle(area.getX(), area.getY() - padding, area.getWidth(), area.getHeight() + 2 * padding);
+    }
+
+    /**
+     * Find the glyphs, which intersect given area (vertically).
+     * @param area The area.
+     * @return Found glyphs (in content order).
+     */
+    protected List<Glyph> findGlyphs(Rectangle area) {
+        // Binary search for the first glyph, which may reach into the area.
+        float minBottom = area.getBottom() - maxGlyphHeight;
+        int low = 0;
+        int high = glyphsByBottom.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (glyphsByBottom[mid].area.getBottom() < minBottom) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        } //
+        List<Glyph> found = new ArrayList<>();
+        for (int i = low; i < glyphsByBottom.length; i++) {
+            Glyph glyph = glyphsByBottom[i];
+            if (glyph.area.getBottom() > area.getTop()) {
+                break;
+            }
+            if ((glyph.area.getTop() >= area.getBottom()) && (glyph.area.getRight() >= area.getLeft())
+                && (glyph.area.getLeft() <= area.getRight())) {
+                found.add(glyph);
+            }
+        } //
+        found.sort(Comparator.comparingInt(glyph -> glyph.index));
+        return found;
+    }
+
+    /**
+     * Check if the page has some text.
+     * @return False for pages without text layer (like scanned pages).
+     */
+    public boolean hasText() {
+        return !glyphs.isEmpty();
+    }
+
+    public int getGlyphCount() {
+        return glyphs.size();
+    }
+
+    public float getMedianGlyphHeight() {
+        return medianGlyphHeight;
+    }
+
+    /**
+     * Get the typical distance between the text lines.
+     * @return Line spacing or 0 (if unknown).
+     */
+    public float getLineSpacing() {
+        return lineSpacing;
+    }
+
+    /**
+     * Glyph with its position.
+     */
+    protected static class Glyph {
+        protected int index;
+        protected TextRenderInfo info;
+        protected Rectangle area;
+        protected float baseline;
+
+        protected Glyph(int index, TextRenderInfo info, Rectangle area, float baseline) {
+            this.index = index;
+            this.info = info;
+            this.area = area;
+            this.baseline = baseline;
+        }
+    }
+}
@@ -1,70 +1,302 @@
 package dsk.anotex.importer;
 
+import com.itextpdf.kernel.crypto.BadPasswordException;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfDate;
+import com.itextpdf.kernel.pdf.PdfDictionary;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfDocumentInfo;
 import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
 import com.itextpdf.kernel.pdf.PdfPage;
 import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfResources;
+import com.itextpdf.kernel.pdf.PdfStream;
 import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.ReaderProperties;
 import com.itextpdf.kernel.pdf.annot.PdfAnnotation;
 import com.itextpdf.kernel.pdf.annot.PdfTextMarkupAnnotation;
-import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
-import com.itextpdf.kernel.pdf.canvas.parser.filter.TextRegionEventFilter;
-import com.itextpdf.kernel.pdf.canvas.parser.listener.FilteredTextEventListener;
+import dsk.anotex.Constants;
 import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationFilter;
+import dsk.anotex.core.PageRanges;
+import dsk.anotex.util.SettingsHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Import annotations form PFD files.
  */
 public class PdfAnnotationImporter implements AnnotationImporter {
-    protected Logger log = LogManager.getLogger(this.getClass());
+    protected static final Logger log = LogManager.getLogger(PdfAnnotationImporter.class);
+    /** Type of annotation without /Subtype (malformed, but its text can be still extracted). */
+    public static final String UNKNOWN_TYPE = "Unknown";
+    protected Map<String, Object> settings;
+    protected ExtractionBudget budget;
+    protected AnnotationFilter filter;
+    protected PdfPage textLayerPage;
+    protected PageTextLayer textLayer;
+    /** Parsing failure of the cached page (the page is not parsed again). */
+    protected PageContentException textLayerError;
+    protected FontCache fontCache;
+    protected RichTextConverter richTextConverter;
 
-    public AnnotatedDocument readAnnotations(String fileName) {
-        // Check the file existence.
+    public PdfAnnotationImporter() {
+        super();
+        settings = new HashMap<>();
+        budget = ExtractionBudget.fromSettings(settings);
+        filter = new AnnotationFilter();
+        richTextConverter = new RichTextConverter();
+    }
+
+    public AnnotatedDocument readAnnotations(String fileName, Map<String, Object> settings) {
+        try (AnnotationReader reader = openReader(fileName, settings)) {
+            AnnotatedDocument document = reader.getDocumentInfo();
+            document.setAnnotations(reader.next(0, 0));
+            return document;
+        }
+    }
+
+    @Override
+    public PdfAnnotationReader openReader(String fileName, Map<String, Object> settings) {
+        this.settings = settings;
+        budget = ExtractionBudget.fromSettings(settings);
+        filter = createFilter(settings);
+        fontCache = new FontCache();
+        PdfDocument pdfDocument = readDocument(getDocumentFile(fileName));
+        try {
+            resolvePages(pdfDocument.getNumberOfPages());
+        }
+        catch (RuntimeException e) {
+            pdfDocument.close();
+            throw e;
+        }
+        AnnotatedDocument document = new AnnotatedDocument();
+        readDocumentInfo(pdfDocument, document);
+        document.setFileName(fileName);
+        return new PdfAnnotationReader(this, pdfDocument, document);
+    }
+
+    @Override
+    public AnnotatedDocument readDocumentInfo(String fileName, Map<String, Object> settings) {
+        // Only the trailer and the info dictionary are read (the pages are not parsed).
+        this.settings = settings;
+        PdfDocument pdfDocument = readDocument(getDocumentFile(fileName));
+        try {
+            AnnotatedDocument document = new AnnotatedDocument();
+            readDocumentInfo(pdfDocument, document);
+            document.setFileName(fileName);
+            return document;
+        }
+        finally {
+            pdfDocument.close();
+        }
+    }
+
+    /**
+     * Get existing document file.
+     * @param fileName Document file name.
+     * @return The file.
+     */
+    protected File getDocumentFile(String fileName) {
         File file = new File(fileName).getAbsoluteFile();
         if (!file.isFile()) {
             String message = String.format("File '%s' does not exist", file.getName());
             throw new IllegalArgumentException(message);
         }
+        return file;
+    }
 
-        // Extract the annotations.
-        PdfDocument pdfDocument = readDocument(file);
-        return extractAnnotations(pdfDocument);
+    /**
+     * Resolve the requested pages against the document (open ranges like 'last:20' and the page
+     * sample). Only the page count from the page tree root is used - the pages are not loaded.
+     * @param pageCount Number of pages of the document.
+     */
+    protected void resolvePages(int pageCount) {
+        int sample = SettingsHelper.getInt(settings, Constants.SAMPLE, 0);
+        PageRanges pages = filter.getPages();
+        if ((pages == null) && (sample == 0)) {
+            return;
+        }
+        if (pages == null) {
+            pages = new PageRanges();
+            pages.add(1, Integer.MAX_VALUE);
+        }
+        pages = pages.resolve(pageCount);
+        if (sample != 0) {
+            pages = pages.sample(sample);
+        }
+        filter.setPages(pages);
     }
 
     /**
-     * Read PDF document from file.
+     * Create annotation filter from the settings.
+     * @param settings Import settings.
+     * @return The filter.
+     */
+    protected AnnotationFilter createFilter(Map<String, Object> settings) {
+        AnnotationFilter filter = new AnnotationFilter();
+        String pages = SettingsHelper.getString(settings, Constants.PAGES);
+        if (pages != null) {
+            filter.setPages(PageRanges.parse(pages));
+        }
+        filter.setTypes(SettingsHelper.getList(settings, Constants.TYPES));
+        filter.setColors(SettingsHelper.getList(settings, Constants.COLORS));
+        filter.setAuthors(SettingsHelper.getList(settings, Constants.AUTHORS));
+        filter.setDateFrom(getDate(settings, Constants.DATE_FROM, false));
+        filter.setDateTo(getDate(settings, Constants.DATE_TO, true));
+        return filter;
+    }
+
+    protected Date getDate(Map<String, Object> settings, String key, boolean endOfDay) {
+        Object value = settings.get(key);
+        if (value instanceof Date) {
+            return (Date) value;
+        }
+        return (value != null) ? AnnotationFilter.parseDate(value.toString(), endOfDay) : null;
+    }
+
+    /**
+     * Read PDF document from file. Encrypted document is opened with the password from the settings
+     * or with the known passwords from the password file (see {@link CredentialStore}).
      * @param file File name.
      * @return PDF document.
      */
     protected PdfDocument readDocument(File file) {
-        PdfDocument document;
+        String password = SettingsHelper.getString(settings, Constants.PASSWORD);
+        String passwordFile = SettingsHelper.getString(settings, Constants.PASSWORD_FILE);
+        CredentialStore credentials = (passwordFile != null)
+            ? CredentialStore.getInstance(new File(passwordFile)) : null;
+        List<String> passwords = new ArrayList<>();
+        if (password != null) {
+            passwords.add(password);
+        }
+        if (credentials != null) {
+            passwords.addAll(credentials.getPasswords(file));
+            if (!passwords.isEmpty() && credentials.isKnownFailure(file, passwords)) {
+                // Do not repeat the (expensive) failed attempts of the previous runs.
+                String message = String.format("No known password opens document '%s'", file.getName());
+                throw new IllegalArgumentException(message);
+            }
+        }
+        if (passwords.isEmpty() || (password == null)) {
+            // Not encrypted (or only the permissions are restricted).
+            try {
+                return openDocument(file, null);
+            }
+            catch (BadPasswordException e) {
+                if (passwords.isEmpty()) {
+                    String message = String.format("Document '%s' is password protected", file.getName());
+                    throw new IllegalArgumentException(message, e);
+                }
+            }
+        }
+        for (String candidate : passwords) {
+            try {
+                PdfDocument document = openDocument(file, candidate);
+                if (credentials != null) {
+                    credentials.recordSuccess(file, candidate);
+                }
+                return document;
+            }
+            catch (BadPasswordException e) {
+                log.debug("Wrong password for '{}'", file.getName());
+            }
+        } //
+        if (credentials != null) {
+            credentials.recordFailure(file, passwords);
+        }
+        String message = String.format("No known password opens document '%s'", file.getName());
+        throw new IllegalArgumentException(message);
+    }
+
+    /**
+     * Open PDF document.
+     * @param file File name.
+     * @param password Document password (null = not encrypted).
+     * @return PDF document.
+     * @throws BadPasswordException If the password is wrong.
+     */
+    protected PdfDocument openDocument(File file, String password) {
+        ReaderProperties properties = new ReaderProperties();
+        if (password != null) {
+            properties.setPassword(password.getBytes(StandardCharsets.UTF_8));
+        }
+        PdfReader reader = null;
         try {
-            document = new PdfDocument(new PdfReader(file.getAbsolutePath()));
+            reader = new PdfReader(file.getAbsolutePath(), properties);
+            return new PdfDocument(reader);
+        }
+        catch (BadPasswordException e) {
+            closeQuietly(reader);
+            throw e;
         }
         catch (Exception e) {
+            closeQuietly(reader);
             throw new IllegalArgumentException(e);
         }
-        return document;
+    }
+
+    protected void closeQuietly(PdfReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        }
+        catch (IOException e) {
+            log.debug("Cannot close '{}': {}", reader, e.toString());
+        }
     }
 
     /**
-     * Extract annotations from given PDF document.
+     * Create the page to chapter lookup. The outline is read only if the annotations are grouped
+     * by chapter.
      * @param pdfDocument PDF document.
-     * @return Extracted annotations.
+     * @return The lookup or null (if not needed).
      */
-    protected AnnotatedDocument extractAnnotations(PdfDocument pdfDocument) {
-        AnnotatedDocument document = new AnnotatedDocument();
+    protected OutlineIndex createOutlineIndex(PdfDocument pdfDocument) {
+        String groupBy = SettingsHelper.getString(settings, Constants.GROUP_BY);
+        if (!Constants.GROUP_BY_CHAPTER.equals(groupBy)) {
+            return null;
+        }
+        return OutlineIndex.create(pdfDocument);
+    }
+
+    /**
+     * Release the parsed page and the document fonts.
+     */
+    protected void releasePageCache() {
+        if ((fontCache != null) && log.isDebugEnabled()) {
+            log.debug("Fonts decoded: {}, reused: {}", fontCache.getMisses(), fontCache.getHits());
+        }
+        textLayer = null;
+        textLayerPage = null;
+        textLayerError = null;
+        fontCache = null;
+    }
+
+    /**
+     * Read the document information (title, author, etc.).
+     * @param pdfDocument PDF document.
+     * @param document Where to store the information.
+     */
+    protected void readDocumentInfo(PdfDocument pdfDocument, AnnotatedDocument document) {
         PdfDocumentInfo pdfInfo = pdfDocument.getDocumentInfo();
         document.setTitle(pdfInfo.getTitle());
         document.setSubject(pdfInfo.getSubject());
@@ -72,20 +304,6 @@ public class PdfAnnotationImporter implements AnnotationImporter {
         document.setNumberOfPages(pdfDocument.getNumberOfPages());
         List<String> keywords = convertToKeywords(pdfInfo.getKeywords());
         document.setKeywords(keywords);
-
-        List<Annotation> annotations = new LinkedList<>();
-        for (int i = 1; i <= pdfDocument.getNumberOfPages(); i++) {
-            PdfPage page = pdfDocument.getPage(i);
-            for (PdfAnnotation pdfAnnotation : page.getAnnotations()) {
-                Annotation annotation = convertAnnotation(pdfAnnotation, i);
-                if (annotation != null) {
-                    annotations.add(annotation);
-                }
-            } //
-        } //
-        document.setAnnotations(annotations);
-
-        return document;
     }
 
     /**
@@ -95,33 +313,163 @@ public class PdfAnnotationImporter implements AnnotationImporter {
      * @return Converted annotation.
      */
     protected Annotation convertAnnotation(PdfAnnotation pdfAnnotation, int pagenr) {
-        String annotationText = null;
+        // The metadata is read from the already loaded annotation dictionary, so the filtering
+        // is done before the (expensive) text extraction.
+        Annotation annotation = new Annotation();
+        annotation.setPage(pagenr);
+        readMetadata(pdfAnnotation, annotation);
+        if (!filter.accepts(annotation)) {
+            return null;
+        }
+
         String highlightedText = null;
+        String annotationText = convertString(pdfAnnotation.getContents());
+        String richText = getRichTextXhtml(pdfAnnotation);
         if (PdfName.Highlight.equals(pdfAnnotation.getSubtype())) {
-            PdfTextMarkupAnnotation annotation = (PdfTextMarkupAnnotation) pdfAnnotation;
-            highlightedText = extractText(annotation.getQuadPoints(), annotation.getPage(), pagenr);
-            log.debug("Highlighted text: " + highlightedText);
+            PdfTextMarkupAnnotation markup = (PdfTextMarkupAnnotation) pdfAnnotation;
+            highlightedText = extractText(markup.getQuadPoints(), markup.getPage(), pagenr);
+            log.debug("Highlighted text: {}", highlightedText);
             highlightedText = normalizeHighlightedText(highlightedText);
+            if (((highlightedText == null) || highlightedText.trim().isEmpty())
+                && !getTextLayer(markup.getPage()).hasText()) {
+                // No text layer (scanned page). Some viewers store the highlighted text
+                // in the annotation itself.
+                highlightedText = richTextConverter.toPlainText(richText);
+                richText = null;
+                if (highlightedText == null) {
+                    highlightedText = annotationText;
+                }
+                if ((highlightedText != null) && highlightedText.equals(annotationText)) {
+                    // Do not duplicate it as comment.
+                    annotationText = null;
+                }
+            }
+        }
+
+        if (annotationText == null && highlightedText == null) {
+            return null;
+        }
+        if(annotationText != null && !annotationText.matches("\\s*"))
+        	annotation.setText(removePollutionChars(stripUnwantedChunks(annotationText)));
+        if ((annotation.getText() != null) && (richText != null)) {
+            String markdown = richTextConverter.toMarkdown(richText);
+            if (richTextConverter.isFormatted()) {
+                annotation.setRichText(markdown);
+            }
+        }
+        if(highlightedText != null && !highlightedText.matches("\\s*"))
+        	annotation.setHighlight(removePollutionChars(stripUnwantedChunks(highlightedText)));
+        return annotation;
+    }
+
+    /**
+     * Get the annotation rich text (/RC entry).
+     * @param pdfAnnotation The annotation.
+     * @return Rich text (XHTML) or null.
+     */
+    protected String getRichTextXhtml(PdfAnnotation pdfAnnotation) {
+        PdfObject richText = pdfAnnotation.getPdfObject().get(PdfName.RC);
+        if (richText instanceof PdfString) {
+            return convertString((PdfString) richText);
         }
-        PdfString pdfText = pdfAnnotation.getContents();
+        else if (richText instanceof PdfStream) {
+            return new String(((PdfStream) richText).getBytes(), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * Copy the annotation metadata (type, color, author, dates, rectangle) from the annotation
+     * dictionary.
+     * @param pdfAnnotation Source annotation.
+     * @param annotation Target annotation.
+     */
+    protected void readMetadata(PdfAnnotation pdfAnnotation, Annotation annotation) {
+        PdfDictionary dictionary = pdfAnnotation.getPdfObject();
+        PdfName subtype = pdfAnnotation.getSubtype();
+        annotation.setType((subtype != null) ? subtype.getValue() : UNKNOWN_TYPE);
+        annotation.setColor(convertColor(pdfAnnotation.getColorObject()));
+        annotation.setAuthor(convertString(pdfAnnotation.getTitle()));
+        annotation.setCreationDate(convertDate(dictionary.getAsString(PdfName.CreationDate)));
+        annotation.setModificationDate(convertDate(pdfAnnotation.getDate()));
+        PdfArray rectangle = pdfAnnotation.getRectangle();
+        if ((rectangle != null) && (rectangle.size() == 4)) {
+            annotation.setRectangle(rectangle.toFloatArray());
+        }
+    }
+
+    /**
+     * Convert PDF string to Java string.
+     * @param pdfText PDF string (can be null).
+     * @return Converted string or null.
+     */
+    protected String convertString(PdfString pdfText) {
+        String text = null;
         if (pdfText != null) {
             if (pdfText.getEncoding() == null) {
-                annotationText = pdfText.toUnicodeString();
+                text = pdfText.toUnicodeString();
             }  else {
-            	annotationText = pdfText.getValue();
+            	text = pdfText.getValue();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Convert PDF date string (like 'D:20210101120000+02'00'').
+     * @param pdfDate PDF date (can be null).
+     * @return Converted date or null (if missing or malformed).
+     */
+    protected Date convertDate(PdfString pdfDate) {
+        Date date = null;
+        if (pdfDate != null) {
+            try {
+                date = PdfDate.decode(pdfDate.toUnicodeString()).getTime();
+            }
+            catch (RuntimeException e) {
+                log.debug("Invalid annotation date: {}", pdfDate);
             }
         }
+        return date;
+    }
 
-        Annotation annotation = null;
-        if (annotationText != null || highlightedText != null) {
-            annotation = new Annotation();
-            if(annotationText != null && !annotationText.matches("\\s*"))
-            	annotation.setText(removePollutionChars(stripUnwantedChunks(annotationText)));
-            if(highlightedText != null && !highlightedText.matches("\\s*"))
-            	annotation.setHighlight(removePollutionChars(stripUnwantedChunks(highlightedText)));
-            annotation.setPage(pagenr);
+    /**
+     * Convert annotation color (gray, RGB or CMYK array) to '#rrggbb' format.
+     * @param color PDF color array (can be null).
+     * @return Converted color or null (if the annotation is transparent or has no color).
+     */
+    protected String convertColor(PdfArray color) {
+        if (color == null) {
+            return null;
         }
-        return annotation;
+        float[] c = color.toFloatArray();
+        float r;
+        float g;
+        float b;
+        switch (c.length) {
+        case 1:
+            r = g = b = c[0];
+            break;
+        case 3:
+            r = c[0];
+            g = c[1];
+            b = c[2];
+            break;
+        case 4:
+            r = (1 - c[0]) * (1 - c[3]);
+            g = (1 - c[1]) * (1 - c[3]);
+            b = (1 - c[2]) * (1 - c[3]);
+            break;
+        default:
+            return null;
+        }
+        return "#" + toHex(r) + toHex(g) + toHex(b);
+    }
+
+    protected String toHex(float colorComponent) {
+        int value = Math.round(Math.max(0, Math.min(1, colorComponent)) * 255);
+        final String digits = "0123456789abcdef";
+        return "" + digits.charAt(value >> 4) + digits.charAt(value & 0xF);
     }
 
     /**
@@ -137,31 +485,102 @@ public class PdfAnnotationImporter implements AnnotationImporter {
      */
     protected String extractText(PdfArray quadpoints, PdfPage page, int pagenr) {
     	if(quadpoints.size()%8!=0) {
-    		log.warn("Quadpoints of annotation on page " + pagenr + " not a multiple of 8.");
+    		log.warn("Quadpoints of annotation on page {} not a multiple of 8.", pagenr);
     		return null;
     	}
     	float[] points = quadpoints.toFloatArray();
     	int lines = quadpoints.size()/8;
+    	budget.countQuads(lines);
+    	PageTextLayer textLayer = getTextLayer(page);
     	String text = "";
     	for(int line=0; line<lines; line++) {
-    		//use floor and ceil to add a small extra margin around the characters to prevent them from being cut off.
-    		//This might accidentally include an extra whitespace, but this is the better alternative to missing characters.
-    		int width = (int)Math.ceil(points[line*8+2])-(int)Math.floor(points[line*8]);
-    		float height = (float)Math.ceil(points[line*8+1])-(float)Math.floor(points[line*8+5]);
-    		//It appears that highlighted text is often cut off as the characters lie slightly outside the rectangle.
-    		//Until I get a better idea, I botched this together (make the rectangle 5% bigger in height)
-    		float y = Math.min(page.getPageSize().getHeight(),Math.max(0, points[line*8+5]-height*0.025f));
-    		height = height*1.05f;
-    		float x = (float) Math.floor(points[line*8+4]);
-    		Rectangle textCoordinates = new Rectangle(x, y, width, height);
-    		PdfTextExtractionStrategy strategy = new PdfTextExtractionStrategy(textCoordinates);
-            FilteredTextEventListener textFilter = new FilteredTextEventListener(
-                strategy, new TextRegionEventFilter(textCoordinates));
-            String highlightedText = PdfTextExtractor.getTextFromPage(page, textFilter);
+    		// The quad corners are not always in the specified order, so use their bounding box.
+    		// No fixed margin is added here - the text layer pads the area by the line spacing
+    		// and the chars sticking slightly out of it are still assigned by overlap.
+    		float left = Float.MAX_VALUE, bottom = Float.MAX_VALUE;
+    		float right = -Float.MAX_VALUE, top = -Float.MAX_VALUE;
+    		for(int i=line*8; i<line*8+8; i+=2) {
+    			left = Math.min(left, points[i]);
+    			right = Math.max(right, points[i]);
+    			bottom = Math.min(bottom, points[i+1]);
+    			top = Math.max(top, points[i+1]);
+    		}
+    		Rectangle textCoordinates = new Rectangle(left, bottom, right-left, top-bottom);
+            String highlightedText = textLayer.extractText(textCoordinates, PdfTextExtractionStrategy.DEFAULT_MIN_OVERLAP);
             text += (line==lines-1 ? highlightedText : cleanHighlightLine(highlightedText) + " "); //this cleans possible hyphenated linebreaks
     	}
     	return text;
     }
+
+    /**
+     * Get the text layer of given page. The page is parsed only once, for all its annotations.
+     * @param page The page.
+     * @return Page text layer.
+     * @throws PageContentException If the page content is broken (also for the next annotations
+     * of the page).
+     */
+    protected PageTextLayer getTextLayer(PdfPage page) {
+        if (textLayerPage != page) {
+            if (fontCache == null) {
+                fontCache = new FontCache();
+            }
+            textLayer = null;
+            textLayerError = null;
+            try {
+                if (hasFonts(page.getResources(), new HashSet<>())) {
+                    textLayer = PageTextLayer.parse(page, budget, fontCache);
+                }
+                else {
+                    // Image only (scanned) page - there is no text to parse.
+                    textLayer = new PageTextLayer(budget);
+                }
+            }
+            catch (ExtractionLimitException e) {
+                // Not cached - the limits are handled by the caller.
+                textLayerPage = null;
+                throw e;
+            }
+            catch (RuntimeException e) {
+                textLayerError = new PageContentException("Cannot parse page content", e);
+            }
+            textLayerPage = page;
+        }
+        if (textLayerError != null) {
+            throw textLayerError;
+        }
+        return textLayer;
+    }
+
+    /**
+     * Check if the page resources contain some font (directly or in form XObject). Pages without
+     * fonts cannot contain any text, so they do not need to be parsed.
+     * @param resources Page or form resources.
+     * @param visitedForms Already checked forms (forms can be shared or even recursive).
+     * @return True if some font is found.
+     */
+    protected boolean hasFonts(PdfResources resources, Set<PdfStream> visitedForms) {
+        if (resources == null) {
+            return false;
+        }
+        PdfDictionary fonts = resources.getResource(PdfName.Font);
+        if ((fonts != null) && !fonts.isEmpty()) {
+            return true;
+        }
+        PdfDictionary xObjects = resources.getResource(PdfName.XObject);
+        if (xObjects != null) {
+            for (PdfName name : xObjects.keySet()) {
+                PdfStream xObject = xObjects.getAsStream(name);
+                if ((xObject != null) && PdfName.Form.equals(xObject.getAsName(PdfName.Subtype))
+                    && visitedForms.add(xObject)) {
+                    PdfDictionary formResources = xObject.getAsDictionary(PdfName.Resources);
+                    if ((formResources != null) && hasFonts(new PdfResources(formResources), visitedForms)) {
+                        return true;
+                    }
+                }
+            } //
+        }
+        return false;
+    }
     
     /**
      * Convert comma separated string to list of keywords.
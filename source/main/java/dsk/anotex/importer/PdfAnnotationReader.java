@@ -0,0 +1,277 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.annot.PdfAnnotation;
+import dsk.anotex.Constants;
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+import dsk.anotex.core.ExtractionProblem;
+import dsk.anotex.util.SettingsHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental reader of PDF annotations. The pages are loaded and their annotations converted
+ * only when needed - reading the first N annotations of big document (or single page) does not
+ * parse the rest of it.
+ * In resilient mode ({@link Constants#RESILIENT}), the annotations and pages, which fail to convert,
+ * are recorded as document problems and the extraction continues.
+ * Use {@link PdfAnnotationImporter#openReader(String, java.util.Map)} to create it.
+ */
+public class PdfAnnotationReader implements AnnotationReader {
+    protected PdfAnnotationImporter importer;
+    protected PdfDocument pdfDocument;
+    protected AnnotatedDocument documentInfo;
+    protected int pageNumber;
+    protected List<PdfAnnotation> pageAnnotations;
+    protected int position;
+    protected boolean finished;
+    protected ReplyIndex replyIndex;
+    protected OutlineIndex outlineIndex;
+    protected boolean resilient;
+    /** Last page with broken content (its problem is recorded only once). */
+    protected int brokenPage;
+
+    /**
+     * Constructor with specified parameters.
+     * @param importer Importer to convert the annotations with (configured for the document).
+     * @param pdfDocument PDF document. It is closed when the reader is closed.
+     * @param documentInfo Document information.
+     */
+    public PdfAnnotationReader(PdfAnnotationImporter importer, PdfDocument pdfDocument,
+        AnnotatedDocument documentInfo) {
+        super();
+        this.importer = importer;
+        this.pdfDocument = pdfDocument;
+        this.documentInfo = documentInfo;
+        replyIndex = new ReplyIndex();
+        outlineIndex = importer.createOutlineIndex(pdfDocument);
+        resilient = SettingsHelper.getBoolean(importer.settings, Constants.RESILIENT, false);
+        importer.budget.startDocument();
+        // The time between the reading steps is not counted.
+        importer.budget.pause();
+    }
+
+    @Override
+    public AnnotatedDocument getDocumentInfo() {
+        return documentInfo;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public List<Annotation> next(int maxAnnotations, long timeout) {
+        List<Annotation> annotations = new ArrayList<>();
+        long start = System.nanoTime();
+        importer.budget.resume();
+        try {
+            readAnnotations(annotations, maxAnnotations, start, timeout);
+        }
+        finally {
+            importer.budget.pause();
+        }
+        if (finished) {
+            importer.releasePageCache();
+        }
+        return annotations;
+    }
+
+    /**
+     * Read the next annotations, until the count or time limit is reached.
+     * @param annotations Where to add the annotations.
+     * @param maxAnnotations Maximum number of annotations (0 = unlimited).
+     * @param start Start of the reading step (System.nanoTime()).
+     * @param timeout Maximum time of the step (in milliseconds). 0 = unlimited.
+     */
+    protected void readAnnotations(List<Annotation> annotations, int maxAnnotations, long start, long timeout) {
+        while (!finished && ((maxAnnotations <= 0) || (annotations.size() < maxAnnotations))) {
+            if ((timeout > 0) && (System.nanoTime() - start >= timeout * 1_000_000L)) {
+                break;
+            }
+            try {
+                if ((pageAnnotations == null) || (position >= pageAnnotations.size())) {
+                    finished = !nextPage();
+                    continue;
+                }
+                int index = position++;
+                Annotation annotation = convertAnnotation(pageAnnotations.get(index), pageNumber, index);
+                if (annotation != null) {
+                    annotations.add(annotation);
+                }
+            }
+            catch (ExtractionLimitException e) {
+                // Keep what was extracted so far.
+                setIncomplete(pageNumber, e);
+                if (e.isDocumentLimit()) {
+                    finished = true;
+                }
+                else {
+                    // Skip the rest of the page.
+                    pageAnnotations = null;
+                }
+            }
+        } //
+    }
+
+    @Override
+    public List<Annotation> loadPage(int pageNumber) {
+        List<Annotation> annotations = new ArrayList<>();
+        if ((pageNumber < 1) || (pageNumber > pdfDocument.getNumberOfPages())
+            || !importer.filter.acceptsPage(pageNumber)) {
+            return annotations;
+        }
+        if (importer.budget.isDocumentExhausted()) {
+            // The document budget is shared by all the loaded pages.
+            setIncomplete(pageNumber, new ExtractionLimitException("Document timeout exceeded", true));
+            return annotations;
+        }
+        importer.budget.resume();
+        try {
+            importer.budget.startPage();
+            List<PdfAnnotation> pdfAnnotations = getPageAnnotations(pageNumber);
+            for (int i = 0; i < pdfAnnotations.size(); i++) {
+                Annotation annotation = convertAnnotation(pdfAnnotations.get(i), pageNumber, i);
+                if (annotation != null) {
+                    annotations.add(annotation);
+                }
+            } //
+        }
+        catch (ExtractionLimitException e) {
+            setIncomplete(pageNumber, e);
+        }
+        finally {
+            importer.budget.pause();
+        }
+        return annotations;
+    }
+
+    /**
+     * Convert the annotation, link it to its conversation thread and resolve its chapter.
+     * @param pdfAnnotation Annotation to be converted.
+     * @param pageNumber Page number of the annotation.
+     * @param index Position of the annotation on the page.
+     * @return Converted annotation or null (if it is filtered out, empty or failed in resilient mode).
+     */
+    protected Annotation convertAnnotation(PdfAnnotation pdfAnnotation, int pageNumber, int index) {
+        Annotation annotation;
+        try {
+            annotation = importer.convertAnnotation(pdfAnnotation, pageNumber);
+        }
+        catch (ExtractionLimitException e) {
+            throw e;
+        }
+        catch (PageContentException e) {
+            if (!resilient) {
+                throw e;
+            }
+            if (brokenPage != pageNumber) {
+                // Single problem for the whole page (not for every its annotation).
+                brokenPage = pageNumber;
+                addProblem(new ExtractionProblem(pageNumber, -1, null, e));
+            }
+            return null;
+        }
+        catch (RuntimeException e) {
+            if (!resilient) {
+                throw e;
+            }
+            addProblem(new ExtractionProblem(pageNumber, index, getType(pdfAnnotation), e));
+            return null;
+        }
+        if ((annotation == null) || annotation.isEmpty()) {
+            return null;
+        }
+        replyIndex.add(pdfAnnotation, annotation);
+        if (outlineIndex != null) {
+            annotation.setChapter(outlineIndex.getChapter(pageNumber));
+        }
+        return annotation;
+    }
+
+    /**
+     * Get the annotations of given page.
+     * @param pageNumber Page number.
+     * @return Page annotations (empty if the page is broken, in resilient mode).
+     */
+    protected List<PdfAnnotation> getPageAnnotations(int pageNumber) {
+        try {
+            return pdfDocument.getPage(pageNumber).getAnnotations();
+        }
+        catch (RuntimeException e) {
+            if (!resilient) {
+                throw e;
+            }
+            addProblem(new ExtractionProblem(pageNumber, -1, null, e));
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Record the failure and continue.
+     * @param problem The failure.
+     */
+    protected void addProblem(ExtractionProblem problem) {
+        PdfAnnotationImporter.log.warn("Extraction failed - {}", problem);
+        documentInfo.addProblem(problem);
+    }
+
+    protected String getType(PdfAnnotation pdfAnnotation) {
+        try {
+            return pdfAnnotation.getSubtype().getValue();
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Mark the document as incomplete.
+     * @param pageNumber Page, where the limit was reached.
+     * @param e The limit error.
+     */
+    protected void setIncomplete(int pageNumber, ExtractionLimitException e) {
+        PdfAnnotationImporter.log.warn("Extraction limit reached on page {}: {}", pageNumber, e.getMessage());
+        documentInfo.setIncomplete(true);
+        documentInfo.setIncompleteReason(e.getMessage());
+    }
+
+    /**
+     * Move to the next page (which passes the page filter).
+     * @return False if there are no more pages.
+     */
+    protected boolean nextPage() {
+        pageAnnotations = null;
+        int pageCount = pdfDocument.getNumberOfPages();
+        // Jump directly to the next requested page (the others are not touched).
+        int next = importer.filter.nextPage(pageNumber);
+        if ((next < 1) || (next > pageCount)) {
+            pageNumber = pageCount + 1;
+            return false;
+        }
+        pageNumber = next;
+        importer.budget.startPage();
+        pageAnnotations = getPageAnnotations(pageNumber);
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Get the number of the last page, from which annotations were read.
+     * @return Page number (0 = reading not started).
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        importer.releasePageCache();
+        pdfDocument.close();
+    }
+}
@@ -10,13 +10,28 @@ import com.itextpdf.kernel.pdf.canvas.parser.listener.LocationTextExtractionStra
 /**
  * Pdf text extraction strategy, which cuts the text chunks crossing the extraction area.
  * By default, IText library does not cut such text snippets, so we do it here.
+ * The chars are assigned to the area by overlap fraction: char which is mostly inside is extracted
+ * even if it sticks slightly out of the area (as the highlight rectangles are often a bit smaller
+ * than the text).
  */
 public class PdfTextExtractionStrategy extends LocationTextExtractionStrategy {
+    public static final float DEFAULT_MIN_OVERLAP = 0.5f;
     protected Rectangle extractionArea;
+    protected float minOverlap;
 
     public PdfTextExtractionStrategy(Rectangle extractionArea) {
+        this(extractionArea, DEFAULT_MIN_OVERLAP);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param extractionArea Area to extract the text from.
+     * @param minOverlap Minimal fraction of the char area (0-1), which should be inside the extraction area.
+     */
+    public PdfTextExtractionStrategy(Rectangle extractionArea, float minOverlap) {
         super();
         this.extractionArea = extractionArea;
+        this.minOverlap = minOverlap;
     }
 
     @Override
@@ -27,20 +42,41 @@ public class PdfTextExtractionStrategy extends LocationTextExtractionStrategy {
             for (TextRenderInfo renderInfo : data.getCharacterRenderInfos()) {
                 // Get the char rendering boundaries.
                 Rectangle charArea = new CharacterRenderInfo(renderInfo).getBoundingBox();
-                if (isInsideExtractionArea(charArea)) {
-                    // Extract this char.
-                    super.eventOccurred(renderInfo, eventType);
-                }
+                renderCharacter(renderInfo, charArea);
             } //
         }
     }
 
     /**
-     * Check if the rendered text intersects the extraction area.
+     * Extract single char, if it is inside the extraction area.
+     * @param charInfo Char render info.
+     * @param charArea Char rendering boundaries.
+     */
+    protected void renderCharacter(TextRenderInfo charInfo, Rectangle charArea) {
+        if (isInsideExtractionArea(charArea)) {
+            super.eventOccurred(charInfo, EventType.RENDER_TEXT);
+        }
+    }
+
+    /**
+     * Check if the rendered text is (mostly) inside the extraction area.
      * @param textArea Text rendering area.
-     * @return True if the text is inside.
+     * @return True if at least the minimal overlap fraction of the text is inside.
      */
     protected boolean isInsideExtractionArea(Rectangle textArea) {
-        return extractionArea.contains(textArea);
+        float left = Math.max(textArea.getLeft(), extractionArea.getLeft());
+        float right = Math.min(textArea.getRight(), extractionArea.getRight());
+        float bottom = Math.max(textArea.getBottom(), extractionArea.getBottom());
+        float top = Math.min(textArea.getTop(), extractionArea.getTop());
+        float textSize = textArea.getWidth() * textArea.getHeight();
+        if (textSize <= 0) {
+            // Degenerated (zero width) char - use its center.
+            return extractionArea.contains(new Rectangle(textArea.getX() + textArea.getWidth() / 2,
+                textArea.getY() + textArea.getHeight() / 2, 0, 0));
+        }
+        if ((right <= left) || (top <= bottom)) {
+            return false;
+        }
+        return (right - left) * (top - bottom) >= minOverlap * textSize;
     }
 }
@@ -0,0 +1,109 @@
+package dsk.anotex.importer;
+
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.annot.PdfAnnotation;
+import dsk.anotex.core.Annotation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the converted annotations by their PDF object reference. It is filled during the page
+ * walk and links the replies (/IRT entry) to their parent annotations immediately, so the
+ * conversation threads are built in linear time. The reply can come before its parent
+ * (like from another page) - it waits until the parent is converted.
+ */
+public class ReplyIndex {
+    protected Map<PdfIndirectReference, Annotation> annotations;
+    protected Map<PdfIndirectReference, List<Annotation>> waitingReplies;
+
+    public ReplyIndex() {
+        super();
+        annotations = new HashMap<>();
+        waitingReplies = new HashMap<>();
+    }
+
+    /**
+     * Add converted annotation to the index.
+     * @param pdfAnnotation Source annotation.
+     * @param annotation Converted annotation.
+     */
+    public void add(PdfAnnotation pdfAnnotation, Annotation annotation) {
+        PdfDictionary dictionary = pdfAnnotation.getPdfObject();
+        PdfIndirectReference reference = dictionary.getIndirectReference();
+        if (reference != null) {
+            Annotation previous = annotations.put(reference, annotation);
+            if (previous != null) {
+                // The page was loaded again - the new object replaces the previous one.
+                replace(previous, annotation);
+            }
+            List<Annotation> replies = waitingReplies.remove(reference);
+            if (replies != null) {
+                for (Annotation reply : replies) {
+                    annotation.addReply(reply);
+                } //
+            }
+        }
+
+        PdfIndirectReference parentReference = getParentReference(dictionary);
+        if ((parentReference != null) && !parentReference.equals(reference)) {
+            Annotation parent = annotations.get(parentReference);
+            if (parent != null) {
+                parent.addReply(annotation);
+            }
+            else {
+                waitingReplies.computeIfAbsent(parentReference, k -> new ArrayList<>(1)).add(annotation);
+            }
+        }
+    }
+
+    /**
+     * Move the thread links of annotation to its new version.
+     * @param previous Previous annotation object.
+     * @param annotation New annotation object.
+     */
+    protected void replace(Annotation previous, Annotation annotation) {
+        Annotation parent = previous.getInReplyTo();
+        if (parent != null) {
+            parent.removeReply(previous);
+        }
+        for (Annotation reply : new ArrayList<>(previous.getReplies())) {
+            previous.removeReply(reply);
+            annotation.addReply(reply);
+        } //
+        for (List<Annotation> replies : waitingReplies.values()) {
+            replies.remove(previous);
+        } //
+    }
+
+    /**
+     * Get the annotation, to which given annotation replies.
+     * @param dictionary Annotation dictionary.
+     * @return Parent annotation reference or null (if the annotation is not a reply).
+     */
+    protected PdfIndirectReference getParentReference(PdfDictionary dictionary) {
+        PdfObject parent = dictionary.get(PdfName.IRT, false);
+        if (!(parent instanceof PdfIndirectReference)) {
+            return null;
+        }
+        // Grouped annotations (/RT /Group) are not replies.
+        PdfName replyType = dictionary.getAsName(PdfName.RT);
+        if ((replyType != null) && !PdfName.R.equals(replyType)) {
+            return null;
+        }
+        return (PdfIndirectReference) parent;
+    }
+
+    /**
+     * Get the number of indexed annotations.
+     * @return Annotation count.
+     */
+    public int size() {
+        return annotations.size();
+    }
+}
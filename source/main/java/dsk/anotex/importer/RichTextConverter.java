@@ -0,0 +1,305 @@
+package dsk.anotex.importer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Converts annotation rich text (the XHTML in /RC entry) to Markdown or plain text.
+ * The XHTML is processed as stream of events (StAX) - no DOM is built. One converter instance
+ * can be reused for all annotations of a document. Not thread safe.
+ * Supported formatting: paragraphs, line breaks, bold, italic, lists and links.
+ */
+public class RichTextConverter {
+    protected static final XMLInputFactory factory = createFactory();
+    protected StringBuilder output;
+    protected Deque<String> closers;
+    protected Deque<int[]> lists;
+    /** Opening emphasis markers, which are written with the next text char. */
+    protected StringBuilder pendingMarkers;
+    protected boolean markdown;
+    protected boolean pendingSpace;
+    protected boolean formatted;
+
+    public RichTextConverter() {
+        super();
+        output = new StringBuilder(256);
+        closers = new ArrayDeque<>();
+        lists = new ArrayDeque<>();
+        pendingMarkers = new StringBuilder();
+    }
+
+    /**
+     * Create XML parser factory. The rich text comes from the document, so DTDs and external
+     * entities are not allowed.
+     * @return The factory.
+     */
+    protected static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Convert rich text to Markdown.
+     * @param xhtml Rich text (XHTML).
+     * @return Markdown text or null (if there is no text).
+     */
+    public String toMarkdown(String xhtml) {
+        return convert(xhtml, true);
+    }
+
+    /**
+     * Convert rich text to plain text (without formatting).
+     * @param xhtml Rich text (XHTML).
+     * @return Plain text or null (if there is no text).
+     */
+    public String toPlainText(String xhtml) {
+        return convert(xhtml, false);
+    }
+
+    protected String convert(String xhtml, boolean markdown) {
+        if (xhtml == null) {
+            return null;
+        }
+        this.markdown = markdown;
+        output.setLength(0);
+        closers.clear();
+        lists.clear();
+        pendingMarkers.setLength(0);
+        pendingSpace = false;
+        formatted = false;
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xhtml));
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        startElement(reader);
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT) {
+                        endElement(reader.getLocalName().toLowerCase(Locale.ROOT));
+                    }
+                    else if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA)) {
+                        appendText(reader.getText());
+                    }
+                } //
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            // Not well formed (like HTML entities without DTD). Keep just the text.
+            output.setLength(0);
+            formatted = false;
+            output.append(xhtml.replaceAll("<[^>]*>", " ").replace("&nbsp;", " ").replace("&lt;", "<")
+                .replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&")
+                .replaceAll("\\s+", " "));
+        }
+        String text = output.toString().replaceAll("[ \\t]+\n", "\n").replaceAll("\n{3,}", "\n\n").trim();
+        formatted = formatted || (text.indexOf('\n') >= 0);
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * Check if the last converted text had some formatting (like bold text, lists or paragraphs).
+     * Rich text without formatting is the same as the plain annotation text.
+     * @return True if the text was formatted.
+     */
+    public boolean isFormatted() {
+        return formatted;
+    }
+
+    protected void startElement(XMLStreamReader reader) {
+        String name = reader.getLocalName().toLowerCase(Locale.ROOT);
+        String closer = "";
+        switch (name) {
+        case "p":
+        case "div":
+            newParagraph();
+            break;
+        case "br":
+            output.append('\n');
+            pendingSpace = false;
+            break;
+        case "b":
+        case "strong":
+            closer = openMarker("**");
+            break;
+        case "i":
+        case "em":
+            closer = openMarker("_");
+            break;
+        case "span":
+            String style = reader.getAttributeValue(null, "style");
+            if (style != null) {
+                style = style.replace(" ", "").toLowerCase(Locale.ROOT);
+                if (style.contains("font-weight:bold") || style.contains("font-weight:700")) {
+                    closer = openMarker("**");
+                }
+                if (style.contains("font-style:italic")) {
+                    closer = openMarker("_") + closer;
+                }
+            }
+            break;
+        case "ul":
+        case "ol":
+            newParagraph();
+            // [ordered flag, item counter]
+            lists.push(new int[] {name.equals("ol") ? 1 : 0, 0});
+            break;
+        case "li":
+            startListItem();
+            break;
+        case "a":
+            String href = reader.getAttributeValue(null, "href");
+            if (markdown && (href != null)) {
+                flushSpace();
+                flushMarkers();
+                output.append('[');
+                formatted = true;
+                closer = "](" + escapeDestination(href.trim()) + ")";
+            }
+            break;
+        default:
+            break;
+        }
+        closers.push(closer);
+    }
+
+    /**
+     * Escape link destination, so it cannot end the Markdown link early (or inject markup).
+     * @param href Link target.
+     * @return The target with spaces, control chars, parentheses, angle brackets and backslashes
+     * percent-encoded.
+     */
+    protected static String escapeDestination(String href) {
+        StringBuilder buf = new StringBuilder(href.length() + 16);
+        for (int i = 0; i < href.length(); i++) {
+            char ch = href.charAt(i);
+            if ((ch <= ' ') || (ch == 0x7F) || ("()<>\\".indexOf(ch) >= 0)) {
+                buf.append(String.format("%%%02X", (int) ch));
+            }
+            else {
+                buf.append(ch);
+            }
+        } //
+        return buf.toString();
+    }
+
+    protected void endElement(String name) {
+        String closer = closers.isEmpty() ? "" : closers.pop();
+        // The markers are symmetric - the opening markers are the closer reversed.
+        int start = pendingMarkers.length() - closer.length();
+        if (!closer.isEmpty() && (start >= 0)
+            && pendingMarkers.substring(start).equals(new StringBuilder(closer).reverse().toString())) {
+            // No text inside - drop the markers.
+            pendingMarkers.setLength(start);
+        }
+        else {
+            output.append(closer);
+        }
+        switch (name) {
+        case "p":
+        case "div":
+            newParagraph();
+            break;
+        case "ul":
+        case "ol":
+            lists.poll();
+            newParagraph();
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Open emphasis. The marker is written lazily with the first text char, so it is never followed
+     * by space (which would not be emphasis in Markdown).
+     * @param marker Emphasis marker.
+     * @return The closing marker.
+     */
+    protected String openMarker(String marker) {
+        if (!markdown) {
+            return "";
+        }
+        pendingMarkers.append(marker);
+        return marker;
+    }
+
+    protected void flushMarkers() {
+        if (pendingMarkers.length() > 0) {
+            output.append(pendingMarkers);
+            pendingMarkers.setLength(0);
+            formatted = true;
+        }
+    }
+
+    protected void startListItem() {
+        int[] list = lists.peek();
+        if ((output.length() > 0) && (output.charAt(output.length() - 1) != '\n')) {
+            output.append('\n');
+        }
+        for (int i = 1; i < lists.size(); i++) {
+            output.append("  ");
+        } //
+        if ((list != null) && (list[0] == 1)) {
+            list[1]++;
+            output.append(list[1]).append(". ");
+        }
+        else {
+            output.append(markdown ? "- " : "* ");
+        }
+        formatted = true;
+        pendingSpace = false;
+    }
+
+    protected void newParagraph() {
+        if ((output.length() > 0) && !endsWith("\n\n")) {
+            output.append(endsWith("\n") ? "\n" : "\n\n");
+        }
+        pendingSpace = false;
+    }
+
+    protected boolean endsWith(String suffix) {
+        int start = output.length() - suffix.length();
+        return (start >= 0) && (output.indexOf(suffix, start) == start);
+    }
+
+    protected void flushSpace() {
+        if (pendingSpace) {
+            output.append(' ');
+            pendingSpace = false;
+        }
+    }
+
+    /**
+     * Append text content (the white space is collapsed as in HTML).
+     * @param text The text.
+     */
+    protected void appendText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch) || (ch == '\u00a0')) {
+                char last = (output.length() > 0) ? output.charAt(output.length() - 1) : '\n';
+                pendingSpace = (last != '\n') && (last != ' ');
+                continue;
+            }
+            flushSpace();
+            flushMarkers();
+            if (markdown && ("\\*_`[]".indexOf(ch) >= 0)) {
+                output.append('\\');
+            }
+            output.append(ch);
+        } //
+    }
+}
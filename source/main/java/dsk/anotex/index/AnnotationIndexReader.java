@@ -0,0 +1,189 @@
+package dsk.anotex.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Searches the annotation index. All segments are memory mapped when the reader is opened, so
+ * one reader instance should be reused for many searches.
+ * A document can be indexed again (after its annotations changed) - only its postings from the
+ * newest segment are used.
+ */
+public class AnnotationIndexReader implements Closeable {
+    /** How many times the segments are listed again, when some of them was merged meanwhile. */
+    protected static final int OPEN_ATTEMPTS = 5;
+
+    protected File indexDir;
+    protected List<IndexSegment> segments;
+    /** Documents replaced by newer segment (per segment, by local document id). */
+    protected List<BitSet> replaced;
+
+    /**
+     * Open the index in given directory.
+     * @param indexDir Index directory.
+     */
+    public AnnotationIndexReader(File indexDir) {
+        super();
+        if (!indexDir.isDirectory()) {
+            String message = String.format("Index directory '%s' does not exist", indexDir);
+            throw new IllegalArgumentException(message);
+        }
+        this.indexDir = indexDir;
+        segments = openSegments(indexDir);
+        replaced = findReplacedDocuments(segments);
+    }
+
+    /**
+     * Open all segments of the index. If some segment disappears before it is opened (it was
+     * merged by a writer), the directory is listed again - the merged segment is published before
+     * its sources are deleted.
+     * @param indexDir Index directory.
+     * @return Opened segments (in {@link IndexSegment#ORDER}).
+     */
+    protected static List<IndexSegment> openSegments(File indexDir) {
+        for (int attempt = 1; ; attempt++) {
+            List<IndexSegment> segments = new ArrayList<>();
+            File missing = null;
+            for (File file : listSegmentFiles(indexDir)) {
+                try {
+                    segments.add(new IndexSegment(file));
+                }
+                catch (IllegalArgumentException e) {
+                    if (file.exists() || (attempt >= OPEN_ATTEMPTS)) {
+                        closeSegments(segments);
+                        throw e;
+                    }
+                    missing = file;
+                    break;
+                }
+            } //
+            if (missing == null) {
+                segments.sort(IndexSegment.ORDER);
+                return segments;
+            }
+            closeSegments(segments);
+        } //
+    }
+
+    protected static void closeSegments(List<IndexSegment> segments) {
+        for (IndexSegment segment : segments) {
+            segment.close();
+        } //
+        segments.clear();
+    }
+
+    /**
+     * Find the documents, which are indexed again in newer segment.
+     * @param segments Index segments (in {@link IndexSegment#ORDER}).
+     * @return Replaced document ids, per segment.
+     */
+    protected static List<BitSet> findReplacedDocuments(List<IndexSegment> segments) {
+        BitSet[] result = new BitSet[segments.size()];
+        Set<String> newer = new HashSet<>();
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            IndexSegment segment = segments.get(s);
+            result[s] = new BitSet();
+            List<String> names = new ArrayList<>(segment.getDocumentCount());
+            for (int i = 0; i < segment.getDocumentCount(); i++) {
+                String name = segment.getDocument(i);
+                if (newer.contains(name)) {
+                    result[s].set(i);
+                }
+                names.add(name);
+            } //
+            newer.addAll(names);
+        } //
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * Find the document pages, which contain all terms of the query.
+     * @param query Search query (one or more words).
+     * @return Matching pages, ordered by document and page number.
+     */
+    public List<SearchHit> search(String query) {
+        Set<String> terms = new LinkedHashSet<>(TermTokenizer.tokenize(query));
+        List<SearchHit> hits = new ArrayList<>();
+        if (terms.isEmpty()) {
+            return hits;
+        }
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            long[] matches = null;
+            for (String term : terms) {
+                long[] postings = segment.getPostings(term);
+                matches = (matches == null) ? postings : intersect(matches, postings);
+                if (matches.length == 0) {
+                    break;
+                }
+            } //
+            for (long match : matches) {
+                int docId = (int) (match >>> 32);
+                if (!replaced.get(s).get(docId)) {
+                    hits.add(new SearchHit(segment.getDocument(docId), (int) match));
+                }
+            } //
+        } //
+        return hits;
+    }
+
+    /**
+     * Intersect two sorted posting arrays.
+     * @param a First array.
+     * @param b Second array.
+     * @return Sorted intersection.
+     */
+    protected long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < a.length) && (j < b.length)) {
+            if (a[i] < b[j]) {
+                i++;
+            }
+            else if (a[i] > b[j]) {
+                j++;
+            }
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        } //
+        return Arrays.copyOf(result, n);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        closeSegments(segments);
+        replaced.clear();
+    }
+
+    /**
+     * List the segment files in given index directory (sorted by name, which is not necessarily
+     * their {@link IndexSegment#ORDER}).
+     * @param indexDir Index directory.
+     * @return Segment files.
+     */
+    public static File[] listSegmentFiles(File indexDir) {
+        File[] files = indexDir.listFiles((dir, name) -> name.startsWith(IndexSegment.FILE_PREFIX)
+            && name.endsWith(IndexSegment.FILE_EXTENSION));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+}
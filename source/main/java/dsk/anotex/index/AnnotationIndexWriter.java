@@ -0,0 +1,752 @@
+package dsk.anotex.index;
+
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Adds annotated documents to the annotation index. The postings are collected in memory and
+ * written as new immutable segment when the buffer gets full (or on close).
+ * Document added again replaces its previous postings (the newest segment wins, see
+ * {@link AnnotationIndexReader}). When there are enough similarly sized segments, they are merged
+ * into one and the replaced postings are dropped.
+ * More writers can work with the same index directory: every writer names its segments uniquely
+ * and the merging is guarded by lock file.
+ */
+public class AnnotationIndexWriter implements Closeable {
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1 << 20;
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+    public static final String LOCK_FILE = "merge.lock";
+    /** Segments smaller than this are considered to be of the same size (for merging). */
+    protected static final long FLOOR_SEGMENT_SIZE = 64 * 1024;
+    /** Lock older than this is considered to be left by crashed writer. */
+    protected static final long LOCK_TIMEOUT = 10 * 60 * 1000;
+    protected static final int BUFFER_SIZE = 64 * 1024;
+    protected static final Logger log = LogManager.getLogger(AnnotationIndexWriter.class);
+
+    protected File indexDir;
+    protected int flushThreshold;
+    protected int mergeFactor;
+    protected long maxSegmentSize;
+    /** Unique writer id (part of the segment names). */
+    protected String writerId;
+    protected int segmentCounter;
+    protected long lastGeneration;
+    protected List<String> documents;
+    protected Set<String> documentNames;
+    protected Map<String, PostingList> postings;
+    protected int postingCount;
+    /** Upper estimate of the size of segment with the buffered documents. */
+    protected long bufferSize;
+    /** Known segment files of the index, in {@link IndexSegment#ORDER} (null = not listed yet). */
+    protected List<File> segmentFiles;
+
+    /**
+     * Constructor with specified parameters.
+     * @param indexDir Index directory. It will be created if missing.
+     */
+    public AnnotationIndexWriter(File indexDir) {
+        this(indexDir, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param indexDir Index directory. It will be created if missing.
+     * @param flushThreshold Number of buffered postings which triggers writing of new segment.
+     */
+    public AnnotationIndexWriter(File indexDir, int flushThreshold) {
+        this(indexDir, flushThreshold, DEFAULT_MERGE_FACTOR);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param indexDir Index directory. It will be created if missing.
+     * @param flushThreshold Number of buffered postings which triggers writing of new segment.
+     * @param mergeFactor Number of similarly sized segments which are merged together.
+     */
+    public AnnotationIndexWriter(File indexDir, int flushThreshold, int mergeFactor) {
+        this(indexDir, flushThreshold, mergeFactor, IndexSegment.MAX_SIZE);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param indexDir Index directory. It will be created if missing.
+     * @param flushThreshold Number of buffered postings which triggers writing of new segment.
+     * @param mergeFactor Number of similarly sized segments which are merged together.
+     * @param maxSegmentSize Maximum segment size (in bytes). Bigger segments are never written.
+     */
+    public AnnotationIndexWriter(File indexDir, int flushThreshold, int mergeFactor, long maxSegmentSize) {
+        super();
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2");
+        }
+        if ((maxSegmentSize < IndexSegment.HEADER_SIZE) || (maxSegmentSize > IndexSegment.MAX_SIZE)) {
+            String message = String.format("Invalid maximum segment size: %d", maxSegmentSize);
+            throw new IllegalArgumentException(message);
+        }
+        this.indexDir = indexDir;
+        this.flushThreshold = flushThreshold;
+        this.mergeFactor = mergeFactor;
+        this.maxSegmentSize = maxSegmentSize;
+        writerId = UUID.randomUUID().toString();
+        documents = new ArrayList<>();
+        documentNames = new HashSet<>();
+        postings = new HashMap<>();
+    }
+
+    /**
+     * Add document annotations to the index.
+     * @param documentName Document name (as it should appear in the search results).
+     * @param document The annotated document.
+     */
+    public void addDocument(String documentName, AnnotatedDocument document) {
+        // Tokenized first - the segment size must be checked before the document is added.
+        List<Annotation> annotations = document.getAnnotations();
+        List<List<String>> texts = new ArrayList<>(annotations.size() * 2);
+        long size = IndexSegment.DOC_ENTRY_SIZE + utf8Length(documentName);
+        for (Annotation annotation : annotations) {
+            texts.add(TermTokenizer.tokenize(annotation.getHighlight()));
+            texts.add(TermTokenizer.tokenize(annotation.getText()));
+            size += estimateSize(texts.get(texts.size() - 2)) + estimateSize(texts.get(texts.size() - 1));
+        } //
+        if (IndexSegment.HEADER_SIZE + size > maxSegmentSize) {
+            String message = String.format("Document '%s' is too large for the index", documentName);
+            throw new IllegalArgumentException(message);
+        }
+        if (documentNames.contains(documentName) || (bufferSize + size > maxSegmentSize)) {
+            // Added again - the new version goes to the next segment (which replaces the buffered one).
+            // Or the segment would be too large.
+            flush();
+        }
+        int docId = documents.size();
+        documents.add(documentName);
+        documentNames.add(documentName);
+        bufferSize += size;
+        for (int i = 0; i < annotations.size(); i++) {
+            int page = annotations.get(i).getPage();
+            addTerms(docId, page, texts.get(2 * i));
+            addTerms(docId, page, texts.get(2 * i + 1));
+        } //
+        if (postingCount >= flushThreshold) {
+            flush();
+        }
+    }
+
+    protected void addTerms(int docId, int page, List<String> terms) {
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(term, list);
+            }
+            if (list.add(docId, page)) {
+                postingCount++;
+            }
+        } //
+    }
+
+    /**
+     * Estimate how much the terms could add to the segment size (as if all of them were new).
+     * @param terms The terms.
+     * @return Upper estimate of the size (in bytes).
+     */
+    protected long estimateSize(List<String> terms) {
+        long size = 0;
+        for (String term : terms) {
+            size += IndexSegment.TERM_ENTRY_SIZE + IndexSegment.POSTING_SIZE + utf8Length(term);
+        } //
+        return size;
+    }
+
+    /**
+     * Write the buffered postings as new segment (and merge the segments if there are enough
+     * similarly sized ones).
+     */
+    public void flush() {
+        if (documents.isEmpty()) {
+            return;
+        }
+        writeBuffer();
+        if (findMergeRun(getSegmentSizes()) != null) {
+            merge();
+        }
+    }
+
+    /**
+     * Merge similarly sized segments (while there are enough of them). The replaced documents are
+     * dropped. Nothing is done when another writer is merging the index.
+     */
+    public void merge() {
+        flush();
+        indexDir.mkdirs();
+        File lockFile = new File(indexDir, LOCK_FILE);
+        if (!acquireLock(lockFile)) {
+            log.debug("Index '{}' is merged by another writer", indexDir);
+            return;
+        }
+        try {
+            while (true) {
+                // Listed again - other writers could add segments meanwhile.
+                List<IndexSegment> segments = AnnotationIndexReader.openSegments(indexDir);
+                List<File> sourceFiles = new ArrayList<>();
+                try {
+                    rememberSegments(segments);
+                    long[] sizes = new long[segments.size()];
+                    for (int i = 0; i < sizes.length; i++) {
+                        sizes[i] = segments.get(i).getSize();
+                    } //
+                    int[] run = findMergeRun(sizes);
+                    if (run == null) {
+                        break;
+                    }
+                    for (IndexSegment segment : segments.subList(run[0], run[1])) {
+                        sourceFiles.add(segment.getFile());
+                    } //
+                    mergeSegments(segments, run[0], run[1]);
+                }
+                finally {
+                    AnnotationIndexReader.closeSegments(segments);
+                }
+                // The merged segment is already published - the readers never miss a document.
+                for (File file : sourceFiles) {
+                    if (!file.delete()) {
+                        // Like mapped by a reader (on some systems) - it is replaced by the merged segment anyway.
+                        file.deleteOnExit();
+                    }
+                } //
+                // Still alive.
+                lockFile.setLastModified(System.currentTimeMillis());
+            } //
+        }
+        finally {
+            lockFile.delete();
+        }
+    }
+
+    /**
+     * Find the segments to merge: the oldest run of consecutive segments of similar size
+     * (the same size level), which contains enough segments. Only consecutive segments can be merged,
+     * so the merged segment replaces (and is replaced by) the same documents as its sources.
+     * @param sizes Segment sizes (in {@link IndexSegment#ORDER}).
+     * @return Segment index range (start inclusive, end exclusive) or null.
+     */
+    protected int[] findMergeRun(long[] sizes) {
+        int start = 0;
+        while (start < sizes.length) {
+            int level = getSizeLevel(sizes[start]);
+            int end = start + 1;
+            while ((end < sizes.length) && (getSizeLevel(sizes[end]) == level)) {
+                end++;
+            } //
+            if (end - start >= mergeFactor) {
+                // The merged segment is never bigger than the sum of its sources.
+                long total = 0;
+                for (int i = start; i < start + mergeFactor; i++) {
+                    total += sizes[i];
+                } //
+                if (total <= maxSegmentSize) {
+                    return new int[] {start, start + mergeFactor};
+                }
+            }
+            start = end;
+        } //
+        return null;
+    }
+
+    /**
+     * Get the size level of segment (segments of the same level are merged together).
+     * @param size Segment size.
+     * @return The level (0 for the smallest segments).
+     */
+    protected int getSizeLevel(long size) {
+        int level = 0;
+        for (long s = size; s > FLOOR_SEGMENT_SIZE; s /= mergeFactor) {
+            level++;
+        } //
+        return level;
+    }
+
+    /**
+     * Merge the segment range into new segment. All the term tables are sorted, so the terms are
+     * merged one by one and the postings are never loaded all at once.
+     * @param segments All the segments of the index (in {@link IndexSegment#ORDER}).
+     * @param start Index of the first segment to merge.
+     * @param end Index after the last segment to merge.
+     */
+    protected void mergeSegments(List<IndexSegment> segments, int start, int end) {
+        List<IndexSegment> sources = segments.subList(start, end);
+        List<BitSet> replaced = AnnotationIndexReader.findReplacedDocuments(segments);
+        List<byte[]> docNames = new ArrayList<>();
+        int[][] docIds = new int[sources.size()][];
+        long docNamesSize = 0;
+        for (int s = 0; s < sources.size(); s++) {
+            IndexSegment segment = sources.get(s);
+            docIds[s] = new int[segment.getDocumentCount()];
+            for (int i = 0; i < docIds[s].length; i++) {
+                docIds[s][i] = replaced.get(start + s).get(i) ? -1 : docNames.size();
+                if (docIds[s][i] >= 0) {
+                    byte[] name = segment.getDocument(i).getBytes(StandardCharsets.UTF_8);
+                    docNames.add(name);
+                    docNamesSize += name.length;
+                }
+            } //
+        } //
+
+        // First pass - the section sizes (they are needed for the header).
+        long[] totals = new long[3];
+        try {
+            mergeTerms(sources, docIds, (term, items, count) -> {
+                totals[0]++;
+                totals[1] += term.length;
+                totals[2] += count;
+            });
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        long stringsOffset = IndexSegment.HEADER_SIZE + (long) docNames.size() * IndexSegment.DOC_ENTRY_SIZE
+            + totals[0] * IndexSegment.TERM_ENTRY_SIZE;
+        long postingsOffset = stringsOffset + docNamesSize + totals[1];
+        checkSegmentSize(postingsOffset + totals[2] * IndexSegment.POSTING_SIZE);
+
+        // Second pass - the sections are written in parallel, each from its own offset.
+        long generation = sources.get(sources.size() - 1).getGeneration();
+        publishSegment(generation, file -> {
+            try (DataOutputStream tableOut = openSection(file, 0);
+                 DataOutputStream stringOut = openSection(file, stringsOffset);
+                 DataOutputStream postingOut = openSection(file, postingsOffset)) {
+                writeHeader(tableOut, docNames.size(), (int) totals[0], (int) stringsOffset, (int) postingsOffset,
+                    generation);
+                int[] positions = new int[2];
+                for (byte[] name : docNames) {
+                    tableOut.writeInt(positions[0]);
+                    tableOut.writeInt(name.length);
+                    stringOut.write(name);
+                    positions[0] += name.length;
+                } //
+                mergeTerms(sources, docIds, (term, items, count) -> {
+                    tableOut.writeInt(positions[0]);
+                    tableOut.writeInt(term.length);
+                    tableOut.writeInt(positions[1]);
+                    tableOut.writeInt(count);
+                    stringOut.write(term);
+                    for (int i = 0; i < count; i++) {
+                        postingOut.writeLong(items[i]);
+                    } //
+                    positions[0] += term.length;
+                    positions[1] += count;
+                });
+            }
+        });
+    }
+
+    /**
+     * Merge the term tables of segments and pass every term with its remapped postings to the visitor.
+     * Terms without remaining postings are skipped.
+     * @param sources Merged segments (in {@link IndexSegment#ORDER}).
+     * @param docIds New document ids, per segment (-1 for dropped document).
+     * @param visitor Receiver of the merged terms (in order of their UTF-8 bytes).
+     * @throws IOException If the visitor fails.
+     */
+    protected void mergeTerms(List<IndexSegment> sources, int[][] docIds, TermVisitor visitor) throws IOException {
+        PriorityQueue<TermCursor> queue = new PriorityQueue<>(Math.max(sources.size(), 1),
+            (a, b) -> {
+                int cmp = compareBytes(a.term, b.term);
+                return (cmp != 0) ? cmp : (a.source - b.source);
+            });
+        for (int s = 0; s < sources.size(); s++) {
+            TermCursor cursor = new TermCursor(sources.get(s), s);
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        } //
+        List<TermCursor> current = new ArrayList<>();
+        long[] items = new long[16];
+        while (!queue.isEmpty()) {
+            // The queue returns the equal terms in order of their segments (new document ids ascend).
+            byte[] term = queue.peek().term;
+            current.clear();
+            while (!queue.isEmpty() && (compareBytes(queue.peek().term, term) == 0)) {
+                current.add(queue.poll());
+            } //
+            int count = 0;
+            for (TermCursor cursor : current) {
+                for (long posting : cursor.segment.getTermPostings(cursor.entry)) {
+                    int docId = docIds[cursor.source][(int) (posting >>> 32)];
+                    if (docId >= 0) {
+                        if (count == items.length) {
+                            items = Arrays.copyOf(items, count * 2);
+                        }
+                        items[count++] = ((long) docId << 32) | (posting & 0xFFFFFFFFL);
+                    }
+                } //
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            } //
+            if (count > 0) {
+                visitor.visit(term, items, count);
+            }
+        } //
+    }
+
+    /**
+     * Write the buffered postings as new segment.
+     */
+    protected void writeBuffer() {
+        long generation = nextGeneration();
+        publishSegment(generation, file -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE))) {
+                writeSegment(out, generation);
+            }
+        });
+        documents.clear();
+        documentNames.clear();
+        postings.clear();
+        postingCount = 0;
+        bufferSize = 0;
+    }
+
+    /**
+     * Write new segment file and make it visible to the readers.
+     * @param generation Segment generation.
+     * @param content Writer of the segment content.
+     */
+    protected void publishSegment(long generation, SegmentContent content) {
+        indexDir.mkdirs();
+        File segmentFile = new File(indexDir, nextSegmentName(generation));
+        File tempFile = new File(indexDir, segmentFile.getName() + ".tmp");
+        try {
+            content.write(tempFile);
+            // Readers should never see partially written segment. The name is unique, so nothing is replaced.
+            Files.move(tempFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            tempFile.delete();
+            String message = String.format("Cannot write index segment '%s'", segmentFile);
+            throw new RuntimeException(message, e);
+        }
+        getSegmentFiles().add(segmentFile);
+    }
+
+    protected DataOutputStream openSection(File file, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.position(offset);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    /**
+     * Write the buffered postings in segment format.
+     * @param out Output stream.
+     * @param generation Segment generation.
+     * @throws IOException If writing fails.
+     * @see IndexSegment
+     */
+    protected void writeSegment(DataOutputStream out, long generation) throws IOException {
+        // Prepare the strings. Terms are sorted by their UTF-8 bytes (the order used for lookup).
+        byte[][] docNames = new byte[documents.size()][];
+        for (int i = 0; i < docNames.length; i++) {
+            docNames[i] = documents.get(i).getBytes(StandardCharsets.UTF_8);
+        } //
+        byte[][] terms = new byte[postings.size()][];
+        PostingList[] lists = new PostingList[terms.length];
+        int n = 0;
+        for (String term : postings.keySet()) {
+            terms[n++] = term.getBytes(StandardCharsets.UTF_8);
+        } //
+        Arrays.sort(terms, AnnotationIndexWriter::compareBytes);
+        long postingTotal = 0;
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postings.get(new String(terms[i], StandardCharsets.UTF_8));
+            lists[i].sort();
+            postingTotal += lists[i].size;
+        } //
+
+        long stringsSize = 0;
+        for (byte[] name : docNames) {
+            stringsSize += name.length;
+        } //
+        for (byte[] term : terms) {
+            stringsSize += term.length;
+        } //
+        long stringsOffset = IndexSegment.HEADER_SIZE + (long) docNames.length * IndexSegment.DOC_ENTRY_SIZE
+            + (long) terms.length * IndexSegment.TERM_ENTRY_SIZE;
+        long postingsOffset = stringsOffset + stringsSize;
+        checkSegmentSize(postingsOffset + postingTotal * IndexSegment.POSTING_SIZE);
+
+        writeHeader(out, docNames.length, terms.length, (int) stringsOffset, (int) postingsOffset, generation);
+
+        // Document and term tables.
+        int strPos = 0;
+        for (byte[] name : docNames) {
+            out.writeInt(strPos);
+            out.writeInt(name.length);
+            strPos += name.length;
+        } //
+        int postingPos = 0;
+        for (int i = 0; i < terms.length; i++) {
+            out.writeInt(strPos);
+            out.writeInt(terms[i].length);
+            out.writeInt(postingPos);
+            out.writeInt(lists[i].size);
+            strPos += terms[i].length;
+            postingPos += lists[i].size;
+        } //
+
+        // Strings.
+        for (byte[] name : docNames) {
+            out.write(name);
+        } //
+        for (byte[] term : terms) {
+            out.write(term);
+        } //
+
+        // Postings.
+        for (PostingList list : lists) {
+            for (int i = 0; i < list.size; i++) {
+                out.writeLong(list.items[i]);
+            } //
+        } //
+    }
+
+    protected void writeHeader(DataOutputStream out, int docCount, int termCount, int stringsOffset,
+        int postingsOffset, long generation) throws IOException {
+        out.writeInt(IndexSegment.MAGIC);
+        out.writeInt(IndexSegment.VERSION);
+        out.writeInt(docCount);
+        out.writeInt(termCount);
+        out.writeInt(stringsOffset);
+        out.writeInt(postingsOffset);
+        out.writeLong(generation);
+    }
+
+    protected void checkSegmentSize(long size) {
+        if (size > maxSegmentSize) {
+            String message = String.format("Index segment would be too large (%d bytes)", size);
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Lock the index for merging.
+     * @param lockFile Lock file.
+     * @return True if the lock was acquired.
+     */
+    protected boolean acquireLock(File lockFile) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.createFile(lockFile.toPath());
+                return true;
+            }
+            catch (FileAlreadyExistsException e) {
+                if (System.currentTimeMillis() - lockFile.lastModified() < LOCK_TIMEOUT) {
+                    return false;
+                }
+                // Left by crashed writer.
+                lockFile.delete();
+            }
+            catch (IOException e) {
+                String message = String.format("Cannot lock index '%s'", indexDir);
+                throw new RuntimeException(message, e);
+            }
+        } //
+        return false;
+    }
+
+    /**
+     * Get the known segment files of the index. The directory is listed only once (the writer knows
+     * the segments it creates and lists the directory again when merging).
+     * @return Segment files (in {@link IndexSegment#ORDER}).
+     */
+    protected List<File> getSegmentFiles() {
+        if (segmentFiles == null) {
+            segmentFiles = new ArrayList<>();
+            if (indexDir.isDirectory()) {
+                List<IndexSegment> segments = AnnotationIndexReader.openSegments(indexDir);
+                rememberSegments(segments);
+                AnnotationIndexReader.closeSegments(segments);
+            }
+        }
+        return segmentFiles;
+    }
+
+    protected long[] getSegmentSizes() {
+        List<File> files = getSegmentFiles();
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = files.get(i).length();
+        } //
+        return sizes;
+    }
+
+    protected void rememberSegments(List<IndexSegment> segments) {
+        segmentFiles = new ArrayList<>(segments.size());
+        for (IndexSegment segment : segments) {
+            segmentFiles.add(segment.getFile());
+            lastGeneration = Math.max(lastGeneration, segment.getGeneration());
+        } //
+    }
+
+    /**
+     * Get the generation for new segment. It is newer than all the known segments and (if the clocks
+     * are synchronized) than the segments of other writers written before.
+     * @return Segment generation.
+     */
+    protected long nextGeneration() {
+        getSegmentFiles();
+        lastGeneration = Math.max(lastGeneration + 1, System.currentTimeMillis());
+        return lastGeneration;
+    }
+
+    /**
+     * Get the file name for the next segment (unique among all the writers).
+     * @param generation Segment generation.
+     * @return Segment file name.
+     */
+    protected String nextSegmentName(long generation) {
+        segmentCounter++;
+        return String.format("%s%013d-%s-%d%s", IndexSegment.FILE_PREFIX, generation, writerId, segmentCounter,
+            IndexSegment.FILE_EXTENSION);
+    }
+
+    protected static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // Surrogate pair takes 4 bytes (2 per char).
+            length += (c < 0x80) ? 1 : ((c < 0x800) || Character.isSurrogate(c)) ? 2 : 3;
+        } //
+        return length;
+    }
+
+    protected static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        } //
+        return a.length - b.length;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Receiver of merged terms.
+     */
+    protected interface TermVisitor {
+        void visit(byte[] term, long[] postings, int count) throws IOException;
+    }
+
+    /**
+     * Writer of segment file content.
+     */
+    protected interface SegmentContent {
+        void write(File file) throws IOException;
+    }
+
+    /**
+     * Position in the term table of merged segment.
+     */
+    protected static class TermCursor {
+        final IndexSegment segment;
+        final int source;
+        int entry = -1;
+        byte[] term;
+
+        TermCursor(IndexSegment segment, int source) {
+            this.segment = segment;
+            this.source = source;
+        }
+
+        /**
+         * Move to the next term.
+         * @return False if there are no more terms.
+         */
+        boolean next() {
+            entry++;
+            if (entry >= segment.getTermCount()) {
+                return false;
+            }
+            term = segment.getTermBytes(entry);
+            return true;
+        }
+    }
+
+    /**
+     * Growable list of (docId, page) postings, encoded as long values.
+     */
+    protected static class PostingList {
+        long[] items = new long[4];
+        int size;
+
+        /**
+         * Add posting (skipping repetition of the last one).
+         * @param docId Document id.
+         * @param page Page number.
+         * @return True if the posting was added.
+         */
+        boolean add(int docId, int page) {
+            long item = ((long) docId << 32) | (page & 0xFFFFFFFFL);
+            if ((size > 0) && (items[size - 1] == item)) {
+                return false;
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+            return true;
+        }
+
+        /**
+         * Sort the postings and remove the duplicates.
+         */
+        void sort() {
+            Arrays.sort(items, 0, size);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if ((n == 0) || (items[n - 1] != items[i])) {
+                    items[n++] = items[i];
+                }
+            } //
+            size = n;
+        }
+    }
+}
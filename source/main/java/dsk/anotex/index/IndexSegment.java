@@ -0,0 +1,248 @@
+package dsk.anotex.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+/**
+ * Immutable, memory mapped index segment. Segment file layout (big-endian ints, except the long
+ * generation):
+ * <pre>
+ * header:   magic, version, docCount, termCount, stringsOffset, postingsOffset, generation
+ * docs:     docCount x (nameOffset, nameLength)
+ * terms:    termCount x (termOffset, termLength, postingsIndex, postingsCount) - sorted by UTF-8 bytes
+ * strings:  UTF-8 bytes of the document names and terms
+ * postings: (docId, page) pairs, sorted, grouped by term
+ * </pre>
+ * Term lookup is binary search over the term table, directly in the mapped memory.
+ * The generation orders the segments (newer segment replaces the documents of older ones). Segments
+ * of version 1 have no generation - they are older than all the others.
+ */
+public class IndexSegment implements Closeable {
+    public static final String FILE_PREFIX = "segment-";
+    public static final String FILE_EXTENSION = ".aix";
+    static final int MAGIC = 0x41495831; // "AIX1"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 6 * 4 + 8;
+    static final int HEADER_SIZE_V1 = 6 * 4;
+    static final int DOC_ENTRY_SIZE = 2 * 4;
+    static final int TERM_ENTRY_SIZE = 4 * 4;
+    static final int POSTING_SIZE = 2 * 4;
+    /** Maximum segment size (the offsets are ints and the file is mapped as one buffer). */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+    /** Segment order: by generation, then by file name. */
+    public static final Comparator<IndexSegment> ORDER = Comparator.comparingLong(IndexSegment::getGeneration)
+        .thenComparing(s -> s.getFile().getName());
+
+    protected File file;
+    protected ByteBuffer data;
+    protected int headerSize;
+    protected long generation;
+    protected int docCount;
+    protected int termCount;
+    protected int stringsOffset;
+    protected int postingsOffset;
+
+    /**
+     * Open (memory map) existing segment file.
+     * @param file Segment file.
+     */
+    public IndexSegment(File file) {
+        super();
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE) {
+                String message = String.format("Index segment '%s' is too large", file);
+                throw new IllegalArgumentException(message);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            init(buffer);
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot open index segment '%s'", file);
+            throw new IllegalArgumentException(message, e);
+        }
+    }
+
+    /**
+     * Read the segment header.
+     * @param buffer Segment data.
+     */
+    protected void init(ByteBuffer buffer) {
+        int version = (buffer.capacity() >= HEADER_SIZE_V1) ? buffer.getInt(4) : -1;
+        headerSize = (version == 1) ? HEADER_SIZE_V1 : HEADER_SIZE;
+        if ((buffer.capacity() < headerSize) || (buffer.getInt(0) != MAGIC)
+            || ((version != 1) && (version != VERSION))) {
+            String message = String.format("Invalid index segment '%s'", file);
+            throw new IllegalArgumentException(message);
+        }
+        data = buffer;
+        docCount = buffer.getInt(8);
+        termCount = buffer.getInt(12);
+        stringsOffset = buffer.getInt(16);
+        postingsOffset = buffer.getInt(20);
+        generation = (version == 1) ? 0 : buffer.getLong(24);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the size of segment file.
+     * @return Size in bytes.
+     */
+    public long getSize() {
+        return data.capacity();
+    }
+
+    public int getDocumentCount() {
+        return docCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Get the name of document with given (segment local) id.
+     * @param docId Document id.
+     * @return Document name.
+     */
+    public String getDocument(int docId) {
+        int pos = headerSize + docId * DOC_ENTRY_SIZE;
+        return readString(data.getInt(pos), data.getInt(pos + 4));
+    }
+
+    /**
+     * Find the postings of given term.
+     * @param term The term (already normalized).
+     * @return Sorted postings, each encoded as (docId &lt;&lt; 32 | page). Empty array if the term
+     * is not present.
+     */
+    public long[] getPostings(String term) {
+        int entry = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0) {
+            return new long[0];
+        }
+        return getTermPostings(entry);
+    }
+
+    /**
+     * Get the term with given position in the term table (used to enumerate all the terms).
+     * @param entry Term index (from 0 to {@link #getTermCount()} - 1).
+     * @return The term.
+     */
+    public String getTerm(int entry) {
+        return new String(getTermBytes(entry), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get UTF-8 bytes of the term with given position in the term table.
+     * @param entry Term index (from 0 to {@link #getTermCount()} - 1).
+     * @return The term bytes.
+     */
+    public byte[] getTermBytes(int entry) {
+        int pos = termTableOffset() + entry * TERM_ENTRY_SIZE;
+        return readBytes(data.getInt(pos), data.getInt(pos + 4));
+    }
+
+    /**
+     * Get the postings of term with given position in the term table.
+     * @param entry Term index (from 0 to {@link #getTermCount()} - 1).
+     * @return Sorted postings (see {@link #getPostings(String)}).
+     */
+    public long[] getTermPostings(int entry) {
+        int pos = termTableOffset() + entry * TERM_ENTRY_SIZE;
+        int start = data.getInt(pos + 8);
+        int count = data.getInt(pos + 12);
+        long[] postings = new long[count];
+        int p = postingsOffset + start * POSTING_SIZE;
+        for (int i = 0; i < count; i++, p += POSTING_SIZE) {
+            postings[i] = ((long) data.getInt(p) << 32) | (data.getInt(p + 4) & 0xFFFFFFFFL);
+        } //
+        return postings;
+    }
+
+    /**
+     * Binary search for term in the term table.
+     * @param term UTF-8 bytes of the term.
+     * @return Index of the term entry or -1 if not found.
+     */
+    protected int findTerm(byte[] term) {
+        int base = termTableOffset();
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = base + mid * TERM_ENTRY_SIZE;
+            int cmp = compareString(data.getInt(pos), data.getInt(pos + 4), term);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        } //
+        return -1;
+    }
+
+    /**
+     * Compare stored string with given bytes (unsigned lexicographic order).
+     * @param offset Offset of the stored string (relative to the string area).
+     * @param length Length of the stored string.
+     * @param other Bytes to compare with.
+     * @return Comparison result.
+     */
+    protected int compareString(int offset, int length, byte[] other) {
+        int base = stringsOffset + offset;
+        int n = Math.min(length, other.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (data.get(base + i) & 0xFF) - (other[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        } //
+        return length - other.length;
+    }
+
+    protected String readString(int offset, int length) {
+        return new String(readBytes(offset, length), StandardCharsets.UTF_8);
+    }
+
+    protected byte[] readBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = data.duplicate();
+        view.position(stringsOffset + offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    protected int termTableOffset() {
+        return headerSize + docCount * DOC_ENTRY_SIZE;
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released by the garbage collector.
+        data = null;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + file + '}';
+    }
+}
@@ -0,0 +1,45 @@
+package dsk.anotex.index;
+
+/**
+ * Single search result - page of document, which contains the searched terms.
+ */
+public class SearchHit {
+    protected String document;
+    protected int page;
+
+    public SearchHit(String document, int page) {
+        super();
+        this.document = document;
+        this.page = page;
+    }
+
+    public String getDocument() {
+        return document;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SearchHit)) {
+            return false;
+        }
+        SearchHit other = (SearchHit) obj;
+        return (page == other.page) && document.equals(other.document);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * document.hashCode() + page;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + document + ", Page: " + page + "}";
+    }
+}
@@ -0,0 +1,56 @@
+package dsk.anotex.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits annotation text into index terms. Terms are sequences of letters and digits,
+ * converted to lowercase.
+ */
+public class TermTokenizer {
+
+    /*
+     * Prevent instance creation.
+     */
+    private TermTokenizer() {
+    }
+
+    /**
+     * Split given text into terms.
+     * @param text Text to split (can be null).
+     * @return List of terms, in order of appearance (may contain duplicates).
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            }
+            else if (start >= 0) {
+                terms.add(normalize(text.substring(start, i)));
+                start = -1;
+            }
+        } //
+        if (start >= 0) {
+            terms.add(normalize(text.substring(start)));
+        }
+        return terms;
+    }
+
+    /**
+     * Normalize single term.
+     * @param term The term.
+     * @return Normalized term.
+     */
+    protected static String normalize(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Full text index over extracted annotations.
+ * Use the {@link dsk.anotex.index.AnnotationIndexWriter} to add documents and
+ * the {@link dsk.anotex.index.AnnotationIndexReader} to search them.
+ */
+package dsk.anotex.index;
\ No newline at end of file
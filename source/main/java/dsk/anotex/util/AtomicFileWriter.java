@@ -0,0 +1,91 @@
+package dsk.anotex.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer for temporary file, which replaces the target file only when {@link #commit()} is called.
+ * Closing the writer without commit discards the written content, so the target file is never
+ * left half written (even if the process crashes).
+ */
+public class AtomicFileWriter extends ChannelWriter {
+    protected Path tempFile;
+    protected Path targetFile;
+    protected Runnable closeCallback;
+    protected boolean finished;
+
+    /**
+     * Constructor with specified parameters.
+     * @param tempFile Temporary file (should be in the same directory as the target).
+     * @param targetFile Target file.
+     * @param closeCallback Called once, when the writer is committed or closed (can be null).
+     * @throws IOException If the temporary file cannot be opened.
+     */
+    public AtomicFileWriter(Path tempFile, Path targetFile, Runnable closeCallback) throws IOException {
+        super(FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        this.tempFile = tempFile;
+        this.targetFile = targetFile;
+        this.closeCallback = closeCallback;
+    }
+
+    /**
+     * Finish writing and move the written content to the target file.
+     * @throws IOException If writing fails.
+     */
+    public void commit() throws IOException {
+        if (finished) {
+            throw new IOException("Writer is closed");
+        }
+        try {
+            super.close();
+            try {
+                Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            finish();
+        }
+    }
+
+    /**
+     * Close the writer. If not committed, the written content is discarded.
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            super.close();
+        }
+        finally {
+            finish();
+        }
+    }
+
+    protected void finish() throws IOException {
+        finished = true;
+        try {
+            Files.deleteIfExists(tempFile);
+        }
+        finally {
+            if (closeCallback != null) {
+                closeCallback.run();
+            }
+        }
+    }
+
+    public Path getTargetFile() {
+        return targetFile;
+    }
+}
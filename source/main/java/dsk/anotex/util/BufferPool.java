@@ -0,0 +1,55 @@
+package dsk.anotex.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct byte buffers for output writing. Reusing the buffers avoids allocation of new
+ * (off heap) memory for every written file in batch runs.
+ */
+public class BufferPool {
+    public static final int BUFFER_SIZE = 64 * 1024;
+    protected static final int MAX_POOLED = 64;
+
+    protected static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    protected static final AtomicInteger pooled = new AtomicInteger();
+
+    /*
+     * Prevent instance creation.
+     */
+    private BufferPool() {
+    }
+
+    /**
+     * Get buffer from the pool (or allocate new one if the pool is empty).
+     * @return Cleared buffer with size {@link #BUFFER_SIZE}.
+     */
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return buffer to the pool. The buffer should not be used after that.
+     * @param buffer The buffer.
+     */
+    public static void release(ByteBuffer buffer) {
+        if ((buffer == null) || (buffer.capacity() != BUFFER_SIZE)) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.offer(buffer);
+        }
+        else {
+            // The pool is full. Let the garbage collector free the buffer.
+            pooled.decrementAndGet();
+        }
+    }
+}
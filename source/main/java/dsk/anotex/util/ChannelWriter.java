@@ -0,0 +1,149 @@
+package dsk.anotex.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer which encodes the characters (UTF-8) directly into pooled byte buffer and writes it
+ * to channel. Unlike the {@code BufferedWriter -> OutputStreamWriter -> FileOutputStream} chain
+ * there are no intermediate char and byte arrays.
+ * Not thread safe.
+ */
+public class ChannelWriter extends Writer {
+    protected WritableByteChannel channel;
+    protected CharsetEncoder encoder;
+    protected ByteBuffer buffer;
+    protected char pendingSurrogate;
+
+    /**
+     * Constructor with specified parameters.
+     * @param channel Channel to write to. It is closed when the writer is closed.
+     */
+    public ChannelWriter(WritableByteChannel channel) {
+        super();
+        this.channel = channel;
+        encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffer = BufferPool.acquire();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write(CharBuffer.wrap(str, off, off + len));
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        write(CharBuffer.wrap(str));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write(CharBuffer.wrap(new char[] {(char) c}));
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        write(CharBuffer.wrap((csq != null) ? csq : "null"));
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        write(CharBuffer.wrap((csq != null) ? csq : "null", start, end));
+        return this;
+    }
+
+    /**
+     * Encode the characters into the buffer.
+     * @param in Characters to write.
+     * @throws IOException If writing fails.
+     */
+    protected void write(CharBuffer in) throws IOException {
+        ensureOpen();
+        if ((pendingSurrogate != 0) && in.hasRemaining()) {
+            // Complete the surrogate pair, split between two writes.
+            CharBuffer pair = CharBuffer.wrap(new char[] {pendingSurrogate, in.get()});
+            pendingSurrogate = 0;
+            encode(pair, false);
+        }
+        encode(in, false);
+        if (in.hasRemaining()) {
+            // Dangling high surrogate - it can be encoded only with the next char.
+            pendingSurrogate = in.get();
+        }
+    }
+
+    protected void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            }
+            else if (result.isUnderflow()) {
+                break;
+            }
+            else {
+                result.throwException();
+            }
+        } //
+    }
+
+    /**
+     * Write the buffer content to the channel.
+     * @throws IOException If writing fails.
+     */
+    protected void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        } //
+        buffer.clear();
+    }
+
+    protected void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer is closed");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            CharBuffer rest = CharBuffer.wrap((pendingSurrogate != 0) ? new char[] {pendingSurrogate}
+                : new char[0]);
+            encode(rest, true);
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            } //
+            drain();
+        }
+        finally {
+            BufferPool.release(buffer);
+            buffer = null;
+            channel.close();
+        }
+    }
+}
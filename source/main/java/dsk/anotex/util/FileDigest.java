@@ -0,0 +1,63 @@
+package dsk.anotex.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes of files and strings (to detect changed documents).
+ */
+public class FileDigest {
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * Prevent instance creation.
+     */
+    private FileDigest() {
+    }
+
+    /**
+     * Calculate the content hash of file.
+     * @param file The file.
+     * @return SHA-256 hash (hex).
+     */
+    public static String hashFile(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, count);
+            } //
+            return toHex(digest.digest());
+        }
+        catch (IOException | NoSuchAlgorithmException e) {
+            String message = String.format("Cannot read '%s'", file);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Calculate the hash of string.
+     * @param value The string.
+     * @return SHA-256 hash (hex).
+     */
+    public static String hashString(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static String toHex(byte[] hash) {
+        return String.format("%064x", new BigInteger(1, hash));
+    }
+}
@@ -0,0 +1,167 @@
+package dsk.anotex.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admission control for parallel extraction, so a few huge documents do not exhaust the heap.
+ * Every document reserves its estimated memory before the extraction and waits while the
+ * reservations would exceed the heap budget. The estimates are only approximate, so the admission
+ * also waits while the live heap (measured after the last garbage collection) is over the budget.
+ * A document is always admitted when nothing else is running - even if it is bigger than the budget.
+ * Thread safe.
+ */
+public class MemoryAdmission {
+    /** Default budget as part of the maximum heap size. */
+    public static final double DEFAULT_HEAP_FRACTION = 0.7;
+    /** Heap per byte of the document file (parsed objects, content streams, text layer). */
+    protected static final long FILE_FACTOR = 4;
+    /** Heap per page (page dictionary, annotations, exported text). */
+    protected static final long PAGE_COST = 64 * 1024;
+    /** Heap of the smallest document (reader, exporter, buffers). */
+    protected static final long BASE_COST = 2 * 1024 * 1024;
+    /** How often the waiting documents re-check the heap usage (ms). */
+    protected static final long POLL_INTERVAL = 200;
+    protected MemoryMXBean memoryBean;
+    protected List<MemoryPoolMXBean> heapPools;
+    protected long budget;
+    protected long reserved;
+    protected int running;
+
+    public MemoryAdmission() {
+        this(getDefaultBudget());
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param budget Heap budget (bytes) of all concurrently extracted documents.
+     */
+    public MemoryAdmission(long budget) {
+        super();
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Invalid memory budget: " + budget);
+        }
+        this.budget = budget;
+        memoryBean = ManagementFactory.getMemoryMXBean();
+        heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ((pool.getType() == MemoryType.HEAP) && pool.isCollectionUsageThresholdSupported()) {
+                heapPools.add(pool);
+            }
+        } //
+    }
+
+    /**
+     * Get the default budget.
+     * @return {@link #DEFAULT_HEAP_FRACTION} of the maximum heap size.
+     */
+    public static long getDefaultBudget() {
+        long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+        if (maxHeap <= 0) {
+            // Undefined.
+            maxHeap = Runtime.getRuntime().maxMemory();
+        }
+        return (long) (maxHeap * DEFAULT_HEAP_FRACTION);
+    }
+
+    /**
+     * Estimate the heap needed to extract document.
+     * @param fileSize Document file size (bytes).
+     * @param pageCount Number of pages (0 = unknown).
+     * @return Estimated heap (bytes).
+     */
+    public static long estimate(long fileSize, int pageCount) {
+        return BASE_COST + fileSize * FILE_FACTOR + pageCount * PAGE_COST;
+    }
+
+    /**
+     * Reserve memory for document extraction. Waits until it fits into the budget.
+     * @param estimate Estimated memory (see {@link #estimate(long, int)}).
+     * @return The reservation. It must be closed after the extraction.
+     */
+    public synchronized Permit acquire(long estimate) {
+        // Bigger than the whole budget - it will run alone.
+        long size = Math.min(Math.max(0, estimate), budget);
+        try {
+            while ((running > 0) && ((reserved + size > budget) || (getLiveHeap() > budget))) {
+                // Timed wait - the heap is re-checked even if no document finishes.
+                wait(POLL_INTERVAL);
+            } //
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for memory", e);
+        }
+        reserved += size;
+        running++;
+        return new Permit(size);
+    }
+
+    protected synchronized void release(long size) {
+        reserved -= size;
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Get the heap occupied by live objects.
+     * @return Heap used after the last garbage collection (or the current usage if not known).
+     */
+    protected long getLiveHeap() {
+        long live = 0;
+        boolean known = false;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if ((usage != null) && (usage.getUsed() > 0)) {
+                live += usage.getUsed();
+                known = true;
+            }
+        } //
+        return known ? live : memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the memory reserved by the running documents.
+     * @return Reserved memory (bytes).
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Get the number of admitted (running) documents.
+     * @return Document count.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Memory reservation of one document.
+     */
+    public class Permit implements AutoCloseable {
+        protected long size;
+        protected boolean released;
+
+        protected Permit(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(size);
+            }
+        }
+    }
+}
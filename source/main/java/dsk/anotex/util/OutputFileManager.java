@@ -0,0 +1,105 @@
+package dsk.anotex.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Opens output files for (parallel) extraction. Thread safe.
+ * <ul>
+ *     <li>The files are written atomically (see {@link AtomicFileWriter}).</li>
+ *     <li>The number of concurrently open files is limited - when the limit is reached, opening
+ *     waits until some other writer is closed.</li>
+ *     <li>The output directories are created only once.</li>
+ * </ul>
+ */
+public class OutputFileManager {
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+    protected static final String TEMP_SUFFIX = ".tmp";
+
+    protected Semaphore openFiles;
+    protected Set<String> createdDirs;
+
+    public OutputFileManager() {
+        this(DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param maxOpenFiles Maximum number of concurrently open output files.
+     */
+    public OutputFileManager(int maxOpenFiles) {
+        super();
+        openFiles = new Semaphore(Math.max(1, maxOpenFiles), true);
+        createdDirs = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Open writer for given output file. The content appears in the file only after
+     * {@link AtomicFileWriter#commit()}.
+     * @param outputFile Output file name.
+     * @return The writer. It must be closed after use.
+     */
+    public AtomicFileWriter openWriter(String outputFile) {
+        Path target = new File(outputFile).getAbsoluteFile().toPath();
+        Path dir = target.getParent();
+        ensureDirectory(dir);
+        try {
+            openFiles.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for output file", e);
+        }
+        // The temporary file should be in the same directory (rename across file systems is not
+        // atomic). Files.createTempFile() is not used, as it restricts the file permissions.
+        String tempName = "." + target.getFileName() + "."
+            + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX;
+        Path temp = dir.resolve(tempName);
+        try {
+            Files.createFile(temp);
+            return new AtomicFileWriter(temp, target, openFiles::release);
+        }
+        catch (IOException | RuntimeException e) {
+            openFiles.release();
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException ignored) {
+                // Nothing more can be done.
+            }
+            String message = String.format("Cannot create output file '%s'", outputFile);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Create given directory (if not already created by this manager).
+     * @param dir The directory.
+     */
+    protected void ensureDirectory(Path dir) {
+        if ((dir != null) && !createdDirs.contains(dir.toString())) {
+            try {
+                Files.createDirectories(dir);
+            }
+            catch (IOException e) {
+                String message = String.format("Cannot create directory '%s'", dir);
+                throw new RuntimeException(message, e);
+            }
+            createdDirs.add(dir.toString());
+        }
+    }
+
+    /**
+     * Get the number of output files, which can be opened without waiting.
+     * @return Available open file slots.
+     */
+    public int getAvailableFiles() {
+        return openFiles.availablePermits();
+    }
+}
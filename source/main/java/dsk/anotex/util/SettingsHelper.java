@@ -0,0 +1,110 @@
+package dsk.anotex.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper for reading typed values from settings map. Numeric values can be passed as any
+ * {@link Number} or as string (as they come from the command line).
+ */
+public class SettingsHelper {
+
+    /*
+     * Prevent instance creation.
+     */
+    private SettingsHelper() {
+    }
+
+    /**
+     * Get numeric setting.
+     * @param settings The settings (can be null).
+     * @param key Setting name.
+     * @param defaultValue Value to return if the setting is missing.
+     * @return Setting value.
+     */
+    public static long getLong(Map<String, Object> settings, String key, long defaultValue) {
+        Object value = (settings != null) ? settings.get(key) : null;
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            }
+            catch (NumberFormatException e) {
+                String message = String.format("Invalid value '%s' for setting '%s'", value, key);
+                throw new IllegalArgumentException(message, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get numeric setting.
+     * @param settings The settings (can be null).
+     * @param key Setting name.
+     * @param defaultValue Value to return if the setting is missing.
+     * @return Setting value.
+     */
+    public static int getInt(Map<String, Object> settings, String key, int defaultValue) {
+        return (int) Math.min(Integer.MAX_VALUE, getLong(settings, key, defaultValue));
+    }
+
+    /**
+     * Get boolean setting.
+     * @param settings The settings (can be null).
+     * @param key Setting name.
+     * @param defaultValue Value to return if the setting is missing.
+     * @return Setting value.
+     */
+    public static boolean getBoolean(Map<String, Object> settings, String key, boolean defaultValue) {
+        Object value = (settings != null) ? settings.get(key) : null;
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value != null) {
+            return Boolean.parseBoolean(value.toString().trim());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get string setting.
+     * @param settings The settings (can be null).
+     * @param key Setting name.
+     * @return Setting value or null.
+     */
+    public static String getString(Map<String, Object> settings, String key) {
+        Object value = (settings != null) ? settings.get(key) : null;
+        return (value != null) ? value.toString() : null;
+    }
+
+    /**
+     * Get list setting.
+     * @param settings The settings (can be null).
+     * @param key Setting name.
+     * @return Setting value or null. The value can be given as collection or comma separated string.
+     */
+    public static List<String> getList(Map<String, Object> settings, String key) {
+        Object value = (settings != null) ? settings.get(key) : null;
+        if (value == null) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                list.add(item.toString());
+            } //
+        }
+        else {
+            for (String item : value.toString().split(",")) {
+                if (!item.trim().isEmpty()) {
+                    list.add(item.trim());
+                }
+            } //
+        }
+        return list;
+    }
+}
@@ -0,0 +1,423 @@
+package dsk.anotex.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work item leases in shared directory (like on NFS), so several processes (nodes) can share
+ * the same work without coordinator. Every work item is processed by the node, which creates
+ * its lease file first. When the item is finished, the lease is replaced by completion marker.
+ * The leases of the active node are renewed periodically - the lease, which was not renewed
+ * within the timeout (the node crashed), can be taken over by other node.
+ * <p>
+ * Every acquisition writes unique token into the lease file. The token is verified before the
+ * lease is renewed, released or completed, so the node, whose lease was taken over, cannot touch
+ * the lease of the new owner (it only learns that the lease was lost).
+ * <p>
+ * The completion markers record the version of the input file (size, modification time, content
+ * hash) - changed input is processed again. Failed items are retried (by any node) until the
+ * maximum number of attempts is reached.
+ * <p>
+ * The lease files are created exclusively (O_EXCL), which is atomic also on NFS v3+. The node
+ * clocks should be synchronized (the lease age is determined from the file modification time).
+ * Thread safe.
+ */
+public class WorkLeases implements Closeable {
+    public static final long DEFAULT_TIMEOUT = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    protected static final String LEASE_EXTENSION = ".lease";
+    protected static final String TAKEOVER_EXTENSION = ".takeover";
+    protected static final String DONE_EXTENSION = ".done";
+    protected static final String FAILED_EXTENSION = ".failed";
+    protected static final Logger log = LogManager.getLogger(WorkLeases.class);
+    protected Path directory;
+    protected long timeout;
+    protected int maxAttempts;
+    protected String nodeId;
+    /** Held leases (key -> token). */
+    protected Map<String, String> heldLeases;
+    protected ScheduledExecutorService renewer;
+
+    /**
+     * Constructor with specified parameters.
+     * @param directory Shared lease directory (created if not existing).
+     * @param timeout Lease timeout (ms). The leases are renewed 3 times per timeout.
+     */
+    public WorkLeases(File directory, long timeout) {
+        this(directory, timeout, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Constructor with specified parameters.
+     * @param directory Shared lease directory (created if not existing).
+     * @param timeout Lease timeout (ms). The leases are renewed 3 times per timeout.
+     * @param maxAttempts Maximum number of attempts to process failing item (by all nodes).
+     */
+    public WorkLeases(File directory, long timeout, int maxAttempts) {
+        super();
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Invalid lease timeout: " + timeout);
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid attempt count: " + maxAttempts);
+        }
+        this.directory = directory.getAbsoluteFile().toPath();
+        this.timeout = timeout;
+        this.maxAttempts = maxAttempts;
+        try {
+            Files.createDirectories(this.directory);
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot create lease directory '%s'", directory);
+            throw new RuntimeException(message, e);
+        }
+        // Like 'pid@host-1a2b3c4d' (unique also for several instances in the same process).
+        nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+        heldLeases = new ConcurrentHashMap<>();
+        renewer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, timeout / 3);
+        renewer.scheduleAtFixedRate(this::renewLeases, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Try to take the lease of work item.
+     * @param key Work item key (safe as file name, like hash of the input path).
+     * @param inputFile Input file of the work item (its version is compared with the completion markers).
+     * @return True if the item should be processed by this node. False if it is finished or
+     * processed by other node.
+     */
+    public boolean acquire(String key, Path inputFile) {
+        if (isFinished(key, inputFile)) {
+            return false;
+        }
+        Path lease = getFile(key, LEASE_EXTENSION);
+        String token = nodeId + ":" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        if (!createLease(lease, token)) {
+            if (!isExpired(lease) || !takeOver(key, lease, token)) {
+                return false;
+            }
+        }
+        heldLeases.put(key, token);
+        if (isFinished(key, inputFile)) {
+            // Finished by other node just before the lease was created.
+            release(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mark the work item as finished. The lease is released.
+     * @param key Work item key.
+     * @param inputFile Input file of the work item.
+     * @param success False if the processing failed (it is retried until the maximum attempt count
+     * is reached).
+     * @return False if the lease was lost (taken over by other node) - the item is not marked then.
+     */
+    public boolean complete(String key, Path inputFile, boolean success) {
+        String token = heldLeases.get(key);
+        if ((token == null) || !isOwner(key, token)) {
+            heldLeases.remove(key);
+            log.warn("Lease of '{}' was lost - not completing", key);
+            return false;
+        }
+        Path marker = getFile(key, success ? DONE_EXTENSION : FAILED_EXTENSION);
+        try {
+            Marker version = new Marker(inputFile);
+            if (!success) {
+                Marker previous = Marker.read(marker);
+                version.attempts = ((previous != null) && previous.isSameVersion(inputFile))
+                    ? previous.attempts + 1 : 1;
+            }
+            version.nodeId = nodeId;
+            writeAtomically(marker, version.toString());
+            if (success) {
+                deleteQuietly(getFile(key, FAILED_EXTENSION));
+            }
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot write completion marker '%s'", marker);
+            throw new RuntimeException(message, e);
+        }
+        finally {
+            release(key);
+        }
+        return true;
+    }
+
+    /**
+     * Release the lease without completion (the item can be processed by other node).
+     * The lease file is deleted only if it still belongs to this node.
+     * @param key Work item key.
+     */
+    public void release(String key) {
+        String token = heldLeases.remove(key);
+        if ((token != null) && isOwner(key, token)) {
+            deleteQuietly(getFile(key, LEASE_EXTENSION));
+        }
+    }
+
+    /**
+     * Check if this node still holds the lease.
+     * @param key Work item key.
+     * @return False if the lease was released or taken over by other node.
+     */
+    public boolean isHeld(String key) {
+        String token = heldLeases.get(key);
+        return (token != null) && isOwner(key, token);
+    }
+
+    /**
+     * Check if the work item is finished.
+     * @param key Work item key.
+     * @param inputFile Input file of the work item.
+     * @return True if it was completed successfully or failed too many times (with the same input).
+     */
+    public boolean isFinished(String key, Path inputFile) {
+        Marker done = Marker.read(getFile(key, DONE_EXTENSION));
+        if ((done != null) && done.isSameVersion(inputFile)) {
+            return true;
+        }
+        Marker failed = Marker.read(getFile(key, FAILED_EXTENSION));
+        return (failed != null) && (failed.attempts >= maxAttempts) && failed.isSameVersion(inputFile);
+    }
+
+    protected boolean createLease(Path lease, String token) {
+        try {
+            Files.write(lease, token.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+            return true;
+        }
+        catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        catch (IOException e) {
+            String message = String.format("Cannot create lease '%s'", lease);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Take over expired lease. Only one node can do it at a time (guarded by exclusively created
+     * take-over file).
+     * @param key Work item key.
+     * @param lease Lease file.
+     * @param token Token of the new lease.
+     * @return True if the lease was taken.
+     */
+    protected boolean takeOver(String key, Path lease, String token) {
+        Path guard = getFile(key, TAKEOVER_EXTENSION);
+        if (!createLease(guard, token)) {
+            if (isExpired(guard)) {
+                // The node crashed during take-over. The next attempt will succeed.
+                deleteQuietly(guard);
+            }
+            return false;
+        }
+        try {
+            // Check again - the lease could be renewed or taken meanwhile.
+            if (!isExpired(lease)) {
+                return false;
+            }
+            log.info("Taking over expired lease of '{}'", key);
+            deleteQuietly(lease);
+            return createLease(lease, token);
+        }
+        finally {
+            deleteQuietly(guard);
+        }
+    }
+
+    /**
+     * Check if the lease file contains given token.
+     * @param key Work item key.
+     * @param token Token of the acquisition.
+     * @return True if the lease belongs to the acquisition.
+     */
+    protected boolean isOwner(String key, String token) {
+        try {
+            byte[] content = Files.readAllBytes(getFile(key, LEASE_EXTENSION));
+            return token.equals(new String(content, StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            // Deleted (taken over) or not readable.
+            return false;
+        }
+    }
+
+    protected boolean isExpired(Path file) {
+        try {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+            return age > timeout;
+        }
+        catch (NoSuchFileException e) {
+            // Released meanwhile - it can be created again.
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Renew the held leases (called periodically). The leases taken over by other nodes are dropped.
+     */
+    protected void renewLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Map.Entry<String, String> entry : heldLeases.entrySet()) {
+            String key = entry.getKey();
+            if (!isOwner(key, entry.getValue())) {
+                heldLeases.remove(key, entry.getValue());
+                log.warn("Lease of '{}' was taken over by other node", key);
+                continue;
+            }
+            try {
+                Files.setLastModifiedTime(getFile(key, LEASE_EXTENSION), now);
+            }
+            catch (IOException e) {
+                log.warn("Cannot renew lease of '{}': {}", key, e.toString());
+            }
+        } //
+    }
+
+    protected void writeAtomically(Path file, String content) throws IOException {
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    protected Path getFile(String key, String extension) {
+        return directory.resolve(key + extension);
+    }
+
+    protected void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            log.warn("Cannot delete '{}': {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Get the identifier of this node.
+     * @return Node identifier (written into the lease files).
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Stop renewing the leases and release them.
+     */
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        for (String key : heldLeases.keySet()) {
+            release(key);
+        } //
+    }
+
+    /**
+     * Completion marker - version of the processed input file.
+     * <pre>
+     * size modified hash attempts node   (tab separated)
+     * </pre>
+     */
+    protected static class Marker {
+        protected long size;
+        protected long modified;
+        protected String hash;
+        protected int attempts;
+        protected String nodeId;
+
+        protected Marker() {
+        }
+
+        protected Marker(Path inputFile) {
+            File file = inputFile.toFile();
+            size = file.length();
+            modified = file.lastModified();
+            hash = FileDigest.hashFile(inputFile);
+            attempts = 1;
+        }
+
+        /**
+         * Read the marker file.
+         * @param file Marker file.
+         * @return The marker or null (if it does not exist or is not valid).
+         */
+        protected static Marker read(Path file) {
+            String[] items;
+            try {
+                items = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\t", -1);
+            }
+            catch (IOException e) {
+                return null;
+            }
+            if (items.length != 5) {
+                return null;
+            }
+            try {
+                Marker marker = new Marker();
+                marker.size = Long.parseLong(items[0]);
+                marker.modified = Long.parseLong(items[1]);
+                marker.hash = items[2];
+                marker.attempts = Integer.parseInt(items[3]);
+                marker.nodeId = items[4];
+                return marker;
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Check if the marker belongs to the current version of the input file.
+         * @param inputFile Input file.
+         * @return True if the file did not change (the content is compared only if the size or
+         * modification time differ).
+         */
+        protected boolean isSameVersion(Path inputFile) {
+            File file = inputFile.toFile();
+            if (!file.isFile() || (file.length() != size)) {
+                return false;
+            }
+            return (file.lastModified() == modified) || hash.equals(FileDigest.hashFile(inputFile));
+        }
+
+        @Override
+        public String toString() {
+            return size + "\t" + modified + "\t" + hash + "\t" + attempts + "\t" + nodeId;
+        }
+    }
+}
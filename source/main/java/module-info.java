@@ -2,8 +2,10 @@ module DyAnnotationExtractor {
 	exports dsk.anotex.core;
 	exports dsk.anotex.importer;
 	exports dsk.anotex.exporter;
+	exports dsk.anotex.index;
 	exports dsk.anotex;
 	
+	requires java.xml;
 	requires kernel;
 	requires org.apache.logging.log4j;
 }
\ No newline at end of file
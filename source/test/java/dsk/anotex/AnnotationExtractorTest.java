@@ -4,9 +4,17 @@ import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class AnnotationExtractorTest extends TestBase {
 
@@ -32,4 +40,30 @@ public class AnnotationExtractorTest extends TestBase {
         assertEquals(1, annotations.size());
     }
 
+    @Test
+    public void testDiffCacheAfterExport() throws IOException {
+        File cacheDir = new File(tempDir, "diffCache");
+        File blocker = new File(tempDir, "notDirectory");
+        Files.write(blocker.toPath(), new byte[0]);
+        String inputFile = resDir + "/Test_Pdf_3.pdf";
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.DIFF_CACHE, cacheDir.getPath());
+        AnnotationExtractor extractor = new AnnotationExtractor();
+        try {
+            extractor.extractAnnotations(inputFile, settings, new File(blocker, "out.md").getPath());
+            fail("Output written into file");
+        }
+        catch (RuntimeException e) {
+            // Expected.
+        }
+        // Not exported - not cached (the next run compares with the same version).
+        assertNull(new ExtractionCache(cacheDir).load(inputFile));
+
+        File outputFile = new File(tempDir, "cached.md");
+        extractor.extractAnnotations(inputFile, settings, outputFile.getPath());
+        assertNotNull(new ExtractionCache(cacheDir).load(inputFile));
+        outputFile.delete();
+        blocker.delete();
+        removeDirectory(cacheDir);
+    }
 }
@@ -0,0 +1,243 @@
+package dsk.anotex;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchExtractorTest extends TestBase {
+
+    @Test
+    public void testBatchExtraction() {
+        File outputDir = new File(tempDir, "batch");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.THREADS, 3);
+        settings.put(Constants.MAX_OPEN_FILES, 2);
+        BatchExtractor extractor = new BatchExtractor(settings);
+        Map<String, Throwable> failures = extractor.extractAnnotations(resDir, settings,
+            outputDir.getPath(), null);
+
+        // The unsupported document fails, the others are extracted.
+        assertEquals(1, failures.size());
+        assertTrue(failures.keySet().iterator().next().endsWith("Test_Pdf_4.pdf"));
+        String[] outputFiles = outputDir.list();
+        assertEquals(6, outputFiles.length);
+        for (String outputFile : outputFiles) {
+            assertTrue(outputFile.endsWith(".pdf.md"));
+            assertTrue(new File(outputDir, outputFile).length() > 0);
+        } //
+        removeDirectory(outputDir);
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File inputDir = new File(tempDir, "resumeInput");
+        File outputDir = new File(tempDir, "resumeOutput");
+        File journalFile = new File(tempDir, "resume.journal");
+        inputDir.mkdirs();
+        for (String name : new String[] {"Test_Pdf_2.pdf", "Test_Pdf_3.pdf", "Test_Pdf_4.pdf"}) {
+            Files.copy(new File(resDir, name).toPath(), new File(inputDir, name).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        } //
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.THREADS, 2);
+        settings.put(Constants.JOURNAL, journalFile.getPath());
+        Map<String, Throwable> failures = new BatchExtractor(settings).extractAnnotations(inputDir.getPath(),
+            settings, outputDir.getPath(), null);
+        assertEquals(1, failures.size());
+        assertEquals(3, Files.readAllLines(journalFile.toPath()).size());
+
+        // Resume - only the failed and the changed documents are extracted again.
+        new File(outputDir, "Test_Pdf_3.pdf.md").delete();
+        settings.put(Constants.RESUME, true);
+        List<String> skipped = new CopyOnWriteArrayList<>();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        failures = new BatchExtractor(settings).extractAnnotations(inputDir.getPath(), settings,
+            outputDir.getPath(), new BatchExtractor.Listener() {
+                @Override
+                public void processed(String inputFile, String outputFile, Throwable error) {
+                    processed.add(new File(inputFile).getName());
+                }
+
+                @Override
+                public void skipped(String inputFile, String outputFile) {
+                    skipped.add(new File(inputFile).getName());
+                }
+            });
+        assertEquals(1, failures.size());
+        assertEquals(1, skipped.size());
+        assertEquals("Test_Pdf_2.pdf", skipped.get(0));
+        assertEquals(2, processed.size());
+        assertTrue(new File(outputDir, "Test_Pdf_3.pdf.md").isFile());
+        assertEquals(5, Files.readAllLines(journalFile.toPath()).size());
+
+        // Touched, but not changed - skipped and the journal entry is updated (not hashed again).
+        File touched = new File(inputDir, "Test_Pdf_2.pdf");
+        touched.setLastModified(touched.lastModified() - 10000);
+        skipped.clear();
+        new BatchExtractor(settings).extractAnnotations(inputDir.getPath(), settings, outputDir.getPath(),
+            createListener(skipped, processed));
+        assertEquals(2, skipped.size());
+        List<String> lines = Files.readAllLines(journalFile.toPath());
+        assertEquals(7, lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith(ProgressJournal.STATUS_DONE + "\t")
+            && line.contains(Long.toString(touched.lastModified()))));
+
+        journalFile.delete();
+        removeDirectory(inputDir);
+        removeDirectory(outputDir);
+    }
+
+    @Test
+    public void testResumePartial() throws IOException {
+        File inputDir = new File(tempDir, "partialInput");
+        File outputDir = new File(tempDir, "partialOutput");
+        File journalFile = new File(tempDir, "partial.journal");
+        inputDir.mkdirs();
+        Files.copy(new File(resDir, "Test_Pdf_7.pdf").toPath(), new File(inputDir, "Test_Pdf_7.pdf").toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.JOURNAL, journalFile.getPath());
+        settings.put(Constants.MAX_QUADS, 1);
+        Map<String, Throwable> failures = new BatchExtractor(settings).extractAnnotations(inputDir.getPath(),
+            settings, outputDir.getPath(), null);
+        assertEquals(0, failures.size());
+        List<String> lines = Files.readAllLines(journalFile.toPath());
+        assertTrue(lines.get(0).startsWith(ProgressJournal.STATUS_PARTIAL + "\t"));
+
+        // The partial document is extracted again.
+        settings.put(Constants.RESUME, true);
+        settings.remove(Constants.MAX_QUADS);
+        List<String> skipped = new CopyOnWriteArrayList<>();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        new BatchExtractor(settings).extractAnnotations(inputDir.getPath(), settings, outputDir.getPath(),
+            createListener(skipped, processed));
+        assertEquals(0, skipped.size());
+        assertEquals(1, processed.size());
+        lines = Files.readAllLines(journalFile.toPath());
+        assertTrue(lines.get(1).startsWith(ProgressJournal.STATUS_DONE + "\t"));
+
+        journalFile.delete();
+        removeDirectory(inputDir);
+        removeDirectory(outputDir);
+    }
+
+    @Test
+    public void testJournalFileState() throws IOException {
+        File inputFile = new File(tempDir, "changed.pdf");
+        File outputFile = new File(tempDir, "changed.pdf.md");
+        File journalFile = new File(tempDir, "changed.journal");
+        Files.write(inputFile.toPath(), "Version 1".getBytes());
+        Files.write(outputFile.toPath(), "Output".getBytes());
+        ProgressJournal.FileState state = ProgressJournal.captureState(inputFile.toPath());
+
+        // Changed during the extraction - the state from before the extraction is recorded.
+        Files.write(inputFile.toPath(), "Version 2".getBytes());
+        inputFile.setLastModified(inputFile.lastModified() + 5000);
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            journal.recordDone(inputFile.toPath(), state, outputFile.getPath());
+        }
+        try (ProgressJournal journal = new ProgressJournal(journalFile, true)) {
+            assertFalse(journal.isCompleted(inputFile.toPath(), outputFile.getPath()));
+        }
+
+        journalFile.delete();
+        inputFile.delete();
+        outputFile.delete();
+    }
+
+    @Test
+    public void testShards() {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Map<String, Object> settings = new HashMap<>();
+            settings.put(Constants.SHARD, i + "/3");
+            File outputDir = new File(tempDir, "shard" + i);
+            new BatchExtractor(settings).extractAnnotations(resDir, settings, outputDir.getPath(),
+                (inputFile, outputFile, error) -> processed.add(inputFile));
+            removeDirectory(outputDir);
+        } //
+
+        // Every document is extracted by exactly one shard.
+        assertEquals(7, processed.size());
+        assertEquals(7, new HashSet<>(processed).size());
+    }
+
+    @Test
+    public void testLeases() throws Exception {
+        File outputDir = new File(tempDir, "leaseOutput");
+        File leaseDir = new File(tempDir, "leases");
+        List<String> processed = new CopyOnWriteArrayList<>();
+        List<String> skipped = new CopyOnWriteArrayList<>();
+        BatchExtractor.Listener listener = new BatchExtractor.Listener() {
+            @Override
+            public void processed(String inputFile, String outputFile, Throwable error) {
+                processed.add(inputFile);
+            }
+
+            @Override
+            public void skipped(String inputFile, String outputFile) {
+                skipped.add(inputFile);
+            }
+        };
+
+        // Several nodes run the same batch concurrently.
+        ExecutorService nodes = Executors.newFixedThreadPool(3);
+        List<Future<Map<String, Throwable>>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> settings = new HashMap<>();
+            settings.put(Constants.THREADS, 2);
+            settings.put(Constants.LEASE_DIRECTORY, leaseDir.getPath());
+            settings.put(Constants.LEASE_ATTEMPTS, 1);
+            results.add(nodes.submit(() -> new BatchExtractor(settings).extractAnnotations(resDir, settings,
+                outputDir.getPath(), listener)));
+        } //
+        int failures = 0;
+        for (Future<Map<String, Throwable>> result : results) {
+            failures += result.get().size();
+        } //
+        nodes.shutdown();
+
+        // Every document is processed once (and skipped by the other nodes).
+        assertEquals(1, failures);
+        assertEquals(7, processed.size());
+        assertEquals(7, new HashSet<>(processed).size());
+        assertEquals(2 * 7, skipped.size());
+        assertEquals(6, outputDir.list().length);
+        for (File file : leaseDir.listFiles()) {
+            // Only completion markers are left.
+            assertFalse(file.getName().endsWith(".lease"));
+        } //
+        removeDirectory(outputDir);
+        removeDirectory(leaseDir);
+    }
+
+    protected BatchExtractor.Listener createListener(List<String> skipped, List<String> processed) {
+        return new BatchExtractor.Listener() {
+            @Override
+            public void processed(String inputFile, String outputFile, Throwable error) {
+                processed.add(new File(inputFile).getName());
+            }
+
+            @Override
+            public void skipped(String inputFile, String outputFile) {
+                skipped.add(new File(inputFile).getName());
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package dsk.anotex;
+
+import dsk.anotex.core.FileFormat;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CollectionExtractorTest extends TestBase {
+
+    @Test
+    public void testJsonLines() {
+        String outputFile = new File(tempDir, "Collection.jsonl").getPath();
+        List<String> inputFiles = Arrays.asList(resDir + "/Test_Pdf_7.pdf", resDir + "/Test_Pdf_4.pdf",
+            resDir + "/Test_Pdf_3.pdf");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.SORT_BY, Constants.SORT_BY_FILE);
+        Map<String, Throwable> failures = new CollectionExtractor().extractAnnotations(inputFiles, settings,
+            outputFile);
+
+        // The unsupported document is skipped.
+        assertEquals(1, failures.size());
+        assertTrue(failures.containsKey(resDir + "/Test_Pdf_4.pdf"));
+        String[] lines = readFile(outputFile).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"pages\":"));
+        assertTrue(lines[0].contains("Test_Pdf_3.pdf"));
+        assertTrue(lines[1].contains("Test_Pdf_7.pdf"));
+        assertTrue(lines[1].contains("\"type\":\"Highlight\",\"highlight\":"));
+        assertTrue(lines[1].contains("\"color\":\"#ffff00\",\"author\":\"Dexana\""));
+        new File(outputFile).delete();
+    }
+
+    @Test
+    public void testMarkdownBook() {
+        String outputFile = new File(tempDir, "Collection.md").getPath();
+        List<String> inputFiles = Arrays.asList(resDir + "/Test_Pdf_7.pdf", resDir + "/Test_Pdf_6.pdf");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.EXPORT_FORMAT, FileFormat.MARKDOWN);
+        Map<String, Throwable> failures = new CollectionExtractor().extractAnnotations(inputFiles, settings,
+            outputFile);
+        assertTrue(failures.isEmpty());
+        String content = readFile(outputFile);
+        // Documents without title get the file name as heading.
+        int first = content.indexOf("# Test_Pdf_6.pdf");
+        int second = content.indexOf("# Test_Pdf_7.pdf");
+        assertTrue(first >= 0);
+        assertTrue(second > first);
+        new File(outputFile).delete();
+    }
+}
@@ -0,0 +1,49 @@
+package dsk.anotex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FolderWatcherTest extends TestBase {
+
+    @Before
+    public void beforeEach() {
+        cleanTempDirectory();
+    }
+
+    @Test
+    public void testDebounce() {
+        File watchDir = new File(tempDir, "watch");
+        watchDir.mkdirs();
+        List<Path> processed = new ArrayList<>();
+        try (FolderWatcher watcher = new FolderWatcher(watchDir.toPath(), 1000, processed::add)) {
+            Path pdf = new File(watchDir, "book.pdf").toPath();
+            Path other = new File(watchDir, "book.pdf.md").toPath();
+            writeFile(pdf.toString(), "1");
+            writeFile(other.toString(), "1");
+
+            // Burst of events for the same file.
+            watcher.registerEvent(pdf, 0);
+            watcher.registerEvent(other, 0);
+            watcher.registerEvent(pdf, 500);
+            assertEquals(Collections.emptyList(), watcher.collectReadyFiles(1200));
+
+            // The file was written without event reaching the watcher.
+            writeFile(pdf.toString(), "12");
+            assertEquals(Collections.emptyList(), watcher.collectReadyFiles(1500));
+            assertEquals(Collections.emptyList(), watcher.collectReadyFiles(2000));
+            assertEquals(Arrays.asList(pdf), watcher.collectReadyFiles(2500));
+
+            // Processed only once.
+            assertEquals(Collections.emptyList(), watcher.collectReadyFiles(5000));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package dsk.anotex.core;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationDiffTest extends TestBase {
+
+    @Test
+    public void testCompare() {
+        Annotation kept = createAnnotation(1, "Kept", null, 10);
+        Annotation commented = createAnnotation(1, "Commented", null, 20);
+        Annotation moved = createAnnotation(2, "Moved", null, 30);
+        Annotation deleted = createAnnotation(2, "Deleted", null, 40);
+        AnnotatedDocument previous = new AnnotatedDocument();
+        previous.setAnnotations(Arrays.asList(kept, commented, moved, deleted));
+
+        Annotation kept2 = createAnnotation(1, "Kept", null, 10);
+        Annotation commented2 = createAnnotation(1, "Commented", "Note", 20);
+        Annotation moved2 = createAnnotation(2, "Moved", "Note", 35);
+        Annotation added = createAnnotation(3, "Added", null, 10);
+        AnnotatedDocument current = new AnnotatedDocument();
+        current.setAnnotations(Arrays.asList(kept2, commented2, moved2, added));
+
+        AnnotationDiff diff = AnnotationDiff.compare(previous, current);
+        assertEquals(Arrays.asList(added), diff.getAdded());
+        assertEquals(Arrays.asList(deleted), diff.getRemoved());
+        assertEquals(Arrays.asList(commented2, moved2), diff.getChanged());
+        assertSame(commented, diff.getPreviousVersion(commented2));
+        assertSame(moved, diff.getPreviousVersion(moved2));
+
+        // Without previous version, everything is added.
+        diff = AnnotationDiff.compare(null, current);
+        assertEquals(4, diff.getAdded().size());
+        assertTrue(AnnotationDiff.compare(current, current).isEmpty());
+    }
+
+    protected Annotation createAnnotation(int page, String highlight, String text, float y) {
+        Annotation annotation = new Annotation(text, highlight);
+        annotation.setPage(page);
+        annotation.setType("Highlight");
+        annotation.setRectangle(new float[] {10, y, 100, y + 10});
+        return annotation;
+    }
+}
@@ -0,0 +1,103 @@
+package dsk.anotex.core;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnnotationFilterTest extends TestBase {
+
+    @Test
+    public void testPageRanges() {
+        PageRanges pages = PageRanges.parse("3-5, 8");
+        assertFalse(pages.contains(2));
+        assertTrue(pages.contains(3));
+        assertTrue(pages.contains(5));
+        assertFalse(pages.contains(6));
+        assertTrue(pages.contains(8));
+        assertEquals("3-5,8", pages.toString());
+    }
+
+    @Test
+    public void testOpenPageRanges() {
+        PageRanges pages = PageRanges.parse("3-5, 90-, last:20");
+        assertEquals("3-5,90-,last:20", pages.toString());
+        assertTrue(pages.contains(1000));
+        assertFalse(pages.contains(80));
+
+        // Resolved against the document.
+        PageRanges resolved = pages.resolve(100);
+        assertEquals("3-5,81-100", resolved.toString());
+        assertEquals(23, resolved.getPageCount());
+        assertEquals(3, resolved.nextPage(0));
+        assertEquals(81, resolved.nextPage(5));
+        assertEquals(-1, resolved.nextPage(100));
+        assertEquals("1-2", PageRanges.parse("last:10").resolve(2).toString());
+        assertEquals("", PageRanges.parse("10-").resolve(5).toString());
+    }
+
+    @Test
+    public void testPageSample() {
+        PageRanges pages = PageRanges.parse("1-100").resolve(1000);
+        assertEquals("11,31,51,71,91", pages.sample(5).toString());
+        pages = PageRanges.parse("1-10,101-110").resolve(1000);
+        assertEquals("3,8,103,108", pages.sample(4).toString());
+        assertEquals(pages, pages.sample(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageRange() {
+        PageRanges.parse("5-3");
+    }
+
+    @Test
+    public void testFilter() {
+        AnnotationFilter filter = new AnnotationFilter();
+        Annotation annotation = new Annotation("Text1");
+        annotation.setType("Highlight");
+        annotation.setColor("#ffff00");
+        annotation.setAuthor("Mimi");
+        annotation.setModificationDate(AnnotationFilter.parseDate("2020-05-10", false));
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.accepts(annotation));
+
+        filter.setTypes(Arrays.asList("highlight", "FreeText"));
+        filter.setColors(Arrays.asList("FFFF00"));
+        filter.setAuthors(Arrays.asList("mimi"));
+        filter.setDateFrom(AnnotationFilter.parseDate("2020-05-10", false));
+        filter.setDateTo(AnnotationFilter.parseDate("2020-05-10", true));
+        assertTrue(filter.accepts(annotation));
+
+        annotation.setColor("#00ff00");
+        assertFalse(filter.accepts(annotation));
+        annotation.setColor("#ffff00");
+        annotation.setModificationDate(AnnotationFilter.parseDate("2020-05-11", false));
+        assertFalse(filter.accepts(annotation));
+        annotation.setModificationDate(null);
+        assertFalse(filter.accepts(annotation));
+    }
+
+    @Test
+    public void testParseDate() {
+        assertEquals(AnnotationFilter.parseDate("2020-03-01", false), AnnotationFilter.parseDate("2020-02-29", true));
+        try {
+            AnnotationFilter.parseDate("2020-02-30", false);
+            fail("Invalid date expected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            AnnotationFilter.parseDate("2020-05-10x", false);
+            fail("Invalid date expected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package dsk.anotex.core;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyAnnotatedDocumentTest extends TestBase {
+
+    @Test
+    public void testPageLoading() {
+        TestLoader loader = new TestLoader();
+        try (LazyAnnotatedDocument document = new LazyAnnotatedDocument(loader)) {
+            assertEquals("Title1", document.getTitle());
+            assertTrue(loader.loadedPages.isEmpty());
+
+            // Single page.
+            assertEquals("Page3", document.getPageAnnotations(3).get(0).getText());
+            assertEquals(Collections.singletonList(3), loader.loadedPages);
+
+            // Iteration loads only the reached pages.
+            Iterator<Annotation> iter = document.getAnnotations().iterator();
+            assertEquals("Page1", iter.next().getText());
+            assertEquals(Arrays.asList(3, 1), loader.loadedPages);
+            assertEquals("Page2", iter.next().getText());
+            // The cached page is not loaded again.
+            assertEquals("Page3", iter.next().getText());
+            assertEquals(Arrays.asList(3, 1, 2), loader.loadedPages);
+            assertEquals(4, document.getAnnotations().size());
+            assertEquals("Page2", document.getPageAnnotations(2).get(0).getText());
+            assertEquals(4, loader.loadedPages.size());
+        }
+        assertTrue(loader.closed);
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LazyAnnotatedDocument document = new LazyAnnotatedDocument(new TestLoader());
+             ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(document);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            AnnotatedDocument document = (AnnotatedDocument) in.readObject();
+            assertSame(AnnotatedDocument.class, document.getClass());
+            assertEquals(4, document.getAnnotations().size());
+            assertFalse(document.isIncomplete());
+        }
+    }
+
+    /**
+     * Loader with one annotation per page.
+     */
+    protected static class TestLoader implements AnnotationPageLoader {
+        protected List<Integer> loadedPages = new ArrayList<>();
+        protected boolean closed;
+
+        @Override
+        public AnnotatedDocument getDocumentInfo() {
+            AnnotatedDocument document = new AnnotatedDocument();
+            document.setTitle("Title1");
+            document.setNumberOfPages(4);
+            return document;
+        }
+
+        @Override
+        public List<Annotation> loadPage(int pageNumber) {
+            loadedPages.add(pageNumber);
+            Annotation annotation = new Annotation("Page" + pageNumber);
+            annotation.setPage(pageNumber);
+            return new ArrayList<>(Collections.singletonList(annotation));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package dsk.anotex.exporter;
 
+import dsk.anotex.Constants;
 import dsk.anotex.TestBase;
 import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
+import dsk.anotex.core.AnnotationDiff;
 import org.junit.Test;
 
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 
@@ -28,6 +31,136 @@ public class MarkdownExporterTest extends TestBase {
         assertEquals(sResult, s);
     }
 
+    @Test
+    public void testGroupByColor() {
+        MarkdownExporter exporter = new MarkdownExporter();
+        AnnotatedDocument document = new AnnotatedDocument();
+        Annotation annot1 = new Annotation(null, "Yellow1");
+        annot1.setColor("#ffff00");
+        annot1.setPage(1);
+        Annotation annot2 = new Annotation(null, "Green1");
+        annot2.setColor("#00ff00");
+        annot2.setPage(1);
+        Annotation annot3 = new Annotation(null, "Yellow2");
+        annot3.setColor("#ffff00");
+        annot3.setPage(2);
+        document.setAnnotations(Arrays.asList(annot1, annot2, annot3));
+        Map<String, Object> context = new HashMap<>();
+        context.put(Constants.GROUP_BY, Constants.GROUP_BY_COLOR);
+        context.put(Constants.COLOR_CATEGORIES, "FFFF00=Important");
+        StringWriter output = new StringWriter(256);
+        exporter.export(document, context, output);
+        String sResult = "\n"
+            + "## Important\n\n"
+            + "**Page 1**\nYellow1\n\n"
+            + "**Page 2**\nYellow2\n\n"
+            + "## #00ff00\n\n"
+            + "**Page 1**\nGreen1\n\n";
+        assertEquals(sResult, output.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testExportDiff() {
+        MarkdownExporter exporter = new MarkdownExporter();
+        Annotation old1 = new Annotation("Old note", "Highlight1");
+        old1.setPage(1);
+        Annotation old2 = new Annotation(null, "Removed1");
+        old2.setPage(2);
+        AnnotatedDocument previous = new AnnotatedDocument();
+        previous.setAnnotations(Arrays.asList(old1, old2));
+        Annotation new1 = new Annotation("New note", "Highlight1");
+        new1.setPage(1);
+        Annotation new2 = new Annotation(null, "Added1");
+        new2.setPage(3);
+        AnnotatedDocument current = new AnnotatedDocument();
+        current.setAnnotations(Arrays.asList(new1, new2));
+
+        StringWriter output = new StringWriter(256);
+        exporter.exportDiff(current, AnnotationDiff.compare(previous, current), new HashMap<>(), output);
+        String sResult = "\n"
+            + "## Added\n\n"
+            + "**Page 3**\nAdded1\n\n"
+            + "## Changed\n\n"
+            + "**Page 1**\nHighlight1\n>~~Old note~~\n>New note\n\n"
+            + "## Removed\n\n"
+            + "**Page 2**\nRemoved1\n\n";
+        assertEquals(sResult, output.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testExportDiffGrouped() {
+        MarkdownExporter exporter = new MarkdownExporter();
+        Annotation yellow = new Annotation(null, "Yellow1");
+        yellow.setColor("#ffff00");
+        yellow.setPage(1);
+        Annotation green = new Annotation(null, "Green1");
+        green.setColor("#00ff00");
+        green.setPage(2);
+        AnnotatedDocument current = new AnnotatedDocument();
+        current.setAnnotations(Arrays.asList(yellow, green));
+        Map<String, Object> context = new HashMap<>();
+        context.put(Constants.GROUP_BY, Constants.GROUP_BY_COLOR);
+        context.put(Constants.COLOR_CATEGORIES, "FFFF00=Important");
+
+        StringWriter output = new StringWriter(256);
+        exporter.exportDiff(current, AnnotationDiff.compare(null, current), context, output);
+        String sResult = "\n"
+            + "## Added\n\n"
+            + "### Important\n\n"
+            + "**Page 1**\nYellow1\n\n"
+            + "### #00ff00\n\n"
+            + "**Page 2**\nGreen1\n\n";
+        assertEquals(sResult, output.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testExportReplies() {
+        MarkdownExporter exporter = new MarkdownExporter();
+        Annotation question = new Annotation("Question");
+        question.setPage(1);
+        Annotation answer = new Annotation("Answer");
+        answer.setPage(1);
+        answer.setAuthor("Bob");
+        Annotation thanks = new Annotation("Thanks");
+        thanks.setPage(1);
+        question.addReply(answer);
+        answer.addReply(thanks);
+        AnnotatedDocument document = new AnnotatedDocument();
+        document.setAnnotations(Arrays.asList(question, answer, thanks));
+
+        StringWriter output = new StringWriter(256);
+        exporter.export(document, new HashMap<>(), output);
+        String sResult = "\n"
+            + "**Page 1**\n>Question\n>>\n>> **Bob:** Answer\n>>>\n>>> Thanks\n\n";
+        assertEquals(sResult, output.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testExportDiffReply() {
+        MarkdownExporter exporter = new MarkdownExporter();
+        Annotation oldQuestion = new Annotation("Question");
+        oldQuestion.setPage(1);
+        AnnotatedDocument previous = new AnnotatedDocument();
+        previous.setAnnotations(Arrays.asList(oldQuestion));
+
+        // New reply to unchanged annotation.
+        Annotation question = new Annotation("Question");
+        question.setPage(1);
+        Annotation answer = new Annotation("Answer");
+        answer.setPage(1);
+        answer.setAuthor("Bob");
+        question.addReply(answer);
+        AnnotatedDocument current = new AnnotatedDocument();
+        current.setAnnotations(Arrays.asList(question, answer));
+
+        StringWriter output = new StringWriter(256);
+        exporter.exportDiff(current, AnnotationDiff.compare(previous, current), new HashMap<>(), output);
+        String sResult = "\n"
+            + "## Added\n\n"
+            + "**Page 1**\n_Reply by Bob to \"Question\"_\n>Answer\n\n";
+        assertEquals(sResult, output.toString().replace("\r\n", "\n"));
+    }
+
     protected AnnotatedDocument createDocument() {
         AnnotatedDocument document = new AnnotatedDocument();
         document.setTitle("Title1");
@@ -0,0 +1,40 @@
+package dsk.anotex.importer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExtractionBudgetTest {
+
+    @Test
+    public void testCumulativeDocumentTime() throws InterruptedException {
+        ExtractionBudget budget = new ExtractionBudget(300, 0, 0, 0);
+        budget.pause();
+        for (int i = 0; i < 2; i++) {
+            budget.resume();
+            Thread.sleep(100);
+            budget.checkTime();
+            budget.pause();
+        } //
+        // The pause is not counted.
+        Thread.sleep(300);
+        assertFalse(budget.isDocumentExhausted());
+
+        // The steps do not get fresh document budget.
+        budget.resume();
+        Thread.sleep(150);
+        assertTrue(budget.isDocumentExhausted());
+        try {
+            budget.checkTime();
+            fail("Document timeout expected");
+        }
+        catch (ExtractionLimitException e) {
+            assertTrue(e.isDocumentLimit());
+        }
+        budget.pause();
+        budget.resume();
+        assertTrue(budget.isDocumentExhausted());
+    }
+}
@@ -1,13 +1,43 @@
 package dsk.anotex.importer;
 
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.EncryptionConstants;
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.kernel.pdf.annot.PdfTextAnnotation;
+import com.itextpdf.kernel.pdf.annot.PdfTextMarkupAnnotation;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
+import dsk.anotex.Constants;
 import dsk.anotex.TestBase;
 import dsk.anotex.core.AnnotatedDocument;
 import dsk.anotex.core.Annotation;
+import dsk.anotex.core.ExtractionProblem;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PdfAnnotationImporterTest extends TestBase {
 
@@ -85,4 +115,340 @@ public class PdfAnnotationImporterTest extends TestBase {
             "word processing and presentation graphics. Today, cloud services, " +
             "web calls and other social", annot1.getText());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHighlightingOverlap() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_7.pdf");
+        String highlight = document.getAnnotations().get(1).getHighlight();
+        // The last char of 'your' sticks out of the highlight rectangle.
+        assertTrue(highlight.contains(" where you can enter your password to unlock."));
+        assertTrue(highlight.startsWith("How to open Ubuntu? To unlock your computer,"));
+    }
+
+    @Test
+    public void testFontCache() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        PdfDocument pdfDocument = importer.readDocument(new File(resDir + "/Test_Pdf_7.pdf"));
+        try {
+            FontCache fontCache = new FontCache();
+            PageTextLayer first = PageTextLayer.parse(pdfDocument.getPage(1), null, fontCache);
+            int decoded = fontCache.getMisses();
+            assertTrue(decoded > 0);
+            // The second parse reuses all the fonts.
+            PageTextLayer second = PageTextLayer.parse(pdfDocument.getPage(1), null, fontCache);
+            assertEquals(decoded, fontCache.getMisses());
+            assertTrue(fontCache.getHits() > 0);
+            assertEquals(first.getGlyphCount(), second.getGlyphCount());
+        }
+        finally {
+            pdfDocument.close();
+        }
+    }
+
+    @Test
+    public void testReader() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        try (AnnotationReader reader = importer.openReader(resDir + "/Test_Pdf_3.pdf", new HashMap<>())) {
+            assertEquals(1, reader.getDocumentInfo().getNumberOfPages());
+            // Stops after the first annotation and continues from there.
+            List<Annotation> first = reader.next(1, 0);
+            assertEquals(1, first.size());
+            assertEquals("Four", first.get(0).getText());
+            assertTrue(reader.hasNext());
+            List<Annotation> rest = reader.next(0, 0);
+            assertEquals(2, rest.size());
+            assertEquals("Five", rest.get(0).getText());
+            assertFalse(reader.hasNext());
+            assertEquals(0, reader.next(1, 0).size());
+        }
+    }
+
+    @Test
+    public void testImageOnlyPage() throws IOException {
+        // Page without fonts (like scanned page), with highlight storing its text.
+        String fileName = new File(tempDir, "Scanned.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            PdfPage page = pdfDocument.addNewPage();
+            new PdfCanvas(page).rectangle(50, 700, 200, 20).fill();
+            Rectangle area = new Rectangle(50, 700, 200, 20);
+            PdfTextMarkupAnnotation highlight = PdfTextMarkupAnnotation.createHighLight(area,
+                new float[] {50, 720, 250, 720, 50, 700, 250, 700});
+            highlight.setContents("Scanned words");
+            page.addAnnotation(highlight);
+        }
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        AnnotatedDocument document = importer.readAnnotations(fileName);
+        Annotation annotation = document.getAnnotations().get(0);
+        assertEquals("Scanned words", annotation.getHighlight());
+        assertNull(annotation.getText());
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testReplies() throws IOException {
+        String fileName = new File(tempDir, "Replies.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            PdfPage page1 = pdfDocument.addNewPage();
+            PdfPage page2 = pdfDocument.addNewPage();
+            PdfTextAnnotation question = createNote(pdfDocument, "Question", "Ann");
+            PdfTextAnnotation answer = createNote(pdfDocument, "Answer", "Bob");
+            answer.setInReplyTo(question);
+            PdfTextAnnotation thanks = createNote(pdfDocument, "Thanks", "Ann");
+            thanks.setInReplyTo(answer);
+            // The reply comes before its parent.
+            page1.addAnnotation(thanks);
+            page2.addAnnotation(question);
+            page2.addAnnotation(answer);
+        }
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        AnnotatedDocument document = importer.readAnnotations(fileName);
+        List<Annotation> annotations = document.getAnnotations();
+        assertEquals(3, annotations.size());
+        Annotation question = annotations.get(1);
+        assertEquals("Question", question.getText());
+        assertNull(question.getInReplyTo());
+        assertEquals(1, question.getReplies().size());
+        Annotation answer = question.getReplies().get(0);
+        assertEquals("Answer", answer.getText());
+        assertEquals(question, answer.getInReplyTo());
+        assertEquals(1, answer.getReplies().size());
+        assertEquals(annotations.get(0), answer.getReplies().get(0));
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testChapters() throws IOException {
+        String fileName = new File(tempDir, "Chapters.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            for (int i = 1; i <= 4; i++) {
+                PdfPage page = pdfDocument.addNewPage();
+                page.addAnnotation(createNote(pdfDocument, "Note" + i, "Ann"));
+            } //
+            PdfOutline root = pdfDocument.getOutlines(false);
+            PdfOutline chapter1 = root.addOutline("Chapter 1");
+            chapter1.addDestination(PdfExplicitDestination.createFit(pdfDocument.getPage(2)));
+            PdfOutline section = chapter1.addOutline("Section 1.1");
+            section.addDestination(PdfExplicitDestination.createFit(pdfDocument.getPage(3)));
+            PdfOutline chapter2 = root.addOutline("Chapter 2");
+            chapter2.addDestination(PdfExplicitDestination.createFit(pdfDocument.getPage(4)));
+        }
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.GROUP_BY, Constants.GROUP_BY_CHAPTER);
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        List<Annotation> annotations = importer.readAnnotations(fileName, settings).getAnnotations();
+        assertEquals(4, annotations.size());
+        assertNull(annotations.get(0).getChapter());
+        assertEquals("Chapter 1", annotations.get(1).getChapter());
+        assertEquals("Chapter 1 / Section 1.1", annotations.get(2).getChapter());
+        assertEquals("Chapter 2", annotations.get(3).getChapter());
+
+        // The outline is not read, if not needed.
+        annotations = importer.readAnnotations(fileName).getAnnotations();
+        assertNull(annotations.get(3).getChapter());
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testEncryptedDocument() throws IOException {
+        String fileName = new File(tempDir, "Encrypted.pdf").getPath();
+        WriterProperties properties = new WriterProperties().setStandardEncryption(
+            "secret".getBytes(StandardCharsets.UTF_8), "owner".getBytes(StandardCharsets.UTF_8),
+            EncryptionConstants.ALLOW_PRINTING, EncryptionConstants.STANDARD_ENCRYPTION_128);
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName, properties))) {
+            pdfDocument.addNewPage().addAnnotation(createNote(pdfDocument, "Hidden", "Ann"));
+        }
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        try {
+            importer.readAnnotations(fileName);
+            fail("Opened without password");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("password protected"));
+        }
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.PASSWORD, "secret");
+        assertEquals("Hidden", importer.readAnnotations(fileName, settings).getAnnotations().get(0).getText());
+
+        // Known passwords for the directory.
+        File passwordFile = new File(tempDir, "passwords.txt");
+        Files.write(passwordFile.toPath(), Arrays.asList("# Test", tempDir + "=wrong", "Encrypted*.pdf=secret"));
+        settings.clear();
+        settings.put(Constants.PASSWORD_FILE, passwordFile.getPath());
+        assertEquals("Hidden", importer.readAnnotations(fileName, settings).getAnnotations().get(0).getText());
+        CredentialStore credentials = CredentialStore.getInstance(passwordFile);
+        assertEquals(Arrays.asList("secret", "wrong"), credentials.getPasswords(new File(fileName)));
+        // The result is cached for the next runs.
+        assertEquals("secret", CredentialStore.load(passwordFile).getPasswords(new File(fileName)).get(0));
+        credentials.recordFailure(new File(fileName), Arrays.asList("a", "b"));
+        assertTrue(credentials.isKnownFailure(new File(fileName), Arrays.asList("a", "b")));
+        assertFalse(credentials.isKnownFailure(new File(fileName), Arrays.asList("a", "c")));
+        // The results are appended - the last one is valid. The superseded ones are dropped on load.
+        File cacheFile = new File(passwordFile.getPath() + ".cache");
+        credentials.recordSuccess(new File(fileName), "secret");
+        assertEquals(3, Files.readAllLines(cacheFile.toPath()).size());
+        assertEquals("secret", CredentialStore.load(passwordFile).getPasswords(new File(fileName)).get(0));
+        assertEquals(1, Files.readAllLines(cacheFile.toPath()).stream().filter(s -> !s.startsWith("#")).count());
+
+        cacheFile.delete();
+        passwordFile.delete();
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testResilientMode() throws IOException {
+        String fileName = new File(tempDir, "Broken.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            PdfPage page = pdfDocument.addNewPage();
+            PdfTextMarkupAnnotation highlight = PdfTextMarkupAnnotation.createHighLight(
+                new Rectangle(50, 700, 200, 20), new float[] {50, 720, 250, 720, 50, 700, 250, 700});
+            // Malformed quad points.
+            highlight.put(PdfName.QuadPoints, new PdfArray(new PdfString("broken")));
+            page.addAnnotation(highlight);
+            page.addAnnotation(createNote(pdfDocument, "Good", "Ann"));
+        }
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        try {
+            importer.readAnnotations(fileName);
+            fail("Broken annotation accepted");
+        }
+        catch (RuntimeException e) {
+            // Expected.
+        }
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.RESILIENT, true);
+        AnnotatedDocument document = importer.readAnnotations(fileName, settings);
+        assertEquals(1, document.getAnnotations().size());
+        assertEquals("Good", document.getAnnotations().get(0).getText());
+        assertTrue(document.isIncomplete());
+        assertEquals(1, document.getProblems().size());
+        ExtractionProblem problem = document.getProblems().get(0);
+        assertEquals(1, problem.getPage());
+        assertEquals(0, problem.getAnnotationIndex());
+        assertEquals("Highlight", problem.getAnnotationType());
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testMissingSubtype() throws IOException {
+        String fileName = new File(tempDir, "NoSubtype.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            PdfTextAnnotation note = createNote(pdfDocument, "Orphan", "Ann");
+            note.getPdfObject().remove(PdfName.Subtype);
+            pdfDocument.addNewPage().addAnnotation(note);
+        }
+        AnnotatedDocument document = new PdfAnnotationImporter().readAnnotations(fileName);
+        assertEquals(1, document.getAnnotations().size());
+        assertEquals("Orphan", document.getAnnotations().get(0).getText());
+        assertEquals(PdfAnnotationImporter.UNKNOWN_TYPE, document.getAnnotations().get(0).getType());
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void testBrokenPageContent() throws IOException {
+        String fileName = new File(tempDir, "BrokenContent.pdf").getPath();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(fileName))) {
+            PdfPage page = pdfDocument.addNewPage();
+            page.getResources().addFont(pdfDocument, PdfFontFactory.createFont(StandardFonts.HELVETICA));
+            // Font missing in the page resources.
+            page.getFirstContentStream().setData("BT /Missing 12 Tf 50 705 Td (Text) Tj ET".getBytes(
+                StandardCharsets.ISO_8859_1));
+            for (int i = 0; i < 3; i++) {
+                page.addAnnotation(PdfTextMarkupAnnotation.createHighLight(new Rectangle(50, 700, 200, 20),
+                    new float[] {50, 720, 250, 720, 50, 700, 250, 700}));
+            } //
+            page.addAnnotation(createNote(pdfDocument, "Good", "Ann"));
+        }
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.RESILIENT, true);
+        AnnotatedDocument document = new PdfAnnotationImporter().readAnnotations(fileName, settings);
+        assertEquals(1, document.getAnnotations().size());
+
+        // Single problem for the whole page.
+        assertEquals(1, document.getProblems().size());
+        ExtractionProblem problem = document.getProblems().get(0);
+        assertEquals(1, problem.getPage());
+        assertEquals(-1, problem.getAnnotationIndex());
+        new File(fileName).delete();
+    }
+
+    protected PdfTextAnnotation createNote(PdfDocument pdfDocument, String text, String author) {
+        PdfTextAnnotation note = new PdfTextAnnotation(new Rectangle(50, 700, 20, 20));
+        note.setContents(text);
+        note.setTitle(new PdfString(author));
+        note.makeIndirect(pdfDocument);
+        return note;
+    }
+
+    @Test
+    public void testExtractionLimits() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_7.pdf");
+        assertFalse(document.isIncomplete());
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.MAX_GLYPHS, 10);
+        document = importer.readAnnotations(resDir + "/Test_Pdf_7.pdf", settings);
+        assertTrue(document.isIncomplete());
+        assertEquals("Glyph limit exceeded", document.getIncompleteReason());
+        assertEquals(0, document.getAnnotations().size());
+    }
+
+    @Test
+    public void testAnnotationMetadata() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_6.pdf");
+        Annotation annot1 = document.getAnnotations().get(0);
+        assertEquals("Highlight", annot1.getType());
+        assertEquals("#ffd100", annot1.getColor());
+        assertEquals("Danek", annot1.getAuthor());
+        assertNotNull(annot1.getCreationDate());
+        assertEquals(4, annot1.getRectangle().length);
+    }
+
+    @Test
+    public void testColorFilter() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.COLORS, "FFD100");
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_6.pdf", settings);
+        assertEquals(1, document.getAnnotations().size());
+        document = importer.readAnnotations(resDir + "/Test_Pdf_7.pdf", settings);
+        assertEquals(0, document.getAnnotations().size());
+    }
+
+    @Test
+    public void testFilter() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.TYPES, "FreeText");
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_3.pdf", settings);
+        assertEquals(3, document.getAnnotations().size());
+        document = importer.readAnnotations(resDir + "/Test_Pdf_7.pdf", settings);
+        assertEquals(0, document.getAnnotations().size());
+
+        settings.clear();
+        settings.put(Constants.PAGES, "2-10");
+        document = importer.readAnnotations(resDir + "/Test_Pdf_3.pdf", settings);
+        assertEquals(0, document.getAnnotations().size());
+    }
+
+    @Test
+    public void testOpenPageRanges() {
+        PdfAnnotationImporter importer = new PdfAnnotationImporter();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(Constants.PAGES, "last:1");
+        AnnotatedDocument document = importer.readAnnotations(resDir + "/Test_Pdf_3.pdf", settings);
+        assertEquals(3, document.getAnnotations().size());
+
+        settings.put(Constants.PAGES, "2-");
+        document = importer.readAnnotations(resDir + "/Test_Pdf_3.pdf", settings);
+        assertEquals(0, document.getAnnotations().size());
+
+        settings.clear();
+        settings.put(Constants.SAMPLE, 1);
+        document = importer.readAnnotations(resDir + "/Test_Pdf_3.pdf", settings);
+        assertEquals(3, document.getAnnotations().size());
+    }
+}
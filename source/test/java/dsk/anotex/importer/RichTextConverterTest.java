@@ -0,0 +1,65 @@
+package dsk.anotex.importer;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RichTextConverterTest extends TestBase {
+
+    @Test
+    public void testMarkdown() {
+        RichTextConverter converter = new RichTextConverter();
+        String xhtml = "<?xml version=\"1.0\"?><body xmlns=\"http://www.w3.org/1999/xhtml\""
+            + " xmlns:xfa=\"http://www.xfa.org/schema/xfa-data/1.0/\" xfa:APIVersion=\"Acrobat:11.0.0\">"
+            + "<p dir=\"ltr\">Read <b>this</b> and <span style=\"font-style: italic\">that</span>.</p>"
+            + "<ul><li>One</li><li>Two</li></ul>"
+            + "<ol><li>First</li><li>See <a href=\"http://example.com\">link</a></li></ol>"
+            + "<p>Keep a_b *literal*</p></body>";
+        String expected = "Read **this** and _that_.\n\n- One\n- Two\n\n1. First\n2. See [link](http://example.com)"
+            + "\n\nKeep a\\_b \\*literal\\*";
+        assertEquals(expected, converter.toMarkdown(xhtml));
+        assertTrue(converter.isFormatted());
+
+        // The same converter is reused.
+        assertEquals("Read this and that.\n\n* One\n* Two",
+            converter.toPlainText("<body><p>Read <b>this</b> and <i>that</i>.</p><ul><li>One</li><li>Two</li></ul></body>"));
+        assertEquals("Plain comment", converter.toMarkdown("<body><p>Plain   comment</p></body>"));
+        assertFalse(converter.isFormatted());
+    }
+
+    @Test
+    public void testEmphasisWhitespace() {
+        RichTextConverter converter = new RichTextConverter();
+        assertEquals("Some **bold** and _italic_ text.", converter.toMarkdown(
+            "<body><p>Some<b> bold </b>and <i> italic</i> text<b></b>.</p></body>"));
+        // Only the space is kept.
+        assertEquals("One two", converter.toMarkdown("<body><p>One<i> </i>two</p></body>"));
+        assertEquals("**_[both](x)_**", converter.toMarkdown(
+            "<body><span style=\"font-weight:bold; font-style:italic\"><a href=\"x\">both</a></span></body>"));
+        assertNull(converter.toMarkdown("<body><p><b><i></i></b></p></body>"));
+        assertFalse(converter.isFormatted());
+    }
+
+    @Test
+    public void testLinkDestination() {
+        RichTextConverter converter = new RichTextConverter();
+        assertEquals("[wiki](http://example.com/a%20b%28c%29?x=%3Cy%3E)", converter.toMarkdown(
+            "<body><p><a href=\"http://example.com/a b(c)?x=&lt;y&gt;\">wiki</a></p></body>"));
+        assertEquals("[x](evil%29%20[]%28http://other)",
+            converter.toMarkdown("<body><a href=\"evil) [](http://other\">x</a></body>"));
+    }
+
+    @Test
+    public void testInvalidXhtml() {
+        RichTextConverter converter = new RichTextConverter();
+        // HTML entities are not defined without DTD.
+        assertEquals("Tom & Jerry", converter.toMarkdown("<p>Tom&nbsp;&amp; Jerry</p>"));
+        assertFalse(converter.isFormatted());
+        assertNull(converter.toMarkdown("<body><p> </p></body>"));
+        assertNull(converter.toMarkdown(null));
+    }
+}
@@ -0,0 +1,152 @@
+package dsk.anotex.index;
+
+import dsk.anotex.TestBase;
+import dsk.anotex.core.AnnotatedDocument;
+import dsk.anotex.core.Annotation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationIndexTest extends TestBase {
+
+    @Before
+    public void beforeEach() {
+        cleanTempDirectory();
+    }
+
+    @Test
+    public void testSearch() {
+        File indexDir = new File(tempDir, "index");
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir)) {
+            writer.addDocument("doc1.pdf", createDocument(annotation("Green apple", null, 1),
+                annotation("Red apple", "Tasty!", 3)));
+            writer.addDocument("doc2.pdf", createDocument(annotation("Apple pie", null, 2)));
+        }
+        // Second segment.
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir)) {
+            writer.addDocument("doc3.pdf", createDocument(annotation("Яблоко, apple", null, 5)));
+        }
+
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(indexDir)) {
+            assertEquals(2, reader.getSegmentCount());
+            List<SearchHit> hits = reader.search("APPLE");
+            assertEquals(Arrays.asList(new SearchHit("doc1.pdf", 1), new SearchHit("doc1.pdf", 3),
+                new SearchHit("doc2.pdf", 2), new SearchHit("doc3.pdf", 5)), hits);
+            assertEquals(Arrays.asList(new SearchHit("doc1.pdf", 3)), reader.search("red apple"));
+            assertEquals(Arrays.asList(new SearchHit("doc1.pdf", 3)), reader.search("tasty"));
+            assertEquals(Arrays.asList(new SearchHit("doc3.pdf", 5)), reader.search("яблоко"));
+            assertEquals(0, reader.search("banana").size());
+            assertEquals(0, reader.search("green pie").size());
+        }
+    }
+
+    @Test
+    public void testReindexAndMerge() {
+        File indexDir = new File(tempDir, "mergedIndex");
+        // One segment per writer (like single document extraction). The third one triggers the merge.
+        for (int i = 1; i <= 3; i++) {
+            try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir, 1000, 3)) {
+                writer.addDocument("doc" + i + ".pdf", createDocument(annotation("Apple " + i, null, i)));
+            }
+        } //
+        assertEquals(1, AnnotationIndexReader.listSegmentFiles(indexDir).length);
+        assertFalse(new File(indexDir, AnnotationIndexWriter.LOCK_FILE).exists());
+
+        // The changed document replaces its previous postings.
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir, 1000, 3)) {
+            writer.addDocument("doc1.pdf", createDocument(annotation("Banana", null, 7)));
+            writer.addDocument("doc1.pdf", createDocument(annotation("Apple pie", null, 9)));
+        }
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(indexDir)) {
+            // Merged again (with both versions of doc1).
+            assertEquals(1, reader.getSegmentCount());
+            assertEquals(Arrays.asList(new SearchHit("doc2.pdf", 2), new SearchHit("doc3.pdf", 3),
+                new SearchHit("doc1.pdf", 9)), reader.search("apple"));
+            assertEquals(0, reader.search("banana").size());
+        }
+
+        // Replaced postings are ignored before the merge too.
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir, 1000, 3)) {
+            writer.addDocument("doc2.pdf", createDocument(annotation("Pear", null, 4)));
+        }
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(indexDir)) {
+            assertEquals(2, reader.getSegmentCount());
+            assertEquals(Arrays.asList(new SearchHit("doc3.pdf", 3), new SearchHit("doc1.pdf", 9)),
+                reader.search("apple"));
+            assertEquals(Arrays.asList(new SearchHit("doc2.pdf", 4)), reader.search("pear"));
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws IOException {
+        File indexDir = new File(tempDir, "sharedIndex");
+        try (AnnotationIndexWriter writer1 = new AnnotationIndexWriter(indexDir, 1000, 2);
+             AnnotationIndexWriter writer2 = new AnnotationIndexWriter(indexDir, 1000, 2)) {
+            writer1.addDocument("doc1.pdf", createDocument(annotation("Apple", null, 1)));
+            writer2.addDocument("doc2.pdf", createDocument(annotation("Apple", null, 2)));
+            writer1.flush();
+            // Does not overwrite the segment of the first writer.
+            writer2.flush();
+            writer2.addDocument("doc1.pdf", createDocument(annotation("Pear", null, 3)));
+        }
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(indexDir)) {
+            assertEquals(Arrays.asList(new SearchHit("doc2.pdf", 2)), reader.search("apple"));
+            assertEquals(Arrays.asList(new SearchHit("doc1.pdf", 3)), reader.search("pear"));
+        }
+
+        // Merge is skipped while another writer holds the lock.
+        File lockFile = new File(indexDir, AnnotationIndexWriter.LOCK_FILE);
+        assertTrue(lockFile.createNewFile());
+        int segmentCount = AnnotationIndexReader.listSegmentFiles(indexDir).length;
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir, 1000, 2)) {
+            writer.addDocument("doc3.pdf", createDocument(annotation("Plum", null, 1)));
+        }
+        assertEquals(segmentCount + 1, AnnotationIndexReader.listSegmentFiles(indexDir).length);
+        lockFile.delete();
+    }
+
+    @Test
+    public void testSegmentSizeLimit() {
+        File indexDir = new File(tempDir, "limitedIndex");
+        long maxSize = 200;
+        try (AnnotationIndexWriter writer = new AnnotationIndexWriter(indexDir, 1000, 2, maxSize)) {
+            for (int i = 1; i <= 6; i++) {
+                writer.addDocument("doc" + i + ".pdf", createDocument(annotation("Apple tree " + i, null, i)));
+            } //
+        }
+        File[] files = AnnotationIndexReader.listSegmentFiles(indexDir);
+        assertTrue(files.length > 1);
+        for (File file : files) {
+            assertTrue(file.length() <= maxSize);
+        } //
+        try (AnnotationIndexReader reader = new AnnotationIndexReader(indexDir)) {
+            assertEquals(6, reader.search("apple tree").size());
+        }
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("one", "two", "3d"), TermTokenizer.tokenize("One, two... 3D!"));
+        assertEquals(0, TermTokenizer.tokenize(null).size());
+    }
+
+    protected Annotation annotation(String highlight, String text, int page) {
+        Annotation annotation = new Annotation(text, highlight);
+        annotation.setPage(page);
+        return annotation;
+    }
+
+    protected AnnotatedDocument createDocument(Annotation... annotations) {
+        AnnotatedDocument document = new AnnotatedDocument();
+        document.setAnnotations(Arrays.asList(annotations));
+        return document;
+    }
+}
@@ -0,0 +1,33 @@
+package dsk.anotex.util;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChannelWriterTest extends TestBase {
+
+    @Test
+    public void testEncoding() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String emoji = "😀";
+        StringBuilder expected = new StringBuilder();
+        try (ChannelWriter writer = new ChannelWriter(Channels.newChannel(bytes))) {
+            // Surrogate pair split between two writes.
+            writer.write(emoji.substring(0, 1));
+            writer.write(emoji.substring(1));
+            expected.append(emoji);
+            // More than one buffer.
+            for (int i = 0; i < BufferPool.BUFFER_SIZE / 4; i++) {
+                writer.append("Пет ").append(Integer.toString(i));
+                expected.append("Пет ").append(i);
+            } //
+        }
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package dsk.anotex.util;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryAdmissionTest extends TestBase {
+
+    @Test
+    public void testAdmission() throws InterruptedException {
+        // Budget big enough for two documents, but not for three.
+        long estimate = MemoryAdmission.estimate(10 * 1024 * 1024, 100);
+        MemoryAdmission admission = new MemoryAdmission(2 * estimate + estimate / 2) {
+            @Override
+            protected long getLiveHeap() {
+                return 0;
+            }
+        };
+        MemoryAdmission.Permit first = admission.acquire(estimate);
+        MemoryAdmission.Permit second = admission.acquire(estimate);
+        assertEquals(2 * estimate, admission.getReserved());
+
+        // The third one waits until some document finishes.
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            MemoryAdmission.Permit permit = admission.acquire(estimate);
+            admitted.countDown();
+            permit.close();
+        });
+        thread.start();
+        assertFalse(admitted.await(300, TimeUnit.MILLISECONDS));
+        first.close();
+        first.close();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        thread.join();
+        second.close();
+        assertEquals(0, admission.getReserved());
+        assertEquals(0, admission.getRunning());
+
+        // Document bigger than the budget runs alone.
+        MemoryAdmission.Permit huge = admission.acquire(10 * admission.getBudget());
+        assertEquals(admission.getBudget(), admission.getReserved());
+        huge.close();
+        assertEquals(0, admission.getReserved());
+    }
+}
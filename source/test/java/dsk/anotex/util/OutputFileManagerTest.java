@@ -0,0 +1,42 @@
+package dsk.anotex.util;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class OutputFileManagerTest extends TestBase {
+
+    @Test
+    public void testAtomicWrite() throws IOException {
+        File dir = new File(tempDir, "atomic");
+        String outputFile = new File(dir, "sub/Output.md").getPath();
+        OutputFileManager manager = new OutputFileManager(2);
+        writeFile(outputFile, "Old");
+
+        // Not committed - the old content is kept.
+        try (AtomicFileWriter writer = manager.openWriter(outputFile)) {
+            writer.write("Partial");
+            writer.flush();
+            assertEquals("Old", readFile(outputFile));
+        }
+        assertEquals("Old", readFile(outputFile));
+
+        // Committed.
+        try (AtomicFileWriter writer = manager.openWriter(outputFile)) {
+            writer.write("New");
+            writer.commit();
+        }
+        assertEquals("New", readFile(outputFile));
+
+        // No temporary files left and all the open file slots are released.
+        assertEquals(1, new File(dir, "sub").list().length);
+        assertEquals(2, manager.getAvailableFiles());
+        removeDirectory(dir);
+        assertFalse(dir.exists());
+    }
+}
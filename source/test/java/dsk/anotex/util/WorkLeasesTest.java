@@ -0,0 +1,104 @@
+package dsk.anotex.util;
+
+import dsk.anotex.TestBase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkLeasesTest extends TestBase {
+
+    @Test
+    public void testLeases() throws IOException {
+        File dir = new File(tempDir, "leases");
+        Path input = createInput(dir, "input1.txt", "Content");
+        try (WorkLeases node1 = new WorkLeases(dir, 60000); WorkLeases node2 = new WorkLeases(dir, 60000)) {
+            // Independent nodes, even in the same process.
+            assertNotEquals(node1.getNodeId(), node2.getNodeId());
+            assertTrue(node1.acquire("a", input));
+            assertFalse(node2.acquire("a", input));
+            assertFalse(node1.acquire("a", input));
+
+            // Released without completion - can be taken by other node.
+            node1.release("a");
+            assertTrue(node2.acquire("a", input));
+            assertTrue(node2.complete("a", input, true));
+            assertTrue(node1.isFinished("a", input));
+            assertFalse(node1.acquire("a", input));
+
+            // Changed input - processed again.
+            Files.write(input, "Changed content".getBytes(StandardCharsets.UTF_8));
+            assertFalse(node1.isFinished("a", input));
+            assertTrue(node1.acquire("a", input));
+            node1.complete("a", input, true);
+            assertFalse(node2.acquire("a", input));
+        }
+        removeDirectory(dir);
+    }
+
+    @Test
+    public void testFailureRetry() throws IOException {
+        File dir = new File(tempDir, "retryLeases");
+        Path input = createInput(dir, "input2.txt", "Content");
+        try (WorkLeases node1 = new WorkLeases(dir, 60000, 2); WorkLeases node2 = new WorkLeases(dir, 60000, 2)) {
+            assertTrue(node1.acquire("a", input));
+            node1.complete("a", input, false);
+
+            // Retried until the attempt limit is reached.
+            assertFalse(node2.isFinished("a", input));
+            assertTrue(node2.acquire("a", input));
+            node2.complete("a", input, false);
+            assertTrue(node1.isFinished("a", input));
+            assertFalse(node1.acquire("a", input));
+        }
+        removeDirectory(dir);
+    }
+
+    @Test
+    public void testExpiredLease() throws IOException {
+        File dir = new File(tempDir, "expiredLeases");
+        Path input = createInput(dir, "input3.txt", "Content");
+        try (WorkLeases slow = new WorkLeases(dir, 60000); WorkLeases node = new WorkLeases(dir, 1000);
+             WorkLeases other = new WorkLeases(dir, 60000)) {
+            assertTrue(slow.acquire("a", input));
+            assertFalse(node.acquire("a", input));
+
+            // The lease is not renewed (like the node was stuck for long time).
+            slow.renewer.shutdownNow();
+            File lease = new File(dir, "a" + WorkLeases.LEASE_EXTENSION);
+            Files.setLastModifiedTime(lease.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 5000));
+            assertTrue(node.acquire("a", input));
+
+            // The previous owner cannot renew, complete or release the new lease.
+            long modified = lease.lastModified();
+            slow.renewLeases();
+            assertEquals(modified, lease.lastModified());
+            assertFalse(slow.isHeld("a"));
+            assertFalse(slow.complete("a", input, true));
+            slow.release("a");
+            assertTrue(lease.exists());
+            assertFalse(other.acquire("a", input));
+
+            assertTrue(node.complete("a", input, true));
+            assertFalse(lease.exists());
+        }
+        removeDirectory(dir);
+    }
+
+    protected Path createInput(File dir, String name, String content) throws IOException {
+        File inputDir = new File(dir, "input");
+        inputDir.mkdirs();
+        Path input = new File(inputDir, name).toPath();
+        Files.write(input, content.getBytes(StandardCharsets.UTF_8));
+        return input;
+    }
+}
@@ -1,2 +1,6 @@
 @echo off
-java -cp program;library/* dsk.anotex.ConsoleRunner %1 %2 %3 %4
\ No newline at end of file
+if exist program\DyAnnotationExtractor.jar (
+    java -cp program\DyAnnotationExtractor.jar;library/* dsk.anotex.ConsoleRunner %*
+) else (
+    java -cp program;library/* dsk.anotex.ConsoleRunner %*
+)
\ No newline at end of file
@@ -1,2 +1,37 @@
 #!/bin/bash
-java -cp "program:library/*" dsk.anotex.ConsoleRunner $1 "$2"
\ No newline at end of file
+# Launcher of the annotation extractor.
+# When the program is packaged as jar (startup profile: gradle -Pcds dist), the classes loaded by
+# the first run are stored into class data sharing archive (Java 13+) and mapped by the next runs,
+# which makes the startup much faster. The archive is re-created when the program is updated.
+APP_HOME="$(cd "$(dirname "$0")" && pwd)"
+APP_JAR="$APP_HOME/program/DyAnnotationExtractor.jar"
+if [ ! -f "$APP_JAR" ]; then
+    exec java -cp "$APP_HOME/program:$APP_HOME/library/*" dsk.anotex.ConsoleRunner "$@"
+fi
+
+CDS_ARCHIVE="$APP_HOME/program/DyAnnotationExtractor.jsa"
+CLASS_PATH="$APP_JAR:$APP_HOME/library/*"
+# The dynamic archive and its options (-Xlog) need Java 13+. Older Java (like 8) runs without it.
+JAVA_VERSION=$(java -version 2>&1 | sed -n 's/.*version "\([0-9]*\)[.".].*/\1/p' | head -n 1)
+if [ "${JAVA_VERSION:-0}" -lt 13 ]; then
+    exec java -cp "$CLASS_PATH" dsk.anotex.ConsoleRunner "$@"
+fi
+if [ -f "$CDS_ARCHIVE" ] && [ ! "$APP_JAR" -nt "$CDS_ARCHIVE" ]; then
+    # Mismatching archive (like moved installation or other Java version) is silently ignored.
+    exec java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off \
+        -cp "$CLASS_PATH" dsk.anotex.ConsoleRunner "$@"
+fi
+if [ ! -w "$APP_HOME/program" ]; then
+    # Cannot store the archive.
+    exec java -cp "$CLASS_PATH" dsk.anotex.ConsoleRunner "$@"
+fi
+
+# Create the archive. It is written to temporary file first - other runs may be in progress.
+TEMP_ARCHIVE="$CDS_ARCHIVE.$$.tmp"
+java -XX:ArchiveClassesAtExit="$TEMP_ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off \
+    -cp "$CLASS_PATH" dsk.anotex.ConsoleRunner "$@"
+EXIT_CODE=$?
+if [ -f "$TEMP_ARCHIVE" ]; then
+    mv -f "$TEMP_ARCHIVE" "$CDS_ARCHIVE"
+fi
+exit $EXIT_CODE